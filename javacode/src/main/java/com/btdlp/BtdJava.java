@@ -1,15 +1,25 @@
 package com.btdlp;
 
 import com.btdlp.core.VideoInfo;
+import com.btdlp.core.VideoInfoCache;
 import com.btdlp.core.VideoFormat;
-import com.btdlp.core.BubeDL;
+import com.btdlp.downloader.DownloadExecutors;
 import com.btdlp.extractor.InfoExtractor;
 import com.btdlp.extractor.ExtractorRegistry;
+import com.btdlp.utils.CookieManager;
+import com.btdlp.utils.FormatSelector;
 import com.btdlp.utils.Logger;
+import com.btdlp.options.BubeDLOptions;
 import com.btdlp.options.DownloadOptions;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -19,10 +29,17 @@ import java.util.stream.Collectors;
  */
 public class BtdJava {
     
+    private static final int DEFAULT_BATCH_WORKERS = 4;
+    private static final int DEFAULT_BATCH_PER_HOST = 2;
+    
     private Logger logger;
     private Map<String, String> options;
     private List<ProgressCallback> progressCallbacks;
     private ExtractorRegistry extractorRegistry;
+    // 本实例构建的下载器共用的线程池，null时按download_threads选项使用共享线程池
+    private ExecutorService downloadExecutor;
+    // 批量处理的工作线程中为true，这些线程中的下载不调用进度回调
+    private final ThreadLocal<Boolean> inBatch = new ThreadLocal<>();
     
     /**
      * 进度回调接口
@@ -56,6 +73,189 @@ public class BtdJava {
         public VideoInfo getVideoInfo() { return videoInfo; }
     }
     
+    /**
+     * 批量处理的回调，每个URL处理完成时在工作线程中调用一次，调用顺序为完成顺序
+     */
+    public interface BatchCallback<T> {
+        void onResult(String url, T result);
+    }
+    
+    /**
+     * 批量任务：固定数量的工作线程，同一主机同时处理的URL数有上限，
+     * 某个主机达到上限时先处理其它主机的URL，不占用空闲的工作线程
+     */
+    public static class BatchHandle {
+        private final int workers;
+        private final int maxPerHost;
+        private final ExecutorService executor;
+        private final CountDownLatch remaining;
+        // 主机 -> 等待处理的任务，轮流从各主机取任务
+        private final Map<String, Deque<Runnable>> queues = new LinkedHashMap<>();
+        private final Map<String, Integer> running = new HashMap<>();
+        private int active;
+        private boolean cancelled;
+        
+        private BatchHandle(int total, int workers, int maxPerHost) {
+            this.workers = Math.max(1, Math.min(workers, total));
+            this.maxPerHost = maxPerHost;
+            this.remaining = new CountDownLatch(total);
+            this.executor = Executors.newFixedThreadPool(this.workers, new ThreadFactory() {
+                private int threadCount = 0;
+                
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "batch-worker-" + (++threadCount));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        
+        private synchronized void enqueue(String host, Runnable task) {
+            Deque<Runnable> queue = queues.get(host);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(host, queue);
+            }
+            queue.add(task);
+        }
+        
+        private synchronized void dispatch() {
+            while (!cancelled && active < workers) {
+                String host = nextHost();
+                if (host == null) {
+                    break;
+                }
+                // 取出任务后把该主机移到末尾，各主机轮流执行
+                Deque<Runnable> queue = queues.remove(host);
+                final Runnable task = queue.poll();
+                if (!queue.isEmpty()) {
+                    queues.put(host, queue);
+                }
+                Integer count = running.get(host);
+                running.put(host, count != null ? count + 1 : 1);
+                active++;
+                final String taskHost = host;
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        finished(taskHost);
+                    }
+                });
+            }
+            if (active == 0 && (cancelled || queues.isEmpty())) {
+                executor.shutdown();
+            }
+        }
+        
+        private String nextHost() {
+            for (String host : queues.keySet()) {
+                Integer count = running.get(host);
+                if (count == null || count < maxPerHost) {
+                    return host;
+                }
+            }
+            return null;
+        }
+        
+        private synchronized void finished(String host) {
+            int count = running.get(host) - 1;
+            if (count == 0) {
+                running.remove(host);
+            } else {
+                running.put(host, count);
+            }
+            active--;
+            remaining.countDown();
+            dispatch();
+        }
+        
+        /**
+         * 取消尚未开始的URL（不再回调），正在处理的URL会被中断
+         */
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (Deque<Runnable> queue : queues.values()) {
+                for (int i = 0; i < queue.size(); i++) {
+                    remaining.countDown();
+                }
+            }
+            queues.clear();
+            executor.shutdownNow();
+        }
+        
+        /**
+         * 等待所有URL处理完成（或取消）
+         */
+        public void await() throws InterruptedException {
+            remaining.await();
+        }
+        
+        /**
+         * 等待所有URL处理完成，超时返回false
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return remaining.await(timeout, unit);
+        }
+        
+        public boolean isDone() {
+            return remaining.getCount() == 0;
+        }
+    }
+    
+    /**
+     * 输出文件的进程内互斥锁，按绝对路径区分，没有使用者时移除
+     */
+    private static final class OutputLock {
+        private static final Map<String, OutputLock> LOCKS = new HashMap<>();
+        
+        private final String path;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+        
+        private OutputLock(String path) {
+            this.path = path;
+        }
+        
+        static OutputLock acquire(String outputPath, Logger logger) {
+            String path = new File(outputPath).getAbsolutePath();
+            OutputLock outputLock;
+            synchronized (LOCKS) {
+                outputLock = LOCKS.get(path);
+                if (outputLock == null) {
+                    outputLock = new OutputLock(path);
+                    LOCKS.put(path, outputLock);
+                }
+                outputLock.users++;
+            }
+            if (!outputLock.lock.tryLock()) {
+                logger.warning("输出文件 %s 正在被其它下载写入，等待其完成后再下载", path);
+                outputLock.lock.lock();
+            }
+            return outputLock;
+        }
+        
+        void release() {
+            lock.unlock();
+            synchronized (LOCKS) {
+                if (--users == 0) {
+                    LOCKS.remove(path);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 批量处理中对单个URL执行的操作
+     */
+    private interface BatchTask<T> {
+        T run(String url);
+    }
+    
     /**
      * 构造函数
      */
@@ -102,7 +302,14 @@ public class BtdJava {
     }
     
     /**
-     * 添加进度回调
+     * 设置下载使用的线程池（HLS片段、HTTP分块），本实例的所有下载共用，线程池的生命周期由调用方管理
+     */
+    public void setDownloadExecutor(ExecutorService downloadExecutor) {
+        this.downloadExecutor = downloadExecutor;
+    }
+    
+    /**
+     * 添加进度回调，回调不带URL，只用于单个下载；downloadBatch中的下载不调用，结果通过BatchCallback返回
      */
     public void addProgressCallback(ProgressCallback callback) {
         progressCallbacks.add(callback);
@@ -174,6 +381,33 @@ public class BtdJava {
                 setHttpHeaders(headers);
             }
             
+            if (options.getFragmentRetries() != null) {
+                setOption("fragment_retries", options.getFragmentRetries().toString());
+            }
+            
+            // 格式规格同时用于HLS主播放列表的变体选择
+            if (options.getFormat() != null) {
+                setOption("format", options.getFormat());
+            }
+            
+            // 代理和User-Agent由共享的HTTP传输层统一使用
+            if (options.getProxy() != null) {
+                setOption("proxy", options.getProxy());
+            }
+            if (options.getUserAgent() != null) {
+                setOption("user_agent", options.getUserAgent());
+            }
+            if (options.getCookiesFile() != null) {
+                setOption("cookies_file", options.getCookiesFile());
+            }
+            // 视频信息缓存的保存目录
+            if (options.getCacheDir() != null) {
+                setOption("cache_dir", options.getCacheDir());
+            }
+            if (Boolean.TRUE.equals(options.getNoCacheDir())) {
+                setOption("no_cache_dir", "true");
+            }
+            
             // 处理其他自定义选项
             if (options.getCustomOptions() != null && !options.getCustomOptions().isEmpty()) {
                 Map<String, String> customOptions = options.getCustomOptions();
@@ -248,7 +482,7 @@ public class BtdJava {
                     }
                     
                     // 根据格式选择视频格式
-                    VideoFormat selectedFormat = selectFormatBySpec(videoInfo.getFormats(), options.getFormat());
+                    VideoFormat selectedFormat = FormatSelector.select(videoInfo.getFormats(), options.getFormat());
                     if (selectedFormat == null) {
                         long elapsedTime = System.currentTimeMillis() - startTime;
                         return new BubeDLResponse(command, 1, elapsedTime, "", "No matching format found: " + options.getFormat());
@@ -262,6 +496,8 @@ public class BtdJava {
                         String output = String.format("下载完成: %s", result.getFilePath());
                         return new BubeDLResponse(command, 0, elapsedTime, output, "");
                     } else {
+                        // 缓存的格式URL可能已失效，下次重新解析
+                        invalidateCachedInfo(createExtractor(url), url);
                         return new BubeDLResponse(command, 1, elapsedTime, "", result.getErrorMessage());
                     }
                 } else {
@@ -283,64 +519,24 @@ public class BtdJava {
             String errorMsg = "执行过程中发生错误: " + e.getMessage();
             logger.error(errorMsg, e);
             return new BubeDLResponse(command, 1, elapsedTime, "", errorMsg);
+        } finally {
+            saveCookies();
         }
     }
     
     /**
-     * 根据格式规格选择视频格式
+     * 把本次请求中服务器设置的Cookie写回cookies文件
      */
-    private VideoFormat selectFormatBySpec(List<VideoFormat> formats, String formatSpec) {
-        if (formats == null || formats.isEmpty()) {
-            return null;
+    private void saveCookies() {
+        String cookiesFile = options.get("cookies_file");
+        if (cookiesFile == null || cookiesFile.isEmpty()) {
+            return;
         }
-        
-        // 简化的格式选择逻辑
-        // 实际应该实现完整的yt-dlp格式选择语法
-        if ("best".equals(formatSpec)) {
-            return selectBestFormat(formats);
-        } else if (formatSpec.startsWith("best[")) {
-            // 解析格式选择器，如 "best[height<=720]"
-            return selectBestFormatWithCriteria(formats, formatSpec);
-        } else {
-            // 按格式ID查找
-            for (VideoFormat format : formats) {
-                if (formatSpec.equals(format.getFormatId())) {
-                    return format;
-                }
-            }
-        }
-        
-        return formats.get(0); // 默认返回第一个
-    }
-    
-    /**
-     * 选择最佳格式（带条件）
-     */
-    private VideoFormat selectBestFormatWithCriteria(List<VideoFormat> formats, String criteria) {
-        // 简化实现，实际应该解析复杂的格式选择语法
-        if (criteria.contains("height<=")) {
-            // 提取高度限制
-            String heightStr = criteria.substring(criteria.indexOf("height<=") + 8);
-            heightStr = heightStr.substring(0, heightStr.indexOf("]"));
-            int maxHeight = Integer.parseInt(heightStr);
-            
-            // 选择符合高度限制的最佳格式
-            VideoFormat best = null;
-            int bestHeight = 0;
-            
-            for (VideoFormat format : formats) {
-                if (format.getHeight() != null && format.getHeight() <= maxHeight) {
-                    if (best == null || format.getHeight() > bestHeight) {
-                        best = format;
-                        bestHeight = format.getHeight();
-                    }
-                }
-            }
-            
-            return best != null ? best : selectBestFormat(formats);
+        try {
+            CookieManager.forFile(cookiesFile).save();
+        } catch (Exception e) {
+            logger.warning("保存Cookie文件失败: %s", e.getMessage());
         }
-        
-        return selectBestFormat(formats);
     }
     
     /**
@@ -469,7 +665,7 @@ public class BtdJava {
             logger.info("选择的提取器: %s", extractor.getIE_NAME());
             
             // 2. 提取视频信息
-            VideoInfo videoInfo = extractor.extract(url);
+            VideoInfo videoInfo = extractWithCache(extractor, url);
             if (videoInfo == null || videoInfo.getFormats().isEmpty()) {
                 String error = "无法提取视频信息或未找到可用格式";
                 logger.error(error);
@@ -507,6 +703,7 @@ public class BtdJava {
             } else {
                 String error = "视频下载失败";
                 logger.error(error);
+                invalidateCachedInfo(extractor, url);
                 return new DownloadResult(false, null, error, videoInfo);
             }
             
@@ -534,7 +731,7 @@ public class BtdJava {
                 return null;
             }
             
-            VideoInfo videoInfo = extractor.extract(url);
+            VideoInfo videoInfo = extractWithCache(extractor, url);
             if (videoInfo != null) {
                 logger.info("信息提取成功 - 标题: %s, 格式数量: %s", 
                     videoInfo.getTitle(), videoInfo.getFormats().size());
@@ -562,6 +759,87 @@ public class BtdJava {
         return new ArrayList<>();
     }
     
+    /**
+     * 提取视频信息，缓存有效期内同一视频只解析一次（见VideoInfoCache）
+     */
+    private VideoInfo extractWithCache(InfoExtractor extractor, String url) throws Exception {
+        VideoInfoCache cache = VideoInfoCache.forOptions(buildDownloaderOptions());
+        return cache != null ? cache.extract(extractor, url) : extractor.extract(url);
+    }
+
+    /**
+     * 下载失败时移除缓存的视频信息
+     */
+    private void invalidateCachedInfo(InfoExtractor extractor, String url) {
+        VideoInfoCache cache = VideoInfoCache.forOptions(buildDownloaderOptions());
+        String key = extractor != null ? extractor.getCacheKey(url) : null;
+        if (cache != null && key != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * 批量提取视频信息，立即返回；每个URL完成时回调，提取失败时结果为null
+     * 工作线程数由batch_workers选项指定（默认4），同一主机同时处理的URL数由batch_per_host指定（默认2）
+     * @param urls 视频URL列表
+     * @param callback 结果回调，可以为null
+     * @return 用于等待或取消的批量任务
+     */
+    public BatchHandle extractInfoBatch(List<String> urls, BatchCallback<VideoInfo> callback) {
+        return runBatch(urls, this::extractInfo, callback);
+    }
+    
+    /**
+     * 批量下载视频（输出路径按output模板生成），立即返回；每个URL完成时回调
+     * 多个下载并行进行，进度回调无法区分URL，因此批量下载不调用addProgressCallback添加的回调
+     * 并发选项同extractInfoBatch
+     * @param urls 视频URL列表
+     * @param callback 结果回调，可以为null
+     * @return 用于等待或取消的批量任务
+     */
+    public BatchHandle downloadBatch(List<String> urls, BatchCallback<DownloadResult> callback) {
+        return runBatch(urls, this::download, callback);
+    }
+    
+    private <T> BatchHandle runBatch(List<String> urls, final BatchTask<T> task, final BatchCallback<T> callback) {
+        BubeDLOptions batchOptions = buildDownloaderOptions();
+        Integer workers = batchOptions.getInt("batch_workers");
+        Integer perHost = batchOptions.getInt("batch_per_host");
+        BatchHandle handle = new BatchHandle(urls.size(),
+            workers != null && workers > 0 ? workers : DEFAULT_BATCH_WORKERS,
+            perHost != null && perHost > 0 ? perHost : DEFAULT_BATCH_PER_HOST);
+        logger.info("=== 批量处理 %s 个URL ===", urls.size());
+        
+        for (final String url : urls) {
+            handle.enqueue(getBatchHost(url), () -> {
+                T result;
+                inBatch.set(Boolean.TRUE);
+                try {
+                    result = task.run(url);
+                } finally {
+                    inBatch.remove();
+                }
+                if (callback != null) {
+                    try {
+                        callback.onResult(url, result);
+                    } catch (Exception e) {
+                        logger.error("批量处理回调失败: %s", e.getMessage());
+                    }
+                }
+            });
+        }
+        handle.dispatch();
+        return handle;
+    }
+    
+    /**
+     * 批量处理时用于限制并发的主机名，www.前缀不区分
+     */
+    private static String getBatchHost(String url) {
+        String host = url != null ? ExtractorRegistry.extractHost(url) : "";
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+    
     /**
      * 根据URL自动选择提取器
      */
@@ -622,29 +900,14 @@ public class BtdJava {
      * 选择最佳格式
      */
     private VideoFormat selectBestFormat(List<VideoFormat> formats) {
-        // 优先选择MP4格式，然后按质量排序
-        VideoFormat bestMp4 = formats.stream()
-            .filter(f -> "mp4".equals(f.getExt()))
-            .max(Comparator.comparing(f -> f.getQuality() != null ? f.getQuality() : 0))
-            .orElse(null);
-            
-        if (bestMp4 != null) {
-            return bestMp4;
-        }
-        
-        // 如果没有MP4，选择质量最高的
-        return formats.stream()
-            .max(Comparator.comparing(f -> f.getQuality() != null ? f.getQuality() : 0))
-            .orElse(formats.get(0));
+        return FormatSelector.selectBest(formats);
     }
     
     /**
      * 选择最低格式
      */
     private VideoFormat selectWorstFormat(List<VideoFormat> formats) {
-        return formats.stream()
-            .min(Comparator.comparing(f -> f.getQuality() != null ? f.getQuality() : Integer.MAX_VALUE))
-            .orElse(formats.get(0));
+        return FormatSelector.selectWorst(formats);
     }
     
     /**
@@ -721,6 +984,17 @@ public class BtdJava {
      * 下载格式列表
      */
     private boolean downloadFormats(List<VideoFormat> formats, String outputPath) {
+        // 批量下载时多个URL可能得到同一个输出路径（如固定的-o或相同的标题），
+        // 同一文件的下载依次进行，避免同时写入同一个.part文件
+        OutputLock outputLock = OutputLock.acquire(outputPath, logger);
+        try {
+            return downloadFormatsTo(formats, outputPath);
+        } finally {
+            outputLock.release();
+        }
+    }
+    
+    private boolean downloadFormatsTo(List<VideoFormat> formats, String outputPath) {
         // Android环境检查
         boolean isAndroid = isAndroidEnvironment();
         if (isAndroid) {
@@ -802,7 +1076,9 @@ public class BtdJava {
             new com.btdlp.downloader.hls.HlsDownloader();
         
         // 初始化下载器
-        hlsDownloader.initialize(null, logger);
+        BubeDLOptions downloaderOptions = buildDownloaderOptions();
+        hlsDownloader.initialize(downloaderOptions, logger);
+        hlsDownloader.setExecutorService(getDownloadExecutor(downloaderOptions));
         
         // 创建虚拟VideoInfo对象
         VideoInfo dummyInfo = new VideoInfo();
@@ -816,6 +1092,29 @@ public class BtdJava {
         return success;
     }
     
+    /**
+     * 本实例构建的下载器共用的线程池：优先使用setDownloadExecutor设置的线程池，否则按download_threads选项共享，
+     * 批量下载时所有工作线程的片段和分块任务都在这一组线程中执行
+     */
+    private ExecutorService getDownloadExecutor(BubeDLOptions downloaderOptions) {
+        return downloadExecutor != null ? downloadExecutor : DownloadExecutors.forOptions(downloaderOptions);
+    }
+    
+    /**
+     * 将当前选项转换为下载器选项，命令行形式的键名（如concurrent-fragments）转换为下划线形式
+     */
+    private BubeDLOptions buildDownloaderOptions() {
+        BubeDLOptions downloaderOptions = new BubeDLOptions();
+        for (Map.Entry<String, String> entry : options.entrySet()) {
+            downloaderOptions.set(entry.getKey().replace('-', '_'), entry.getValue());
+        }
+        // 命令行的--no-continue对应下载器的continuedl（默认续传未完成的.part文件）
+        if (Boolean.TRUE.equals(downloaderOptions.getBoolean("no_continue"))) {
+            downloaderOptions.set("continuedl", false);
+        }
+        return downloaderOptions;
+    }
+    
     /**
      * 判断是否为流媒体格式
      * 参考Android工程的判断逻辑
@@ -938,24 +1237,35 @@ public class BtdJava {
     private boolean downloadWithHttp(VideoFormat format, String outputPath) throws Exception {
         logger.info("=== 使用HTTP下载器 ===");
         
-        // 使用BubeDL核心进行下载
-        BubeDL bubeDL = BubeDL.getInstance();
+        // 与HLS下载器一样使用本实例的选项（http_connections、ratelimit、proxy、http_headers等）
+        com.btdlp.downloader.http.HttpDownloader httpDownloader = 
+            new com.btdlp.downloader.http.HttpDownloader();
+        BubeDLOptions downloaderOptions = buildDownloaderOptions();
+        httpDownloader.initialize(downloaderOptions, logger);
+        httpDownloader.setExecutorService(getDownloadExecutor(downloaderOptions));
         
-        // 设置HTTP头部信息
-        String httpHeaders = options.get("http_headers");
-        if (httpHeaders != null && !httpHeaders.isEmpty()) {
-            bubeDL.setHttpHeaders(httpHeaders);
-        }
+        // 创建虚拟VideoInfo对象
+        VideoInfo dummyInfo = new VideoInfo();
+        dummyInfo.setTitle("video");
+        dummyInfo.setUrl(format.getUrl());
         
-        // 直接使用BubeDL的downloadFormat方法
-        return bubeDL.downloadFormat(format, outputPath, "video");
+        boolean success = httpDownloader.download(dummyInfo, format, new File(outputPath).getAbsolutePath());
+        logger.info("HTTP下载结果: " + success);
+        return success;
+    }
+    
+    /**
+     * 当前线程中应调用的进度回调，批量处理的工作线程中为空
+     */
+    private List<ProgressCallback> activeProgressCallbacks() {
+        return Boolean.TRUE.equals(inBatch.get()) ? Collections.<ProgressCallback>emptyList() : progressCallbacks;
     }
     
     /**
      * 通知进度回调
      */
     private void notifyProgressCallbacks(int percentage, long bytesDownloaded, long totalBytes) {
-        for (ProgressCallback callback : progressCallbacks) {
+        for (ProgressCallback callback : activeProgressCallbacks()) {
             try {
                 callback.onProgress(percentage, bytesDownloaded, totalBytes);
             } catch (Exception e) {
@@ -968,7 +1278,7 @@ public class BtdJava {
      * 通知完成回调
      */
     private void notifyCompleteCallbacks(String filePath) {
-        for (ProgressCallback callback : progressCallbacks) {
+        for (ProgressCallback callback : activeProgressCallbacks()) {
             try {
                 callback.onComplete(filePath);
             } catch (Exception e) {
@@ -981,7 +1291,7 @@ public class BtdJava {
      * 通知错误回调
      */
     private void notifyErrorCallbacks(String error) {
-        for (ProgressCallback callback : progressCallbacks) {
+        for (ProgressCallback callback : activeProgressCallbacks()) {
             try {
                 callback.onError(error);
             } catch (Exception e) {
@@ -1005,11 +1315,14 @@ public class BtdJava {
      * 检查URL是否支持
      */
     public static boolean isUrlSupported(String url) {
-        return url.contains("facebook.com") || url.contains("instagram.com") ||
-               url.contains("tiktok.com") || url.contains("twitter.com") ||
-               url.contains("x.com") || url.contains("dailymotion.com") ||
-               url.contains("vimeo.com") || url.contains("pornhub.com") ||
-               url.contains("xhamster.com") || url.contains("xvideos.com") ||
-               url.contains("xnxx.com");
+        // 按主机名查域名索引，不做子串匹配（如"x.com"不再误判box.com）
+        return SupportedHosts.REGISTRY.hasHostExtractor(url);
+    }
+    
+    /**
+     * isUrlSupported使用的共享注册表，首次调用时创建
+     */
+    private static final class SupportedHosts {
+        static final ExtractorRegistry REGISTRY = new ExtractorRegistry();
     }
 }
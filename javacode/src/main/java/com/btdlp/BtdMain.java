@@ -30,7 +30,7 @@ public class BtdMain {
         // 创建主下载器
         BtdJava ytdlp = new BtdJava(options);
         
-        // 设置进度回调
+        // 设置进度回调（只用于逐个下载，并行下载时按URL输出结果）
         ytdlp.addProgressCallback(new BtdJava.ProgressCallback() {
             @Override
             public void onProgress(int percentage, long bytesDownloaded, long totalBytes) {
@@ -55,6 +55,14 @@ public class BtdMain {
             }
         });
         
+        // 多个URL直接下载时并行处理
+        if (urls.size() > 1 && !"true".equals(options.get("list-formats")) && !"true".equals(options.get("simulate"))) {
+            if (downloadBatch(ytdlp, urls, options)) {
+                System.exit(1);
+            }
+            return;
+        }
+        
         // 处理每个URL
         boolean hasError = false;
         for (String url : urls) {
@@ -102,6 +110,49 @@ public class BtdMain {
         }
     }
     
+    /**
+     * 并行下载多个URL，按完成顺序输出结果
+     * @return 是否有需要报告的错误
+     */
+    private static boolean downloadBatch(BtdJava ytdlp, List<String> urls, Map<String, String> options) {
+        final boolean quiet = "true".equals(options.get("quiet"));
+        final boolean ignoreErrors = "true".equals(options.get("ignore-errors"));
+        final boolean[] hasError = {false};
+        
+        if (!quiet) {
+            System.out.println("并行下载 " + urls.size() + " 个URL，每个下载完成时输出结果");
+        }
+        BtdJava.BatchHandle handle = ytdlp.downloadBatch(urls, new BtdJava.BatchCallback<BtdJava.DownloadResult>() {
+            @Override
+            public void onResult(String url, BtdJava.DownloadResult result) {
+                synchronized (hasError) {
+                    if (result.isSuccess()) {
+                        if (!quiet) {
+                            System.out.println("🎉 下载成功: " + url);
+                            System.out.println("文件路径: " + result.getFilePath());
+                        }
+                    } else {
+                        System.err.println("💥 下载失败: " + url + " - " + result.getErrorMessage());
+                        if (!ignoreErrors) {
+                            hasError[0] = true;
+                        }
+                    }
+                }
+            }
+        });
+        
+        try {
+            handle.await();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        synchronized (hasError) {
+            return hasError[0];
+        }
+    }
+    
     /**
      * 解析命令行参数
      */
@@ -208,6 +259,8 @@ public class BtdMain {
         System.out.println("  --list-formats             列出可用格式");
         System.out.println("  --simulate                 模拟下载，不实际下载文件");
         System.out.println("  --ignore-errors            忽略错误继续处理");
+        System.out.println("  --batch-workers N          多个URL时同时下载的数量 (默认: 4)");
+        System.out.println("  --batch-per-host N         同一网站同时下载的数量 (默认: 2)");
         System.out.println("  -h, --help                 显示帮助信息");
         System.out.println();
         System.out.println("示例:");
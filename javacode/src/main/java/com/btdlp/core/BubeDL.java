@@ -7,6 +7,7 @@ import com.btdlp.utils.Logger;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Core BubeDL class for video extraction and downloading
@@ -16,6 +17,7 @@ public class BubeDL {
     private BubeDLOptions params;
     private Logger logger;
     private ExtractorRegistry extractorRegistry;
+    private ExecutorService segmentExecutor;
 
     private BubeDL() {
         this.logger = new Logger(true, true, true);  // 启用所有日志级别
@@ -49,6 +51,13 @@ public class BubeDL {
         }
     }
 
+    /**
+     * 设置HLS片段下载使用的线程池，未设置时使用HlsDownloader的共享线程池
+     */
+    public void setSegmentExecutor(ExecutorService segmentExecutor) {
+        this.segmentExecutor = segmentExecutor;
+    }
+
     public Logger getLogger() {
         return logger;
     }
@@ -62,7 +71,8 @@ public class BubeDL {
         }
         
         extractor.initialize(this);
-        VideoInfo info = extractor.extract(url);
+        VideoInfoCache cache = VideoInfoCache.forOptions(params);
+        VideoInfo info = cache != null ? cache.extract(extractor, url) : extractor.extract(url);
         
         logger.info("Successfully extracted info for: " + info.getTitle());
         return info;
@@ -130,7 +140,9 @@ public class BubeDL {
     private boolean downloadWithHlsDownloader(VideoFormat format, String outputPath, String title) throws Exception {
         try {
             logger.info("Using HLS downloader for format: " + format.getFormatId());
-            com.btdlp.downloader.hls.HlsDownloader hlsDownloader = new com.btdlp.downloader.hls.HlsDownloader();
+            com.btdlp.downloader.hls.HlsDownloader hlsDownloader = segmentExecutor != null
+                    ? new com.btdlp.downloader.hls.HlsDownloader(segmentExecutor)
+                    : new com.btdlp.downloader.hls.HlsDownloader();
             
             // 初始化下载器
             hlsDownloader.initialize(params, logger);
@@ -0,0 +1,364 @@
+package com.btdlp.core;
+
+import com.btdlp.extractor.InfoExtractor;
+import com.btdlp.options.BubeDLOptions;
+import com.btdlp.utils.JsonUtils;
+import com.btdlp.utils.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * 视频信息缓存：同一视频的extractInfo、listFormats和download只解析一次
+ * 以"提取器名称:视频ID"为键，按最近使用淘汰（LRU），有效期取cache_ttl和格式URL中签名过期时间的较小值。
+ * 支持的选项：cache_ttl（秒，默认1800，0表示不缓存）、cache_dir（同时保存到该目录下的videoinfo子目录）、
+ * no_cache_dir（只缓存在内存中）
+ */
+public final class VideoInfoCache {
+
+    public static final long DEFAULT_TTL_SECONDS = 30 * 60;
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    // 签名过期前预留的时间，避免下载开始后URL才失效
+    private static final long EXPIRY_MARGIN_MILLIS = 60 * 1000L;
+    private static final String DISK_SUBDIR = "videoinfo";
+
+    private static final Map<String, VideoInfoCache> CACHES = new HashMap<>();
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final File directory;
+    private final Logger logger = new Logger(false, false, false);
+    private final LinkedHashMap<String, CachedInfo> entries;
+
+    public VideoInfoCache(long ttlSeconds, int maxEntries, File directory) {
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        this.entries = new LinkedHashMap<String, CachedInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest) {
+                return size() > VideoInfoCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取与选项对应的共享缓存，cache_ttl为0时返回null
+     */
+    public static VideoInfoCache forOptions(BubeDLOptions options) {
+        Long ttl = options != null ? options.getLong("cache_ttl") : null;
+        long ttlSeconds = ttl != null ? ttl : DEFAULT_TTL_SECONDS;
+        if (ttlSeconds <= 0) {
+            return null;
+        }
+        String cacheDir = options != null ? options.getString("cache_dir") : null;
+        boolean noCacheDir = options != null && Boolean.TRUE.equals(options.getBoolean("no_cache_dir"));
+        if (noCacheDir || cacheDir == null || cacheDir.isEmpty()) {
+            cacheDir = null;
+        }
+        String key = ttlSeconds + "|" + cacheDir;
+        synchronized (CACHES) {
+            VideoInfoCache cache = CACHES.get(key);
+            if (cache == null) {
+                File directory = cacheDir != null ? new File(cacheDir, DISK_SUBDIR) : null;
+                cache = new VideoInfoCache(ttlSeconds, DEFAULT_MAX_ENTRIES, directory);
+                CACHES.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * 从缓存取视频信息，未命中时调用提取器并缓存结果
+     * 返回的VideoInfo可能被多个调用方共享，调用方不应修改
+     */
+    public VideoInfo extract(InfoExtractor extractor, String url) throws Exception {
+        String key = extractor.getCacheKey(url);
+        if (key != null) {
+            VideoInfo cached = get(key);
+            if (cached != null) {
+                logger.info("使用缓存的视频信息: " + key);
+                return cached;
+            }
+        }
+        VideoInfo videoInfo = extractor.extract(url);
+        if (key != null) {
+            put(key, videoInfo);
+        }
+        return videoInfo;
+    }
+
+    public VideoInfo get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            CachedInfo entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    return entry.info;
+                }
+                entries.remove(key);
+            }
+        }
+        if (directory == null) {
+            return null;
+        }
+        CachedInfo entry = readFromDisk(key);
+        if (entry == null || entry.info == null || entry.expiresAt <= now) {
+            if (entry != null) {
+                diskFile(key).delete();
+            }
+            return null;
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.info;
+    }
+
+    /**
+     * 缓存视频信息；直播、没有格式或签名即将过期的信息不缓存
+     */
+    public void put(String key, VideoInfo videoInfo) {
+        if (videoInfo == null || videoInfo.isLive() || videoInfo.getFormats() == null
+                || videoInfo.getFormats().isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = Math.min(now + ttlMillis, signedUrlExpiry(videoInfo.getFormats()) - EXPIRY_MARGIN_MILLIS);
+        if (expiresAt <= now) {
+            return;
+        }
+        CachedInfo entry = new CachedInfo(key, expiresAt, videoInfo);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        if (directory != null) {
+            writeToDisk(key, entry);
+        }
+    }
+
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+        if (directory != null) {
+            diskFile(key).delete();
+        }
+    }
+
+    /**
+     * 清空内存缓存，磁盘上的文件在读取时按过期时间清理
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 所有格式URL中最早的签名过期时间（毫秒），没有签名参数时返回Long.MAX_VALUE
+     */
+    static long signedUrlExpiry(List<VideoFormat> formats) {
+        long earliest = Long.MAX_VALUE;
+        for (VideoFormat format : formats) {
+            if (format != null && format.getUrl() != null) {
+                earliest = Math.min(earliest, urlExpiry(format.getUrl()));
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * 常见CDN签名参数：expires/expire/x-expires/validto（秒）、oe（Facebook，十六进制秒）、
+     * exp（Akamai令牌，如exp=1700000000~acl=...）、X-Amz-Date加X-Amz-Expires（S3）
+     */
+    static long urlExpiry(String url) {
+        String query;
+        try {
+            query = new URI(url).getRawQuery();
+        } catch (Exception e) {
+            int question = url.indexOf('?');
+            query = question >= 0 ? url.substring(question + 1) : null;
+        }
+        if (query == null || query.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        long earliest = Long.MAX_VALUE;
+        String amzDate = null;
+        String amzExpires = null;
+        for (String param : query.split("[&~]")) {
+            int eq = param.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String name = param.substring(0, eq).toLowerCase(Locale.ROOT);
+            String value = param.substring(eq + 1);
+            long expiry = Long.MAX_VALUE;
+            switch (name) {
+                case "expires":
+                case "expire":
+                case "x-expires":
+                case "validto":
+                case "exp":
+                    expiry = epochMillis(value, 10);
+                    break;
+                case "oe":
+                    expiry = epochMillis(value, 16);
+                    break;
+                case "hdnts":
+                case "hdnea":
+                case "token":
+                    // 令牌参数本身以~分隔，exp在编码后的值中
+                    expiry = urlExpiry("?" + value.replace("%3D", "=").replace("%3d", "=").replace("%7E", "~")
+                            .replace("%7e", "~"));
+                    break;
+                case "x-amz-date":
+                    amzDate = value;
+                    break;
+                case "x-amz-expires":
+                    amzExpires = value;
+                    break;
+                default:
+                    break;
+            }
+            earliest = Math.min(earliest, expiry);
+        }
+        if (amzDate != null && amzExpires != null) {
+            try {
+                SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.ROOT);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                long signedAt = format.parse(amzDate).getTime();
+                earliest = Math.min(earliest, signedAt + Long.parseLong(amzExpires) * 1000L);
+            } catch (ParseException | NumberFormatException e) {
+                // 格式不正确时忽略
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * 解析Unix时间戳，12位以上数字按毫秒处理；无法解析或明显不是时间戳（如有效秒数）时返回Long.MAX_VALUE
+     */
+    private static long epochMillis(String value, int radix) {
+        try {
+            long epoch = Long.parseLong(value, radix);
+            if (epoch < 1000000000L) {
+                return Long.MAX_VALUE;
+            }
+            return epoch >= 100000000000L ? epoch : epoch * 1000L;
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private File diskFile(String key) {
+        StringBuilder name = new StringBuilder(key.length() + 5);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.';
+            name.append(safe ? c : '_');
+        }
+        return new File(directory, name.append(".json").toString());
+    }
+
+    private CachedInfo readFromDisk(String key) {
+        File file = diskFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            StringBuilder json = new StringBuilder((int) file.length());
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                json.append(buffer, 0, read);
+            }
+            CachedInfo entry = JsonUtils.fromJson(json.toString(), CachedInfo.class);
+            // 文件名中替换过字符，不同的键可能对应同一文件
+            return entry != null && key.equals(entry.key) ? entry : null;
+        } catch (IOException e) {
+            logger.error("读取视频信息缓存失败: " + file + ", " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CachedInfo entry) {
+        File file = diskFile(key);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("无法创建目录 " + directory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                writer.write(JsonUtils.toJson(entry));
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("无法重命名 " + temp);
+                }
+            }
+        } catch (IOException e) {
+            temp.delete();
+            logger.error("保存视频信息缓存失败: " + file + ", " + e.getMessage());
+        }
+        pruneDisk();
+    }
+
+    /**
+     * 磁盘上的文件数超过上限时删除最旧的，已过期的文件在读取时删除
+     */
+    private void pruneDisk() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - maxEntries; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static final class CachedInfo {
+        String key;
+        long expiresAt;
+        VideoInfo info;
+
+        CachedInfo(String key, long expiresAt, VideoInfo info) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.info = info;
+        }
+    }
+}
@@ -2,12 +2,15 @@ package com.btdlp.downloader;
 
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
+import com.btdlp.network.HttpTransport;
+import com.btdlp.network.HttpTransports;
 import com.btdlp.options.BubeDLOptions;
 import com.btdlp.utils.Logger;
 
 import java.io.File;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -19,6 +22,8 @@ public abstract class BaseDownloader implements FileDownloader {
     protected Logger logger;
     protected ProgressCallback progressCallback;
     protected DownloadStats stats;
+    protected HttpTransport httpTransport;
+    protected ExecutorService executorService;
     protected final AtomicBoolean downloading = new AtomicBoolean(false);
     protected final AtomicBoolean cancelled = new AtomicBoolean(false);
     
@@ -36,6 +41,35 @@ public abstract class BaseDownloader implements FileDownloader {
         }
     }
     
+    /**
+     * 指定使用的传输层，未指定时按选项使用共享的传输层
+     */
+    public void setHttpTransport(HttpTransport httpTransport) {
+        this.httpTransport = httpTransport;
+    }
+    
+    protected HttpTransport getHttpTransport() {
+        if (httpTransport == null) {
+            httpTransport = HttpTransports.forOptions(params);
+        }
+        return httpTransport;
+    }
+    
+    /**
+     * 指定下载使用的线程池（HLS片段、HTTP分块），线程池的生命周期由调用方管理；
+     * 未指定时按download_threads选项使用共享的线程池
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+    
+    protected ExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = DownloadExecutors.forOptions(params);
+        }
+        return executorService;
+    }
+    
     public void setProgressCallback(ProgressCallback progressCallback) {
         this.progressCallback = progressCallback;
     }
@@ -188,7 +222,22 @@ public abstract class BaseDownloader implements FileDownloader {
         }
         return 0; // 无限制
     }
-    
+
+    protected int getIntParam(String key, int defaultValue) {
+        Integer value = params != null ? params.getInt(key) : null;
+        return value != null ? value : defaultValue;
+    }
+
+    protected long getLongParam(String key, long defaultValue) {
+        Long value = params != null ? params.getLong(key) : null;
+        return value != null ? value : defaultValue;
+    }
+
+    protected boolean getBooleanParam(String key, boolean defaultValue) {
+        Boolean value = params != null ? params.getBoolean(key) : null;
+        return value != null ? value : defaultValue;
+    }
+
     private long parseRateLimit(String rateLimit) {
         if (rateLimit == null || rateLimit.isEmpty()) {
             return 0;
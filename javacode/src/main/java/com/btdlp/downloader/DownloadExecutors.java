@@ -0,0 +1,77 @@
+package com.btdlp.downloader;
+
+import com.btdlp.options.BubeDLOptions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下载器共用的线程池
+ * 所有下载任务（HLS片段、HTTP分块）共用同一组线程，线程数由download_threads选项指定（默认16），
+ * 多个下载同时进行时总线程数不超过该值，多余的任务排队等待
+ */
+public final class DownloadExecutors {
+
+    public static final int DEFAULT_THREADS = 16;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final Map<Integer, ExecutorService> EXECUTORS = new HashMap<>();
+
+    private DownloadExecutors() {
+    }
+
+    /**
+     * 进程内共享的默认线程池
+     */
+    public static ExecutorService shared() {
+        return shared(DEFAULT_THREADS);
+    }
+
+    /**
+     * 按download_threads选项获取共享线程池，线程数相同的调用方共用同一个线程池
+     */
+    public static ExecutorService forOptions(BubeDLOptions options) {
+        Integer threads = options != null ? options.getInt("download_threads") : null;
+        return shared(threads != null && threads > 0 ? threads : DEFAULT_THREADS);
+    }
+
+    /**
+     * 指定线程数的共享线程池：线程按需创建，空闲超过60秒后回收
+     * 池中的任务不能再向同一线程池提交任务并等待其结果，否则线程耗尽时会死锁
+     */
+    public static ExecutorService shared(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        synchronized (EXECUTORS) {
+            ExecutorService executor = EXECUTORS.get(threads);
+            if (executor == null) {
+                executor = create(threads);
+                EXECUTORS.put(threads, executor);
+            }
+            return executor;
+        }
+    }
+
+    private static ExecutorService create(final int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private int threadCount = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "download-worker-" + threads + "-" + (++threadCount));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
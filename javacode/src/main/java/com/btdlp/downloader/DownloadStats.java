@@ -81,6 +81,10 @@ public class DownloadStats {
         this.retryCount = retryCount;
     }
     
+    public synchronized void incrementRetryCount() {
+        retryCount++;
+    }
+    
     public String getLastError() {
         return lastError;
     }
@@ -0,0 +1,22 @@
+package com.btdlp.downloader;
+
+import java.io.IOException;
+
+/**
+ * 服务器返回非预期HTTP状态码时抛出，携带状态码供重试策略判断
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,65 @@
+package com.btdlp.downloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 分片重试策略
+ * 退避时间按指数增长并设置上限，实际等待时间在[delay/2, delay]之间随机抖动，
+ * 避免大量分片在同一时刻重新请求同一个CDN节点
+ */
+public final class RetryPolicy {
+
+    public static final int DEFAULT_FRAGMENT_RETRIES = 10;
+    private static final long DEFAULT_BASE_DELAY_MS = 500;
+    private static final long DEFAULT_MAX_DELAY_MS = 15000;
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public RetryPolicy(int maxRetries) {
+        this(maxRetries, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 第attempt次重试（从1开始）前的等待时间
+     */
+    public long getDelayMillis(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 20);
+        long delay = Math.min(maxDelayMs, baseDelayMs << shift);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * 判断错误是否值得重试：服务器错误、限流、超时和连接中断可重试，
+     * 403/404等客户端错误和取消操作直接失败
+     */
+    public boolean isRetriable(Throwable error) {
+        if (error instanceof HttpStatusException) {
+            int status = ((HttpStatusException) error).getStatusCode();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        if (error instanceof SocketTimeoutException) {
+            return true;
+        }
+        if (error instanceof InterruptedIOException || error instanceof MalformedURLException) {
+            return false;
+        }
+        // 连接重置、提前EOF等网络错误
+        return error instanceof IOException;
+    }
+}
@@ -0,0 +1,136 @@
+package com.btdlp.downloader.hls;
+
+import java.io.EOFException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EXT-X-BYTERANGE片段的请求合并
+ * 同一资源上首尾相接的字节范围合并为一次较大的Range请求，第一个需要该范围的片段任务负责下载，
+ * 同组的其它片段等待后直接从内存中截取自己的部分；组内每个片段都至少取过一次数据后释放内存
+ */
+class ByteRangeCoalescer {
+
+    /**
+     * 按字节范围下载资源，由下载器负责实际的HTTP请求
+     */
+    interface RangeLoader {
+        ByteBuffer load(String uri, long offset, long length) throws Exception;
+    }
+
+    private final Map<M3u8Playlist.Segment, Run> runs = new IdentityHashMap<>();
+    // 片段在所属合并范围中的序号
+    private final Map<M3u8Playlist.Segment, Integer> slots = new IdentityHashMap<>();
+    private final int runCount;
+
+    /**
+     * @param maxRunBytes 合并后单个请求的最大字节数，单个片段超过该值时单独请求
+     */
+    ByteRangeCoalescer(List<M3u8Playlist.Segment> segments, long maxRunBytes) {
+        Run current = null;
+        int count = 0;
+        for (M3u8Playlist.Segment segment : segments) {
+            M3u8Playlist.ByteRange range = segment.getByteRange();
+            if (range == null) {
+                current = null;
+                continue;
+            }
+            if (current == null || !current.canAppend(segment.getUri(), range, maxRunBytes)) {
+                current = new Run(segment.getUri(), range.getOffset());
+                count++;
+            }
+            slots.put(segment, current.append(range));
+            runs.put(segment, current);
+        }
+        this.runCount = count;
+    }
+
+    /**
+     * 合并后的请求数
+     */
+    int getRunCount() {
+        return runCount;
+    }
+
+    boolean contains(M3u8Playlist.Segment segment) {
+        return runs.containsKey(segment);
+    }
+
+    /**
+     * 把片段的字节范围写入输出流，所在的合并范围尚未下载时先下载
+     */
+    long transfer(M3u8Playlist.Segment segment, OutputStream outputStream, RangeLoader loader) throws Exception {
+        Run run = runs.get(segment);
+        int slot = slots.get(segment);
+        M3u8Playlist.ByteRange range = segment.getByteRange();
+        ByteBuffer data = run.acquire(loader);
+        try {
+            int start = (int) (range.getOffset() - run.offset);
+            if (start + range.getLength() > data.limit()) {
+                throw new EOFException("Byte range " + range.getOffset() + "-" + range.getEnd()
+                        + " beyond downloaded data of " + run.uri);
+            }
+            outputStream.write(data.array(), data.arrayOffset() + start, (int) range.getLength());
+            return range.getLength();
+        } finally {
+            // 写入失败也记为已取用，同一片段重试时不会重复计数
+            run.release(slot);
+        }
+    }
+
+    /**
+     * 同一资源上连续的字节范围
+     */
+    private static class Run {
+        private final String uri;
+        private final long offset;
+        private long length;
+        private int segments;
+        // 已取用过数据的片段序号
+        private final BitSet consumed = new BitSet();
+        private ByteBuffer data;
+
+        Run(String uri, long offset) {
+            this.uri = uri;
+            this.offset = offset;
+        }
+
+        boolean canAppend(String segmentUri, M3u8Playlist.ByteRange range, long maxRunBytes) {
+            return uri.equals(segmentUri) && range.getOffset() == offset + length
+                    && length + range.getLength() <= maxRunBytes;
+        }
+
+        /**
+         * 追加片段的字节范围，返回片段在组内的序号
+         */
+        int append(M3u8Playlist.ByteRange range) {
+            length += range.getLength();
+            return segments++;
+        }
+
+        /**
+         * 同组片段在锁上等待第一个片段下载完成；下载失败时数据保持为空，下一个调用者（或重试）重新下载
+         */
+        synchronized ByteBuffer acquire(RangeLoader loader) throws Exception {
+            if (data == null) {
+                data = loader.load(uri, offset, length);
+            }
+            return data;
+        }
+
+        /**
+         * 组内每个片段都取用过数据后释放内存；之后再次请求（如片段校验失败重试）会重新下载
+         */
+        synchronized void release(int slot) {
+            consumed.set(slot);
+            if (consumed.cardinality() >= segments) {
+                data = null;
+                consumed.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.btdlp.downloader.hls;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * fMP4/CMAF片段的原生封装
+ * 输出文件由EXT-X-MAP初始化段(ftyp+moov)和各片段原样保留的moof/mdat组成，即标准的分段MP4，
+ * 不需要ffmpeg重新封装；可选在文件末尾追加mfra随机访问索引，便于播放器快速定位
+ */
+final class Fmp4Remuxer {
+
+    private static final int BOX_HEADER_SIZE = 8;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    // moof只包含采样表，超过该大小视为损坏的文件
+    private static final int MAX_MOOF_SIZE = 64 * 1024 * 1024;
+
+    private Fmp4Remuxer() {
+    }
+
+    /**
+     * 播放列表是否为fMP4片段（带EXT-X-MAP）
+     */
+    static boolean isFragmented(M3u8Playlist playlist) {
+        for (M3u8Playlist.Segment segment : playlist.getSegments()) {
+            if (segment.getInitSection() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 片段前是否需要写入初始化段：第一个片段，或初始化段与前一个片段不同（如DISCONTINUITY后切换了EXT-X-MAP）
+     */
+    static boolean needsInitSection(M3u8Playlist.Segment previous, M3u8Playlist.Segment segment) {
+        M3u8Playlist.InitSection init = segment.getInitSection();
+        if (init == null) {
+            return false;
+        }
+        return previous == null || !initKey(init).equals(initKey(previous.getInitSection()));
+    }
+
+    /**
+     * 初始化段的缓存键，直播刷新后重新解析的同一初始化段键相同
+     */
+    static String initKey(M3u8Playlist.InitSection init) {
+        if (init == null) {
+            return "";
+        }
+        M3u8Playlist.ByteRange range = init.getByteRange();
+        return range == null ? init.getUri() : init.getUri() + "@" + range.getOffset() + "-" + range.getEnd();
+    }
+
+    /**
+     * 校验初始化段包含moov
+     */
+    static void checkInitSection(ByteBuffer data) throws IOException {
+        if (!containsBoxes(data, "moov", null)) {
+            throw new IOException("Invalid fMP4 init section: moov box not found");
+        }
+    }
+
+    /**
+     * 校验媒体片段的顶层box结构完整且包含moof和mdat，CDN返回的错误页面或截断数据会被识别出来重试
+     */
+    static void checkSegment(ByteBuffer data, int index) throws IOException {
+        if (!containsBoxes(data, "moof", "mdat")) {
+            throw new IOException("Invalid fMP4 segment " + index + ": moof/mdat boxes not found");
+        }
+    }
+
+    private static boolean containsBoxes(ByteBuffer data, String first, String second) throws IOException {
+        boolean foundFirst = false;
+        boolean foundSecond = second == null;
+        int position = data.position();
+        int limit = data.limit();
+        while (position < limit) {
+            if (limit - position < BOX_HEADER_SIZE) {
+                throw new IOException("Truncated fMP4 box header at " + position);
+            }
+            long size = data.getInt(position) & 0xFFFFFFFFL;
+            int headerSize = BOX_HEADER_SIZE;
+            if (size == 1) {
+                if (limit - position < 16) {
+                    throw new IOException("Truncated fMP4 box header at " + position);
+                }
+                size = data.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = limit - position;
+            }
+            if (size < headerSize || size > limit - position) {
+                throw new IOException("Invalid fMP4 box size " + size + " at " + position);
+            }
+            String type = boxType(data, position + 4);
+            foundFirst |= type.equals(first);
+            foundSecond |= type.equals(second);
+            position += (int) size;
+        }
+        return foundFirst && foundSecond;
+    }
+
+    /**
+     * 扫描已组装的文件，为每个moof中的每个track记录解码时间和偏移，在文件末尾追加mfra索引。
+     * 只读取box头部和moof，mdat直接跳过；读取复用同一个直接缓冲区。返回追加的字节数
+     */
+    static long appendIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Map<Integer, List<long[]>> entries = new LinkedHashMap<>();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+            long fileSize = channel.size();
+            long position = 0;
+
+            while (position + BOX_HEADER_SIZE <= fileSize) {
+                buffer.clear().limit(16);
+                readFully(channel, buffer, position, (int) Math.min(16, fileSize - position));
+                long size = buffer.getInt(0) & 0xFFFFFFFFL;
+                String type = boxType(buffer, 4);
+                if (size == 1 && buffer.limit() >= 16) {
+                    size = buffer.getLong(8);
+                } else if (size == 0) {
+                    size = fileSize - position;
+                }
+                if (size < BOX_HEADER_SIZE || position + size > fileSize) {
+                    throw new IOException("Invalid fMP4 box size " + size + " at " + position);
+                }
+                if ("mfra".equals(type)) {
+                    // 已经有索引（例如重复调用），不再追加
+                    return 0;
+                }
+
+                if ("moof".equals(type)) {
+                    if (size > MAX_MOOF_SIZE) {
+                        throw new IOException("moof box too large: " + size);
+                    }
+                    if (size > buffer.capacity()) {
+                        buffer = ByteBuffer.allocateDirect((int) size);
+                    }
+                    buffer.clear().limit((int) size);
+                    readFully(channel, buffer, position, (int) size);
+                    indexMoof(buffer, position, entries);
+                }
+                position += size;
+            }
+
+            if (entries.isEmpty()) {
+                return 0;
+            }
+            ByteBuffer mfra = buildMfra(entries);
+            int length = mfra.remaining();
+            channel.position(fileSize);
+            while (mfra.hasRemaining()) {
+                channel.write(mfra);
+            }
+            return length;
+        }
+    }
+
+    /**
+     * 读取moof中每个traf的track_ID和tfdt基准解码时间
+     */
+    private static void indexMoof(ByteBuffer moof, long moofOffset, Map<Integer, List<long[]>> entries) {
+        int trafNumber = 0;
+        int end = moof.limit();
+        for (int traf = BOX_HEADER_SIZE; traf + BOX_HEADER_SIZE <= end; ) {
+            int trafSize = moof.getInt(traf);
+            if (trafSize < BOX_HEADER_SIZE || trafSize > end - traf) {
+                return;
+            }
+            if ("traf".equals(boxType(moof, traf + 4))) {
+                trafNumber++;
+                int trackId = -1;
+                long decodeTime = -1;
+                int trafEnd = traf + trafSize;
+                for (int child = traf + BOX_HEADER_SIZE; child + BOX_HEADER_SIZE <= trafEnd; ) {
+                    int childSize = moof.getInt(child);
+                    if (childSize < BOX_HEADER_SIZE || childSize > trafEnd - child) {
+                        break;
+                    }
+                    String childType = boxType(moof, child + 4);
+                    if ("tfhd".equals(childType) && childSize >= 16) {
+                        trackId = moof.getInt(child + 12);
+                    } else if ("tfdt".equals(childType) && childSize >= 16) {
+                        int version = moof.get(child + 8) & 0xFF;
+                        decodeTime = version == 1 && childSize >= 20
+                                ? moof.getLong(child + 12) : moof.getInt(child + 12) & 0xFFFFFFFFL;
+                    }
+                    child += childSize;
+                }
+                if (trackId >= 0 && decodeTime >= 0) {
+                    List<long[]> trackEntries = entries.get(trackId);
+                    if (trackEntries == null) {
+                        trackEntries = new ArrayList<>();
+                        entries.put(trackId, trackEntries);
+                    }
+                    trackEntries.add(new long[]{decodeTime, moofOffset, trafNumber});
+                }
+            }
+            traf += trafSize;
+        }
+    }
+
+    /**
+     * 构造mfra：每个track一个tfra（version 1，64位时间和偏移，traf/trun/sample编号各1字节），最后是mfro
+     */
+    private static ByteBuffer buildMfra(Map<Integer, List<long[]>> entries) {
+        int size = BOX_HEADER_SIZE + 16;
+        for (List<long[]> trackEntries : entries.values()) {
+            size += 24 + trackEntries.size() * 19;
+        }
+
+        ByteBuffer mfra = ByteBuffer.allocate(size);
+        mfra.putInt(size).put(boxName("mfra"));
+        for (Map.Entry<Integer, List<long[]>> track : entries.entrySet()) {
+            List<long[]> trackEntries = track.getValue();
+            mfra.putInt(24 + trackEntries.size() * 19).put(boxName("tfra"));
+            mfra.putInt(0x01000000);
+            mfra.putInt(track.getKey());
+            mfra.putInt(0);
+            mfra.putInt(trackEntries.size());
+            for (long[] entry : trackEntries) {
+                mfra.putLong(entry[0]);
+                mfra.putLong(entry[1]);
+                mfra.put((byte) entry[2]);
+                mfra.put((byte) 1);
+                mfra.put((byte) 1);
+            }
+        }
+        mfra.putInt(16).put(boxName("mfro"));
+        mfra.putInt(0);
+        mfra.putInt(size);
+        mfra.flip();
+        return mfra;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+    }
+
+    private static String boxType(ByteBuffer data, int offset) {
+        char[] type = new char[4];
+        for (int i = 0; i < 4; i++) {
+            type[i] = (char) (data.get(offset + i) & 0xFF);
+        }
+        return new String(type);
+    }
+
+    private static byte[] boxName(String type) {
+        byte[] name = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            name[i] = (byte) type.charAt(i);
+        }
+        return name;
+    }
+}
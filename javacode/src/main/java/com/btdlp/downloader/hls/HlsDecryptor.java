@@ -0,0 +1,177 @@
+package com.btdlp.downloader.hls;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HLS片段解密器（EXT-X-KEY METHOD=AES-128）
+ * 密钥按URI缓存，同一密钥只请求一次，请求不持有锁，不同密钥可以同时加载；每个工作线程复用自己的Cipher实例。
+ * IV优先使用播放列表中的显式IV，否则使用片段的媒体序号
+ */
+class HlsDecryptor {
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final int KEY_LENGTH = 16;
+    // 直播流可能周期性轮换密钥，只保留最近加入的密钥
+    private static final int MAX_CACHED_KEYS = 32;
+
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES cipher not available", e);
+            }
+        }
+    };
+
+    /**
+     * 密钥加载回调，由下载器负责实际的HTTP请求
+     */
+    interface KeyLoader {
+        byte[] load(String uri) throws Exception;
+    }
+
+    private final KeyLoader keyLoader;
+    // 每个URI一个加载任务，第一个需要该密钥的线程执行，其它线程等待其结果
+    private final ConcurrentMap<String, FutureTask<byte[]>> keys = new ConcurrentHashMap<>();
+    // 密钥加入缓存的顺序，超过上限时先淘汰最早加入的
+    private final Queue<String> keyOrder = new ConcurrentLinkedQueue<>();
+
+    HlsDecryptor(KeyLoader keyLoader) {
+        this.keyLoader = keyLoader;
+    }
+
+    /**
+     * 检查片段的加密方式是否受支持，不支持时抛出异常
+     */
+    static void checkSupported(M3u8Playlist.Key key) throws IOException {
+        if (key == null || key.isNone()) {
+            return;
+        }
+        if (!"AES-128".equals(key.getMethod())) {
+            throw new IOException("Unsupported HLS encryption method " + key.getMethod()
+                    + ", use the ffmpeg downloader for this stream");
+        }
+        if (key.getKeyFormat() != null && !"identity".equals(key.getKeyFormat())) {
+            throw new IOException("Unsupported HLS key format " + key.getKeyFormat() + " (DRM protected stream)");
+        }
+        if (key.getUri() == null) {
+            throw new IOException("EXT-X-KEY without URI");
+        }
+    }
+
+    /**
+     * 原地解密内存中的片段数据，返回解密后的数据视图
+     */
+    ByteBuffer decrypt(M3u8Playlist.Segment segment, ByteBuffer data) throws Exception {
+        if (!segment.isEncrypted()) {
+            return data;
+        }
+
+        Cipher cipher = initCipher(segment);
+        int start = data.position();
+        // doFinal对同一块内存的输入输出是安全的，解密结果不会超过密文长度
+        ByteBuffer output = data.duplicate();
+        cipher.doFinal(data, output);
+        output.limit(output.position());
+        output.position(start);
+        return output;
+    }
+
+    /**
+     * 包装输出流，写入的密文在落盘前解密
+     */
+    OutputStream decryptingStream(M3u8Playlist.Segment segment, OutputStream outputStream) throws Exception {
+        if (!segment.isEncrypted()) {
+            return outputStream;
+        }
+        return new CipherOutputStream(outputStream, initCipher(segment));
+    }
+
+    private Cipher initCipher(M3u8Playlist.Segment segment) throws Exception {
+        M3u8Playlist.Key key = segment.getKey();
+        checkSupported(key);
+        byte[] iv = key.hasIv() ? key.ivBytes() : sequenceIv(segment.getSequence());
+
+        Cipher cipher = CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(getKey(key.getUri()), "AES"), new IvParameterSpec(iv));
+        return cipher;
+    }
+
+    /**
+     * 获取密钥，加载失败时移除缓存的任务，之后的片段会重新请求
+     */
+    private byte[] getKey(final String uri) throws Exception {
+        FutureTask<byte[]> task = keys.get(uri);
+        if (task == null) {
+            FutureTask<byte[]> created = new FutureTask<>(() -> loadKey(uri));
+            task = keys.putIfAbsent(uri, created);
+            if (task == null) {
+                task = created;
+                keyOrder.add(uri);
+                evictOldKeys();
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (keys.remove(uri, task)) {
+                keyOrder.remove(uri);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private byte[] loadKey(String uri) throws Exception {
+        byte[] key = keyLoader.load(uri);
+        if (key == null || key.length != KEY_LENGTH) {
+            throw new IOException("Invalid AES-128 key from " + uri + ": "
+                    + (key == null ? 0 : key.length) + " bytes");
+        }
+        return key;
+    }
+
+    private void evictOldKeys() {
+        while (keys.size() > MAX_CACHED_KEYS) {
+            String oldest = keyOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            keys.remove(oldest);
+        }
+    }
+
+    /**
+     * 未指定IV时，以媒体序号的128位大端表示作为IV
+     */
+    private static byte[] sequenceIv(long sequence) {
+        byte[] iv = new byte[KEY_LENGTH];
+        for (int i = 0; i < 8; i++) {
+            iv[KEY_LENGTH - 1 - i] = (byte) (sequence >>> (8 * i));
+        }
+        return iv;
+    }
+}
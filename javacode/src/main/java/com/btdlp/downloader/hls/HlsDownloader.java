@@ -3,13 +3,24 @@ package com.btdlp.downloader.hls;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.downloader.BaseDownloader;
+import com.btdlp.downloader.HttpStatusException;
+import com.btdlp.downloader.RetryPolicy;
+import com.btdlp.network.HttpTransport;
+import com.btdlp.utils.FormatSelector;
 import com.btdlp.utils.Logger;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
  * HLS (HTTP Live Streaming) 下载器
@@ -17,13 +28,39 @@ import java.util.concurrent.*;
 public class HlsDownloader extends BaseDownloader {
     
     private static final int BUFFER_SIZE = 8192;
-    private static final int MAX_CONCURRENT_DOWNLOADS = 4;
+    private static final int DEFAULT_CONCURRENT_FRAGMENTS = 4;
+    private static final int DEFAULT_REORDER_WINDOW = 16;
+    private static final int SEGMENT_BUFFER_HINT = 512 * 1024;
+    // 估算大小不超过该值时使用内存模式，实际下载量超过该值时改用流式下载
+    private static final long DEFAULT_MEMORY_THRESHOLD = 32L * 1024 * 1024;
+    // 播放列表和格式都没有码率信息时估算大小使用的码率
+    private static final long DEFAULT_ESTIMATE_BITRATE = 2L * 1024 * 1024;
+    // 相邻字节范围合并后单个请求的上限
+    private static final long DEFAULT_BYTERANGE_COALESCE = 8L * 1024 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String SEGMENTS_DIR_SUFFIX = ".segments";
+    // 直播播放列表连续这么多个目标时长没有新片段时视为直播结束
+    private static final int LIVE_STALL_TARGET_DURATIONS = 3;
+    // 直播录制连续跳过这么多个片段时中止（如令牌过期后所有片段都返回403）
+    private static final int DEFAULT_LIVE_MAX_SKIPPED = 10;
+    // 吞吐量模式下只选择带宽不超过实测吞吐量这一比例的变体
+    private static final double THROUGHPUT_SAFETY_FACTOR = 0.8;
     
-    private ExecutorService executorService;
+    private HlsDecryptor decryptor;
+    private ByteRangeCoalescer byteRanges;
+    // fMP4初始化段按URI和字节范围缓存，同一初始化段只请求一次
+    private final Map<String, byte[]> initSections = new HashMap<>();
+    private long segmentBytesDownloaded;
+    private long estimatedTotalSize;
+    // 从主播放列表选择的变体的BANDWIDTH（bps），直接给出媒体播放列表时为0
+    private long variantBandwidth;
     
+    /**
+     * 使用按download_threads选项共享的线程池
+     */
     public HlsDownloader() {
         super();
-        this.executorService = Executors.newFixedThreadPool(MAX_CONCURRENT_DOWNLOADS);
         
         // 确保logger被初始化
         if (this.logger == null) {
@@ -31,6 +68,18 @@ public class HlsDownloader extends BaseDownloader {
         }
     }
     
+    /**
+     * 使用外部注入的片段线程池，线程池的生命周期由调用方管理，
+     * 多个下载任务可以共用同一个线程池
+     */
+    public HlsDownloader(ExecutorService executorService) {
+        this();
+        if (executorService == null) {
+            throw new IllegalArgumentException("executorService must not be null");
+        }
+        this.executorService = executorService;
+    }
+    
     public String getDownloaderName() {
         return "hls";
     }
@@ -63,16 +112,42 @@ public class HlsDownloader extends BaseDownloader {
         try {
             // 下载播放列表
             logger.info("开始下载播放列表...");
-            HlsPlaylist playlist = downloadPlaylist(url, format);
+            variantBandwidth = 0;
+            M3u8Playlist playlist = downloadPlaylist(url, format);
             if (playlist == null || playlist.getSegments().isEmpty()) {
                 throw new IOException("No segments found in playlist");
             }
             
             logger.info("播放列表下载完成，找到 " + playlist.getSegments().size() + " 个片段");
             
-            // 下载所有片段
-            logger.info("开始下载所有片段...");
-            boolean success = downloadSegments(playlist, format, outputFile);
+            // 加密流：检查加密方式，密钥按URI缓存在本次下载的解密器中
+            for (M3u8Playlist.Segment segment : playlist.getSegments()) {
+                HlsDecryptor.checkSupported(segment.getKey());
+            }
+            final RetryPolicy keyRetryPolicy = getRetryPolicy();
+            decryptor = new HlsDecryptor(keyUri -> withRetries(keyRetryPolicy, "密钥 " + keyUri,
+                    () -> fetchBytes(keyUri, format)));
+            synchronized (initSections) {
+                initSections.clear();
+            }
+            
+            // EXT-X-BYTERANGE片段：同一资源上相邻的范围合并请求（直播播放列表每次刷新都会变化，不合并）
+            byteRanges = null;
+            if (!playlist.isLive() && hasByteRanges(playlist)) {
+                byteRanges = new ByteRangeCoalescer(playlist.getSegments(),
+                        getLongParam("hls_byterange_coalesce", DEFAULT_BYTERANGE_COALESCE));
+                logger.info("字节范围片段合并为 %s 个请求", byteRanges.getRunCount());
+            }
+            
+            boolean success;
+            if (playlist.isLive() && getBooleanParam("hls_live", true)) {
+                // 没有EXT-X-ENDLIST的播放列表按直播处理，持续轮询新片段
+                success = downloadLive(playlist, format, outputFile);
+            } else {
+                // 下载所有片段
+                logger.info("开始下载所有片段...");
+                success = downloadSegments(playlist, format, outputFile);
+            }
             
             if (success) {
                 logger.info("HLS下载完成: " + outputFile.getAbsolutePath());
@@ -88,186 +163,261 @@ public class HlsDownloader extends BaseDownloader {
             logger.error("HLS下载过程中发生异常: " + e.getMessage());
             e.printStackTrace();
             throw e;
-        } finally {
-            shutdownExecutor();
         }
     }
     
-    private HlsPlaylist downloadPlaylist(String url, VideoFormat format) throws Exception {
-        URL urlObj = new URL(url);
-        HttpURLConnection connection = createConnection(urlObj, format);
+    /**
+     * 下载播放列表：每个播放列表只请求一次，主播放列表时先选择变体再请求其媒体播放列表
+     */
+    private M3u8Playlist downloadPlaylist(String url, VideoFormat format) throws Exception {
+        RetryPolicy retryPolicy = getRetryPolicy();
+        M3u8Playlist playlist = withRetries(retryPolicy, "播放列表", () -> fetchPlaylist(url, format));
+        if (!playlist.isMaster()) {
+            return playlist;
+        }
         
-        try {
-            int responseCode = connection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                throw new IOException("HTTP error: " + responseCode);
-            }
-            
-            // 首先检查是否是主播放列表
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                String line;
-                boolean isMasterPlaylist = false;
-                int lineCount = 0;
-                
-                // 检查前10行是否包含EXT-X-STREAM-INF
-                while ((line = reader.readLine()) != null && lineCount < 10) {
-                    if (line.contains("EXT-X-STREAM-INF")) {
-                        isMasterPlaylist = true;
-                        break;
+        logger.info("检测到主播放列表，共 %s 个变体", playlist.getVariants().size());
+        M3u8Playlist.Variant variant = selectVariant(playlist, format);
+        logger.info("选择变体: %sx%s, %s bps, %s", variant.getWidth(), variant.getHeight(),
+                variant.getBandwidth(), variant.getUri());
+        variantBandwidth = variant.getBandwidth();
+        
+        M3u8Playlist mediaPlaylist = withRetries(retryPolicy, "媒体播放列表", () -> fetchPlaylist(variant.getUri(), format));
+        if (mediaPlaylist.isMaster()) {
+            throw new IOException("Variant is a master playlist: " + variant.getUri());
+        }
+        return mediaPlaylist;
+    }
+    
+    /**
+     * 按format选项选择变体，格式规格与BtdJava选择提取格式时相同（best、worst、best[height<=720]等）。
+     * hls_variant_selection=throughput时先用最低码率变体的第一个片段测量链路吞吐量，
+     * 排除链路无法持续承载的变体后再按格式规格选择
+     */
+    private M3u8Playlist.Variant selectVariant(M3u8Playlist master, VideoFormat format) {
+        List<M3u8Playlist.Variant> variants = new ArrayList<>(master.getVariants());
+        // 按带宽从高到低排列，格式ID不匹配时默认选择第一个即带宽最高的变体
+        Collections.sort(variants, (a, b) -> Long.compare(b.getBandwidth(), a.getBandwidth()));
+        
+        String mode = params != null ? params.getString("hls_variant_selection") : null;
+        if ("throughput".equals(mode)) {
+            long throughput = measureThroughput(variants.get(variants.size() - 1), format);
+            if (throughput > 0) {
+                long sustainable = (long) (throughput * THROUGHPUT_SAFETY_FACTOR);
+                List<M3u8Playlist.Variant> affordable = new ArrayList<>();
+                for (M3u8Playlist.Variant variant : variants) {
+                    if (variant.getBandwidth() <= sustainable) {
+                        affordable.add(variant);
                     }
-                    lineCount++;
-                }
-                
-                if (isMasterPlaylist) {
-                    // 这是主播放列表，需要选择最佳变体
-                    logger.info("检测到主播放列表，选择最佳变体");
-                    connection.disconnect();
-                    return downloadVariantPlaylist(url, format);
-                }
-                
-                // 重置流到开始位置
-                reader.close();
-                connection.disconnect();
-                
-                // 重新创建连接
-                connection = createConnection(urlObj, format);
-                try (BufferedReader newReader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                    return parsePlaylist(newReader, url);
                 }
+                logger.info("实测吞吐量: %s bps，可承载 %s 个变体", throughput, affordable.size());
+                variants = affordable.isEmpty()
+                        ? Collections.singletonList(variants.get(variants.size() - 1)) : affordable;
             }
-            
-        } finally {
-            connection.disconnect();
         }
+        
+        List<VideoFormat> candidates = new ArrayList<>();
+        for (M3u8Playlist.Variant variant : variants) {
+            candidates.add(toVideoFormat(variant));
+        }
+        VideoFormat selected = FormatSelector.select(candidates, params != null ? params.getString("format") : null);
+        return variants.get(candidates.indexOf(selected));
     }
     
-    private HlsPlaylist parsePlaylist(BufferedReader reader, String baseUrl) throws Exception {
-        HlsPlaylist playlist = new HlsPlaylist();
-        String line;
-        HlsSegment currentSegment = null;
-        
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            
-            if (line.startsWith("#EXT-X-VERSION:")) {
-                playlist.setVersion(parseVersion(line));
-            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
-                playlist.setTargetDuration(parseTargetDuration(line));
-            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
-                playlist.setMediaSequence(parseMediaSequence(line));
-            } else if (line.startsWith("#EXTINF:")) {
-                // 创建一个新的片段并设置时长
-                currentSegment = new HlsSegment();
-                currentSegment.setDuration(parseSegmentDuration(line));
-            } else if (line.startsWith("#EXT-X-ENDLIST")) {
-                playlist.setEndList(true);
-            } else if (!line.startsWith("#") && !line.isEmpty()) {
-                // 这是一个片段URL
-                if (currentSegment != null) {
-                    currentSegment.setUrl(resolveUrl(line, baseUrl));
-                    playlist.addSegment(currentSegment);
-                    currentSegment = null; // 重置当前片段
+    /**
+     * 把变体转换为VideoFormat，以便复用格式选择逻辑
+     */
+    private VideoFormat toVideoFormat(M3u8Playlist.Variant variant) {
+        VideoFormat format = new VideoFormat();
+        int tbr = (int) (variant.getBandwidth() / 1000);
+        format.setFormatId("hls-" + tbr);
+        format.setUrl(variant.getUri());
+        format.setExt("mp4");
+        format.setProtocol("hls");
+        format.setTbr(tbr);
+        format.setQuality(tbr);
+        if (variant.getHeight() > 0) {
+            format.setWidth(variant.getWidth());
+            format.setHeight(variant.getHeight());
+        }
+        if (variant.getFrameRate() > 0) {
+            format.setFps((int) Math.round(variant.getFrameRate()));
+        }
+        if (variant.getCodecs() != null) {
+            for (String codec : variant.getCodecs().split(",")) {
+                codec = codec.trim();
+                if (codec.startsWith("mp4a") || codec.startsWith("ac-3") || codec.startsWith("ec-3")
+                        || codec.startsWith("opus") || codec.startsWith("flac")) {
+                    format.setAcodec(codec);
+                } else if (!codec.isEmpty()) {
+                    format.setVcodec(codec);
                 }
             }
         }
-        
-        return playlist;
+        return format;
     }
     
-    private HlsPlaylist downloadVariantPlaylist(String url, VideoFormat format) throws Exception {
-        // 下载变体播放列表，选择最佳质量
-        URL urlObj = new URL(url);
-        HttpURLConnection connection = createConnection(urlObj, format);
-        
+    /**
+     * 下载变体的第一个片段测量吞吐量（bps），失败时返回0
+     */
+    private long measureThroughput(M3u8Playlist.Variant variant, VideoFormat format) {
         try {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                String line;
-                String bestUrl = null;
-                int bestBandwidth = 0;
-                
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    
-                    if (line.startsWith("#EXT-X-STREAM-INF:")) {
-                        // 解析带宽信息
-                        String bandwidthStr = extractAttribute(line, "BANDWIDTH");
-                        if (bandwidthStr != null) {
-                            int bandwidth = Integer.parseInt(bandwidthStr);
-                            if (bandwidth > bestBandwidth) {
-                                bestBandwidth = bandwidth;
-                                String nextLine = reader.readLine();
-                                if (nextLine != null && !nextLine.startsWith("#")) {
-                                    bestUrl = resolveUrl(nextLine.trim(), url);
-                                }
-                            }
-                        }
-                    }
+            M3u8Playlist playlist = fetchPlaylist(variant.getUri(), format);
+            if (playlist.getSegments().isEmpty()) {
+                return 0;
+            }
+            
+            OutputStream discard = new OutputStream() {
+                @Override
+                public void write(int b) {
                 }
                 
-                if (bestUrl != null) {
-                    return downloadPlaylist(bestUrl, format);
+                @Override
+                public void write(byte[] b, int off, int len) {
                 }
+            };
+            long start = System.nanoTime();
+            long bytes = transferSegment(playlist.getSegments().get(0), format, 0, discard);
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            return bytes * 8L * 1000000000L / elapsed;
+        } catch (Exception e) {
+            logger.warning("测量吞吐量失败: %s", e.getMessage());
+            return 0;
+        }
+    }
+    
+    /**
+     * 下载较小的二进制资源（如解密密钥）
+     */
+    private byte[] fetchBytes(String url, VideoFormat format) throws Exception {
+        return fetchBytes(url, format, null);
+    }
+    
+    /**
+     * 下载较小的二进制资源，range不为null时只请求该字节范围（如带BYTERANGE的EXT-X-MAP）
+     */
+    private byte[] fetchBytes(String url, VideoFormat format, M3u8Playlist.ByteRange range) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        transfer(url, range, format, url, outputStream);
+        return outputStream.toByteArray();
+    }
+    
+    /**
+     * 获取fMP4初始化段，下载后校验包含moov
+     */
+    private byte[] loadInitSection(M3u8Playlist.InitSection init, VideoFormat format) throws Exception {
+        String key = Fmp4Remuxer.initKey(init);
+        synchronized (initSections) {
+            byte[] data = initSections.get(key);
+            if (data == null) {
+                data = withRetries(getRetryPolicy(), "初始化段 " + init.getUri(), () -> {
+                    byte[] bytes = fetchBytes(init.getUri(), format, init.getByteRange());
+                    Fmp4Remuxer.checkInitSection(ByteBuffer.wrap(bytes));
+                    return bytes;
+                });
+                logger.info("下载fMP4初始化段: %s (%s bytes)", init.getUri(), data.length);
+                initSections.put(key, data);
             }
-            
-        } finally {
-            connection.disconnect();
+            return data;
+        }
+    }
+    
+    /**
+     * 拉取并解析播放列表，相对地址以重定向后的最终地址为基准
+     */
+    private M3u8Playlist fetchPlaylist(String url, VideoFormat format) throws Exception {
+        try (HttpTransport.Response response = getHttpTransport().execute(createRequest(url, format))) {
+            int responseCode = response.getStatusCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(responseCode, "HTTP error: " + responseCode + " for playlist");
+            }
+            long contentLength = response.getContentLength();
+            ByteArrayOutputStream body = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : BUFFER_SIZE);
+            InputStream inputStream = response.getBody();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, bytesRead);
+            }
+            // 截断的播放列表缺少EXT-X-ENDLIST，会被误当作直播处理
+            if (contentLength >= 0 && body.size() != contentLength) {
+                throw new EOFException("Playlist truncated: " + body.size() + "/" + contentLength + " bytes");
+            }
+            return M3u8Parser.parse(new String(body.toByteArray(), StandardCharsets.UTF_8), response.getUrl());
         }
-        
-        return null;
     }
     
-    private boolean downloadSegments(HlsPlaylist playlist, VideoFormat format, File outputFile) throws Exception {
-        List<HlsSegment> segments = playlist.getSegments();
-        Path tempDir = Files.createTempDirectory("hls_download");
+    private boolean downloadSegments(M3u8Playlist playlist, VideoFormat format, File outputFile) throws Exception {
+        // 估算大小低于hls_memory_threshold(字节)的短视频整段保存在内存中，最后一次性写出
+        long memoryThreshold = getLongParam("hls_memory_threshold", DEFAULT_MEMORY_THRESHOLD);
+        long estimatedTotalSize = calculateEstimatedTotalSize(playlist, format);
+        if (memoryThreshold > 0 && estimatedTotalSize <= memoryThreshold) {
+            try {
+                return downloadSegmentsInMemory(playlist, format, outputFile, estimatedTotalSize, memoryThreshold);
+            } catch (MemoryThresholdExceededException e) {
+                // 码率信息不准确时不能把整个视频留在堆上
+                logger.warning("已下载 %s bytes，超过内存模式上限 %s bytes，改用流式下载",
+                        e.getBytes(), memoryThreshold);
+            }
+        }
         
-        try {
-            // 计算总大小估算（基于片段时长）
-            long estimatedTotalSize = calculateEstimatedTotalSize(playlist);
+        if (getBooleanParam("hls_streaming_merge", true)) {
+            return downloadSegmentsStreaming(playlist, format, outputFile, estimatedTotalSize);
+        }
+        
+        List<M3u8Playlist.Segment> segments = playlist.getSegments();
+        // 片段目录放在输出文件旁边，下载中断后保留，重新运行时跳过已完成的片段
+        Path tempDir = Paths.get(outputFile.getPath() + SEGMENTS_DIR_SUFFIX);
+        Files.createDirectories(tempDir);
+        
+        boolean success = false;
+        try (HlsManifest manifest = HlsManifest.open(tempDir.resolve("segments" + MANIFEST_SUFFIX).toFile(),
+                playlist, getBooleanParam("continuedl", true))) {
             logger.info("估算总大小: %s bytes", estimatedTotalSize);
+            resetSegmentProgress(estimatedTotalSize, 0);
             
-            // 并发下载所有片段
-            List<Future<Long>> downloadTasks = new ArrayList<>();
-            for (int i = 0; i < segments.size(); i++) {
-                final HlsSegment segment = segments.get(i);
-                // 根据片段URL的扩展名确定文件扩展名
-                String extension = getSegmentExtension(segment.getUrl());
-                final Path segmentFile = tempDir.resolve(String.format("segment_%06d.%s", i, extension));
-                final int segmentIndex = i;
-                
-                Future<Long> task = executorService.submit(() -> {
-                    return downloadSegmentWithProgress(segment, format, segmentFile, segmentIndex);
-                });
-                
-                downloadTasks.add(task);
-            }
-            
-            // 等待所有下载完成并收集进度
-            long totalDownloaded = 0;
-            for (int i = 0; i < downloadTasks.size(); i++) {
-                Future<Long> task = downloadTasks.get(i);
-                try {
-                    long segmentSize = task.get();
-                    totalDownloaded += segmentSize;
+            // 滑动窗口并发下载片段，同一时刻只有有限个任务在执行
+            SegmentScheduler scheduler = new SegmentScheduler(getExecutorService(), getConcurrentFragments());
+            RetryPolicy retryPolicy = getRetryPolicy();
+            // 记录每个片段的文件路径，合并时按顺序拼接，不再逐个探测扩展名
+            List<Path> segmentFiles = new ArrayList<>(segments.size());
+            int reused = 0;
+            try {
+                for (int i = 0; i < segments.size(); i++) {
+                    final M3u8Playlist.Segment segment = segments.get(i);
+                    final int segmentIndex = i;
+                    final boolean withInit = Fmp4Remuxer.needsInitSection(i > 0 ? segments.get(i - 1) : null, segment);
+                    // 根据片段URL的扩展名确定文件扩展名
+                    String extension = getSegmentExtension(segment.getUri());
+                    final Path segmentFile = tempDir.resolve(String.format("segment_%06d.%s", segmentIndex, extension));
+                    segmentFiles.add(segmentFile);
                     
-                    // 更新进度 - 基于片段数量或估算大小
-                    int percentage;
-                    if (estimatedTotalSize > 0) {
-                        percentage = (int) Math.min(95, (totalDownloaded * 100) / estimatedTotalSize); // 留5%给合并过程
-                    } else {
-                        percentage = (int) ((i + 1) * 90 / downloadTasks.size()); // 留10%给合并过程
+                    long existingSize = verifySegmentFile(manifest, segmentIndex, segmentFile);
+                    if (existingSize >= 0) {
+                        onSegmentDownloaded(segmentIndex, existingSize);
+                        reused++;
+                        continue;
                     }
                     
-                    updateProgress(totalDownloaded, estimatedTotalSize, 0);
-                    
-                    logger.debug("片段 %s 下载完成，累计下载: %s bytes (%s%%)", i + 1, totalDownloaded, percentage);
-                } catch (ExecutionException e) {
-                    logger.error("Segment download failed: " + e.getCause().getMessage());
-                    return false;
+                    scheduler.submit(() -> {
+                        onSegmentDownloaded(segmentIndex, withRetries(retryPolicy, "片段 " + segmentIndex,
+                                () -> downloadSegmentWithProgress(segment, format, segmentFile, segmentIndex, withInit, manifest)));
+                        return null;
+                    });
+                }
+                if (reused > 0) {
+                    logger.info("断点续传：复用 %s 个已下载的片段", reused);
                 }
+                scheduler.awaitCompletion();
+            } catch (ExecutionException e) {
+                logger.error("Segment download failed: " + e.getCause().getMessage());
+                logger.info("已下载的片段保留在 %s，重新运行可继续下载", tempDir);
+                scheduler.cancel();
+                return false;
             }
             
             // 合并片段
-            boolean success = mergeSegments(playlist, outputFile, tempDir);
+            success = mergeSegments(playlist, outputFile, segmentFiles);
             
             if (success) {
                 // 合并完成，更新进度到100%
@@ -278,898 +428,684 @@ public class HlsDownloader extends BaseDownloader {
             return success;
             
         } finally {
-            // 清理临时文件
-            try {
-                Files.walk(tempDir)
-                     .sorted(Comparator.reverseOrder())
-                     .map(Path::toFile)
-                     .forEach(File::delete);
-            } catch (Exception e) {
-                logger.warning("Failed to clean temp directory: " + e.getMessage());
+            // 只有合并成功后才清理片段目录
+            if (success) {
+                try {
+                    Files.walk(tempDir)
+                         .sorted(Comparator.reverseOrder())
+                         .map(Path::toFile)
+                         .forEach(File::delete);
+                } catch (Exception e) {
+                    logger.warning("Failed to clean temp directory: " + e.getMessage());
+                }
             }
         }
     }
     
     /**
-     * 计算估算的总大小（基于片段时长）
+     * 校验清单中记录的片段文件是否完整，完整时返回其大小，否则返回-1
      */
-    private long calculateEstimatedTotalSize(HlsPlaylist playlist) {
-        double totalDuration = 0;
-        for (HlsSegment segment : playlist.getSegments()) {
-            totalDuration += segment.getDuration();
+    private long verifySegmentFile(HlsManifest manifest, int index, Path segmentFile) {
+        HlsManifest.Entry entry = manifest.get(index);
+        if (entry == null) {
+            return -1;
         }
-        
-        // 假设平均比特率为2Mbps，这是一个合理的估算
-        // 总大小 = 时长(秒) * 比特率(bps) / 8
-        long estimatedSize = (long) (totalDuration * 2 * 1024 * 1024 / 8);
-        logger.info("总时长: %s 秒，估算大小: %s bytes", totalDuration, estimatedSize);
-        
-        return estimatedSize;
+        try {
+            File file = segmentFile.toFile();
+            if (file.length() == entry.size && HlsManifest.checksum(file, 0, entry.size) == entry.crc32) {
+                return entry.size;
+            }
+            manifest.discard(index);
+        } catch (IOException e) {
+            logger.debug("片段 %s 校验失败: %s", index, e.getMessage());
+        }
+        return -1;
     }
     
     /**
-     * 下载片段并返回实际大小（带进度更新）
+     * 内存模式：片段下载到池化的缓冲区中，全部完成后用一次聚集写入输出文件，
+     * 不创建片段文件、清单或临时目录，也不支持断点续传。
+     * 已下载的数据超过memoryThreshold时放弃本次下载，抛出MemoryThresholdExceededException
      */
-    private long downloadSegmentWithProgress(HlsSegment segment, VideoFormat format, Path segmentFile, int index) throws Exception {
-        logger.info("下载片段 %s: %s", index, segment.getUrl());
-        
-        URL urlObj = new URL(segment.getUrl());
-        HttpURLConnection connection = createConnection(urlObj, format);
+    private boolean downloadSegmentsInMemory(M3u8Playlist playlist, VideoFormat format, File outputFile,
+                                             long estimatedTotalSize, long memoryThreshold) throws Exception {
+        List<M3u8Playlist.Segment> segments = playlist.getSegments();
+        logger.info("估算大小 %s bytes，使用内存模式下载 %s 个片段", estimatedTotalSize, segments.size());
+        resetSegmentProgress(estimatedTotalSize, 0);
+        
+        SegmentBufferPool pool = SegmentBufferPool.SHARED;
+        SegmentBufferPool.SegmentBuffer[] buffers = new SegmentBufferPool.SegmentBuffer[segments.size()];
+        ByteBuffer[] data = new ByteBuffer[segments.size()];
+        SegmentScheduler scheduler = new SegmentScheduler(getExecutorService(), getConcurrentFragments());
+        RetryPolicy retryPolicy = getRetryPolicy();
+        final AtomicLong bufferedBytes = new AtomicLong();
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                final M3u8Playlist.Segment segment = segments.get(i);
+                final int segmentIndex = i;
+                final boolean withInit = Fmp4Remuxer.needsInitSection(i > 0 ? segments.get(i - 1) : null, segment);
+                scheduler.submit(() -> {
+                    SegmentBufferPool.SegmentBuffer buffer = pool.acquire();
+                    buffers[segmentIndex] = buffer;
+                    data[segmentIndex] = withRetries(retryPolicy, "片段 " + segmentIndex,
+                            () -> readSegment(segment, format, segmentIndex, withInit, buffer));
+                    long buffered = bufferedBytes.addAndGet(data[segmentIndex].remaining());
+                    if (buffered > memoryThreshold) {
+                        throw new MemoryThresholdExceededException(buffered);
+                    }
+                    onSegmentDownloaded(segmentIndex, data[segmentIndex].remaining());
+                    return null;
+                });
+            }
+            scheduler.awaitCompletion();
+        } catch (ExecutionException | InterruptedException e) {
+            Throwable cause = scheduler.getFailure() != null ? scheduler.getFailure() : e;
+            if (cause instanceof MemoryThresholdExceededException) {
+                scheduler.cancel();
+                throw (MemoryThresholdExceededException) cause;
+            }
+            logger.error("Segment download failed: " + cause.getMessage());
+            // 被取消的任务可能仍在写入缓冲区，这些缓冲区不归还到池中
+            scheduler.cancel();
+            return false;
+        }
         
         try {
-            int responseCode = connection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                throw new IOException("HTTP error: " + responseCode + " for segment " + index);
+            long totalSize = 0;
+            for (ByteBuffer buffer : data) {
+                totalSize += buffer.remaining();
+            }
+            if (totalSize == 0) {
+                return false;
             }
             
-            long contentLength = connection.getContentLengthLong();
-            logger.debug("片段 %s 响应成功，内容长度: %s bytes", index, contentLength);
-            
-            try (InputStream inputStream = connection.getInputStream();
-                 FileOutputStream outputStream = new FileOutputStream(segmentFile.toFile())) {
-                
-                byte[] buffer = new byte[BUFFER_SIZE];
-                int bytesRead;
-                long totalBytes = 0;
-                
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    if (shouldCancel()) {
-                        throw new InterruptedException("Download cancelled");
-                    }
-                    
-                    outputStream.write(buffer, 0, bytesRead);
-                    totalBytes += bytesRead;
+            File partFile = new File(outputFile.getPath() + PART_SUFFIX);
+            try (FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long written = 0;
+                while (written < totalSize) {
+                    written += channel.write(data);
                 }
-                
-                logger.debug("Downloaded segment " + index + ": " + totalBytes + " bytes");
-                return totalBytes;
             }
-            
+            appendFmp4Index(playlist, partFile);
+            Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         } finally {
-            connection.disconnect();
-        }
-    }
-    
-    
-    private boolean mergeSegments(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        logger.info("开始合并 %s 个片段到文件: %s", playlist.getSegments().size(), outputFile.getAbsolutePath());
-        
-        // 使用简单的TS合并方式
-        logger.info("使用简单的TS合并方式");
-        return mergeTsSegmentsSimple(playlist, outputFile, tempDir);
-    }
-    
-    private boolean mergeTsSegmentsSimple(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        logger.info("使用简单的TS文件合并");
-        
-        try (FileOutputStream merged = new FileOutputStream(outputFile)) {
-            // 按照用户指导：合并所有TS文件
-            for (int i = 0; i < playlist.getSegments().size(); i++) {
-                Path segmentFile = findSegmentFile(tempDir, i);
-                if (segmentFile != null && Files.exists(segmentFile)) {
-                    logger.info("合并片段 %s: %s (大小: %s bytes)", i, segmentFile, Files.size(segmentFile));
-                    Files.copy(segmentFile, merged);
-                } else {
-                    logger.warning("片段文件不存在: segment_%s", i);
-                }
+            for (SegmentBufferPool.SegmentBuffer buffer : buffers) {
+                pool.release(buffer);
             }
-            
-            logger.info("简单的TS合并完成，输出文件大小: %s bytes", outputFile.length());
-            return outputFile.length() > 0;
-            
-        } catch (Exception e) {
-            logger.error("简单的TS合并失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
+        
+        updateProgress(outputFile.length(), outputFile.length(), 0);
+        logger.info("HLS内存模式下载完成，最终文件大小: %s bytes", outputFile.length());
+        return true;
     }
     
-    private Path findFirstSegment(Path tempDir) throws Exception {
-        return findSegmentFile(tempDir, 0);
-    }
-    
-    private Path findSegmentFile(Path tempDir, int index) throws Exception {
-        // 查找指定索引的片段文件（可能是不同的扩展名）
-        String[] extensions = {"ts", "m4s", "mp4"};
-        for (String ext : extensions) {
-            Path segmentFile = tempDir.resolve(String.format("segment_%06d.%s", index, ext));
-            if (Files.exists(segmentFile)) {
-                return segmentFile;
+    /**
+     * 流式下载片段：每个片段在其前序片段都写入后立即追加到输出文件，
+     * 不经过临时目录，也不需要下载完成后的合并阶段
+     */
+    private boolean downloadSegmentsStreaming(M3u8Playlist playlist, VideoFormat format, File outputFile,
+                                              long estimatedTotalSize) throws Exception {
+        List<M3u8Playlist.Segment> segments = playlist.getSegments();
+        logger.info("估算总大小: %s bytes", estimatedTotalSize);
+        
+        // 窗口小于并发数时并发度会被窗口限制
+        int concurrentFragments = getConcurrentFragments();
+        int windowSize = Math.max(getIntParam("hls_reorder_window", DEFAULT_REORDER_WINDOW), concurrentFragments);
+        logger.info("使用流式合并，并发: %s，重排窗口: %s 个片段", concurrentFragments, windowSize);
+        
+        // 先写入.part文件，清单记录已写入的片段，全部完成后再重命名为输出文件
+        File partFile = new File(outputFile.getPath() + PART_SUFFIX);
+        File manifestFile = new File(partFile.getPath() + MANIFEST_SUFFIX);
+        boolean resume = getBooleanParam("continuedl", true) && partFile.isFile();
+        
+        boolean completed = false;
+        try (HlsManifest manifest = HlsManifest.open(manifestFile, playlist, resume)) {
+            int startIndex = resolveResumeIndex(manifest, partFile);
+            long startOffset = 0;
+            for (int i = 0; i < startIndex; i++) {
+                startOffset += manifest.get(i).size;
             }
-        }
-        return null;
-    }
-    
-    private boolean isFmp4Format(Path segmentFile) throws Exception {
-        try (FileInputStream inputStream = new FileInputStream(segmentFile.toFile())) {
-            byte[] header = new byte[8];
-            if (inputStream.read(header) >= 8) {
-                // 检查是否以MP4原子开头
-                int size = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16) | 
-                          ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
-                String type = new String(header, 4, 4);
-                
-                logger.info("片段头部: size=%s, type=%s", size, type);
-                
-                // 常见的MP4原子类型
-                return type.equals("ftyp") || type.equals("styp") || type.equals("moof") || 
-                       type.equals("mdat") || type.equals("sidx");
+            if (startIndex > 0) {
+                logger.info("断点续传：已完成 %s/%s 个片段，从 %s bytes 处继续", startIndex, segments.size(), startOffset);
             }
-        }
-        return false;
-    }
-    
-    private boolean mergeTsSegments(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        logger.info("使用TS格式合并");
-        
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            for (int i = 0; i < playlist.getSegments().size(); i++) {
-                Path segmentFile = findSegmentFile(tempDir, i);
-                if (segmentFile == null || !Files.exists(segmentFile)) {
-                    logger.warning("TS片段文件不存在: segment_{:06d}", i);
-                    continue;
-                }
-                
-                logger.info("合并TS片段 %s: %s (大小: %s bytes)", i, segmentFile, Files.size(segmentFile));
-                
-                try (FileInputStream inputStream = new FileInputStream(segmentFile.toFile())) {
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int bytesRead;
-                        long totalBytesRead = 0;
-                        
-                        while ((bytesRead = inputStream.read(buffer)) != -1) {
-                            outputStream.write(buffer, 0, bytesRead);
-                            totalBytesRead += bytesRead;
-                        }
+            resetSegmentProgress(estimatedTotalSize, startOffset);
+            
+            try (SegmentAssembler assembler = new SegmentAssembler(partFile, windowSize, startIndex, startOffset, manifest)) {
+                SegmentScheduler scheduler = new SegmentScheduler(getExecutorService(), concurrentFragments);
+                RetryPolicy retryPolicy = getRetryPolicy();
+                try {
+                    for (int i = startIndex; i < segments.size(); i++) {
+                        final M3u8Playlist.Segment segment = segments.get(i);
+                        final int segmentIndex = i;
+                        final boolean withInit = Fmp4Remuxer.needsInitSection(i > 0 ? segments.get(i - 1) : null, segment);
                         
-                        logger.info("TS片段 %s 合并完成，读取了 %s bytes", i, totalBytesRead);
+                        // 片段超出重排窗口时先等待前序片段写出，避免乱序片段在内存中堆积
+                        assembler.awaitWindow(segmentIndex);
+                        scheduler.submit(() -> {
+                            try {
+                                ByteBuffer data = withRetries(retryPolicy, "片段 " + segmentIndex,
+                                        () -> readSegment(segment, format, segmentIndex, withInit));
+                                long size = data.remaining();
+                                assembler.complete(segmentIndex, data);
+                                onSegmentDownloaded(segmentIndex, size);
+                            } catch (Exception e) {
+                                assembler.abort();
+                                throw e;
+                            }
+                            return null;
+                        });
                     }
+                    scheduler.awaitCompletion();
+                } catch (ExecutionException | InterruptedException e) {
+                    Throwable cause = scheduler.getFailure() != null ? scheduler.getFailure() : e;
+                    logger.error("Segment download failed: " + cause.getMessage());
+                    assembler.abort();
+                    scheduler.cancel();
+                    logger.info("已完成 %s 个片段，保留 %s，重新运行可继续下载",
+                            assembler.getCompletedCount(), partFile.getAbsolutePath());
+                    return false;
+                }
+                
+                completed = assembler.getCompletedCount() == segments.size();
             }
             
-            logger.info("所有TS片段合并完成，输出文件大小: %s bytes", outputFile.length());
-            return true;
-        } catch (Exception e) {
-            logger.error("合并TS片段失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            if (!completed || partFile.length() == 0) {
+                return false;
+            }
+            appendFmp4Index(playlist, partFile);
         }
+        
+        Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        manifestFile.delete();
+        updateProgress(outputFile.length(), outputFile.length(), 0);
+        logger.info("HLS流式下载完成，最终文件大小: %s bytes", outputFile.length());
+        return true;
     }
     
-    private boolean mergeFmp4SegmentsSimple(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        logger.info("使用正确的fMP4合并方法");
-        
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            // 1. 写入ftyp原子（28字节，与Python版本一致）
-            writeFtypAtomCorrect(outputStream);
-            
-            // 2. 写入moov原子（108字节，与Python版本一致）
-            writeMoovAtomCorrect(outputStream);
-            
-            // 3. 创建mdat原子头部
-            long totalMdatSize = 0;
-            for (int i = 0; i < playlist.getSegments().size(); i++) {
-                Path segmentFile = findSegmentFile(tempDir, i);
-                if (segmentFile != null && Files.exists(segmentFile)) {
-                    byte[] segmentData = Files.readAllBytes(segmentFile);
+    /**
+     * 直播录制：每个目标时长重新拉取一次媒体播放列表，按媒体序号去重后把新片段流式写入输出文件，
+     * 直到出现EXT-X-ENDLIST、达到hls_live_max_duration(秒)/hls_live_max_filesize(字节)上限
+     * 或播放列表长时间不再更新。单个片段失败时跳过，连续跳过hls_live_max_skipped个片段时中止录制
+     */
+    private boolean downloadLive(M3u8Playlist playlist, VideoFormat format, File outputFile) throws Exception {
+        long maxDuration = getLongParam("hls_live_max_duration", 0);
+        long maxFileSize = getLongParam("hls_live_max_filesize", 0);
+        int concurrentFragments = getConcurrentFragments();
+        int windowSize = Math.max(getIntParam("hls_reorder_window", DEFAULT_REORDER_WINDOW), concurrentFragments);
+        final int maxSkipped = getIntParam("hls_live_max_skipped", DEFAULT_LIVE_MAX_SKIPPED);
+        String playlistUrl = playlist.getUrl();
+        logger.info("检测到直播播放列表，开始录制: %s (时长上限: %s 秒，大小上限: %s bytes)",
+                playlistUrl, maxDuration, maxFileSize);
+        
+        File partFile = new File(outputFile.getPath() + PART_SUFFIX);
+        resetSegmentProgress(0, 0);
+        RetryPolicy retryPolicy = getRetryPolicy();
+        
+        long nextSequence = -1;
+        int nextIndex = 0;
+        M3u8Playlist.Segment previousSegment = null;
+        double recordedDuration = 0;
+        long lastUpdateTime = System.currentTimeMillis();
+        String stopReason = null;
+        // 跳过的片段总数和连续跳过的片段数（按下载完成的顺序计）
+        final AtomicInteger skippedSegments = new AtomicInteger();
+        final AtomicInteger consecutiveSkipped = new AtomicInteger();
+        
+        try (SegmentAssembler assembler = new SegmentAssembler(partFile, windowSize)) {
+            SegmentScheduler scheduler = new SegmentScheduler(getExecutorService(), concurrentFragments);
+            try {
+                // 片段任务失败（如连续跳过过多）后不再刷新播放列表，由awaitCompletion抛出
+                while (stopReason == null && scheduler.getFailure() == null) {
+                    long pollTime = System.currentTimeMillis();
+                    List<M3u8Playlist.Segment> segments = playlist.getSegments();
+                    long firstSequence = playlist.getMediaSequence();
+                    if (nextSequence >= 0 && firstSequence > nextSequence) {
+                        logger.warning("直播片段 %s-%s 已移出播放列表，无法录制", nextSequence, firstSequence - 1);
+                    }
                     
-                    // 查找mdat原子
-                    int offset = 0;
-                    while (offset < segmentData.length - 8) {
-                        int size = ((segmentData[offset] & 0xFF) << 24) | 
-                                  ((segmentData[offset + 1] & 0xFF) << 16) | 
-                                  ((segmentData[offset + 2] & 0xFF) << 8) | 
-                                  (segmentData[offset + 3] & 0xFF);
-                        
-                        if (size <= 0 || size > segmentData.length - offset) {
+                    int newSegments = 0;
+                    for (int i = 0; i < segments.size(); i++) {
+                        final long sequence = firstSequence + i;
+                        if (sequence < nextSequence) {
+                            continue;
+                        }
+                        if (maxDuration > 0 && recordedDuration >= maxDuration) {
+                            stopReason = "达到时长上限";
                             break;
                         }
-                        
-                        String type = new String(segmentData, offset + 4, 4);
-                        
-                        if ("mdat".equals(type)) {
-                            totalMdatSize += (size - 8);
+                        if (maxFileSize > 0 && assembler.getBytesWritten() >= maxFileSize) {
+                            stopReason = "达到大小上限";
                             break;
                         }
                         
-                        offset += size;
+                        final M3u8Playlist.Segment segment = segments.get(i);
+                        final int segmentIndex = nextIndex++;
+                        final boolean withInit = Fmp4Remuxer.needsInitSection(previousSegment, segment);
+                        previousSegment = segment;
+                        assembler.awaitWindow(segmentIndex);
+                        scheduler.submit(() -> {
+                            ByteBuffer data;
+                            try {
+                                data = withRetries(retryPolicy, "直播片段 " + sequence,
+                                        () -> readSegment(segment, format, segmentIndex, withInit));
+                            } catch (Exception e) {
+                                if (shouldCancel()) {
+                                    assembler.abort();
+                                    throw e;
+                                }
+                                skippedSegments.incrementAndGet();
+                                if (maxSkipped > 0 && consecutiveSkipped.incrementAndGet() >= maxSkipped) {
+                                    assembler.abort();
+                                    throw new IOException("连续 " + maxSkipped + " 个直播片段下载失败，中止录制", e);
+                                }
+                                // 直播片段很快会移出播放列表，单个片段失败时跳过而不是中止整个录制，
+                                // 但仍要写入它携带的初始化段，否则后续片段无法解码
+                                logger.warning("直播片段 %s 下载失败，跳过: %s", sequence, e.getMessage());
+                                data = withInit ? ByteBuffer.wrap(loadInitSection(segment.getInitSection(), format))
+                                                : ByteBuffer.allocate(0);
+                                long size = data.remaining();
+                                assembler.complete(segmentIndex, data);
+                                onSegmentDownloaded(segmentIndex, size);
+                                return null;
+                            }
+                            consecutiveSkipped.set(0);
+                            long size = data.remaining();
+                            assembler.complete(segmentIndex, data);
+                            onSegmentDownloaded(segmentIndex, size);
+                            return null;
+                        });
+                        
+                        nextSequence = sequence + 1;
+                        recordedDuration += segment.getDuration();
+                        newSegments++;
                     }
-                }
-            }
-            
-            // 4. 写入mdat原子头部
-            long mdatSize = totalMdatSize + 8;
-            outputStream.write((byte) ((mdatSize >> 24) & 0xFF));
-            outputStream.write((byte) ((mdatSize >> 16) & 0xFF));
-            outputStream.write((byte) ((mdatSize >> 8) & 0xFF));
-            outputStream.write((byte) (mdatSize & 0xFF));
-            outputStream.write("mdat".getBytes());
-            
-            // 5. 写入所有片段的mdat数据
-            for (int i = 0; i < playlist.getSegments().size(); i++) {
-                Path segmentFile = findSegmentFile(tempDir, i);
-                if (segmentFile != null && Files.exists(segmentFile)) {
-                    byte[] segmentData = Files.readAllBytes(segmentFile);
                     
-                    // 查找mdat原子
-                    int offset = 0;
-                    while (offset < segmentData.length - 8) {
-                        int size = ((segmentData[offset] & 0xFF) << 24) | 
-                                  ((segmentData[offset + 1] & 0xFF) << 16) | 
-                                  ((segmentData[offset + 2] & 0xFF) << 8) | 
-                                  (segmentData[offset + 3] & 0xFF);
-                        
-                        if (size <= 0 || size > segmentData.length - offset) {
-                            break;
+                    long targetDurationMs = Math.max(1, playlist.getTargetDuration()) * 1000L;
+                    if (newSegments > 0) {
+                        lastUpdateTime = pollTime;
+                    }
+                    if (stopReason != null) {
+                        break;
+                    } else if (playlist.isEndList()) {
+                        stopReason = "直播已结束";
+                    } else if (shouldCancel()) {
+                        stopReason = "录制已取消";
+                    } else if (pollTime - lastUpdateTime >= targetDurationMs * LIVE_STALL_TARGET_DURATIONS) {
+                        stopReason = "播放列表长时间未更新";
+                    } else {
+                        // 有新片段时间隔一个目标时长再刷新，否则间隔半个目标时长（RFC 8216 6.3.4）
+                        long interval = newSegments > 0 ? targetDurationMs : targetDurationMs / 2;
+                        long elapsed = System.currentTimeMillis() - pollTime;
+                        if (interval > elapsed) {
+                            Thread.sleep(interval - elapsed);
                         }
-                        
-                        String type = new String(segmentData, offset + 4, 4);
-                        
-                        if ("mdat".equals(type)) {
-                            // 写入mdat原子的数据部分（跳过原子头部）
-                            outputStream.write(segmentData, offset + 8, size - 8);
-                            logger.info("写入片段 %s 的mdat数据，大小: %s bytes", i, size - 8);
-                            break;
+                        try {
+                            playlist = withRetries(retryPolicy, "直播播放列表",
+                                    () -> fetchPlaylist(playlistUrl, format));
+                        } catch (Exception e) {
+                            logger.warning("刷新直播播放列表失败: %s", e.getMessage());
+                            stopReason = "播放列表刷新失败";
                         }
-                        
-                        offset += size;
                     }
                 }
+                
+                logger.info("停止录制: %s，共 %s 个片段，时长 %s 秒", stopReason, nextIndex, recordedDuration);
+                scheduler.awaitCompletion();
+            } catch (ExecutionException | InterruptedException e) {
+                Throwable cause = scheduler.getFailure() != null ? scheduler.getFailure() : e;
+                logger.error("Live segment download failed: " + cause.getMessage());
+                assembler.abort();
+                scheduler.cancel();
+                return false;
             }
-            
-            logger.info("正确的fMP4合并完成，输出文件大小: %s bytes", outputFile.length());
-            return outputFile.length() > 0;
-            
-        } catch (Exception e) {
-            logger.error("正确的fMP4合并失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
-    }
-    
-    private void writeFtypAtomCorrect(FileOutputStream outputStream) throws Exception {
-        // 创建与Python版本完全一致的ftyp原子（28字节）
-        byte[] ftypAtom = new byte[28];
         
-        // 原子大小 (28 bytes)
-        ftypAtom[0] = 0x00;
-        ftypAtom[1] = 0x00;
-        ftypAtom[2] = 0x00;
-        ftypAtom[3] = 0x1C; // 28
-        
-        // 原子类型
-        ftypAtom[4] = 'f';
-        ftypAtom[5] = 't';
-        ftypAtom[6] = 'y';
-        ftypAtom[7] = 'p';
-        
-        // 主要品牌 (iso5)
-        ftypAtom[8] = 'i';
-        ftypAtom[9] = 's';
-        ftypAtom[10] = 'o';
-        ftypAtom[11] = '5';
-        
-        // 版本
-        ftypAtom[12] = 0x00;
-        ftypAtom[13] = 0x00;
-        ftypAtom[14] = 0x02;
-        ftypAtom[15] = 0x00;
-        
-        // 兼容品牌 (iso5)
-        ftypAtom[16] = 'i';
-        ftypAtom[17] = 's';
-        ftypAtom[18] = 'o';
-        ftypAtom[19] = '5';
-        
-        // 兼容品牌 (iso6)
-        ftypAtom[20] = 'i';
-        ftypAtom[21] = 's';
-        ftypAtom[22] = 'o';
-        ftypAtom[23] = '6';
-        
-        // 兼容品牌 (mp41)
-        ftypAtom[24] = 'm';
-        ftypAtom[25] = 'p';
-        ftypAtom[26] = '4';
-        ftypAtom[27] = '1';
+        int skipped = skippedSegments.get();
+        if (partFile.length() == 0 || skipped >= nextIndex) {
+            logger.error("直播录制失败: %s 个片段全部下载失败", nextIndex);
+            partFile.delete();
+            return false;
+        }
+        appendFmp4Index(playlist, partFile);
         
-        outputStream.write(ftypAtom);
-        logger.info("写入ftyp原子，大小: 28 bytes");
+        Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        updateProgress(outputFile.length(), outputFile.length(), 0);
+        if (skipped > 0) {
+            logger.warning("直播录制完成，但有 %s/%s 个片段下载失败，文件中存在缺口", skipped, nextIndex);
+        }
+        logger.info("直播录制完成，最终文件大小: %s bytes", outputFile.length());
+        return true;
     }
     
-    private void writeMoovAtomCorrect(FileOutputStream outputStream) throws Exception {
-        // 创建与Python版本一致的moov原子（108字节）
-        byte[] moovAtom = new byte[108];
-        
-        // 原子大小 (108 bytes)
-        moovAtom[0] = 0x00;
-        moovAtom[1] = 0x00;
-        moovAtom[2] = 0x00;
-        moovAtom[3] = 0x6C; // 108
-        
-        // 原子类型
-        moovAtom[4] = 'm';
-        moovAtom[5] = 'o';
-        moovAtom[6] = 'o';
-        moovAtom[7] = 'v';
-        
-        // mvhd原子大小 (32 bytes)
-        moovAtom[8] = 0x00;
-        moovAtom[9] = 0x00;
-        moovAtom[10] = 0x00;
-        moovAtom[11] = 0x20; // 32
-        
-        // mvhd原子类型
-        moovAtom[12] = 'm';
-        moovAtom[13] = 'v';
-        moovAtom[14] = 'h';
-        moovAtom[15] = 'd';
-        
-        // 版本和标志 (1 + 3)
-        moovAtom[16] = 0x00; // 版本
-        moovAtom[17] = 0x00; // 标志
-        moovAtom[18] = 0x00; // 标志
-        moovAtom[19] = 0x00; // 标志
-        
-        // 创建时间 (4 bytes) - 使用当前时间
-        long creationTime = System.currentTimeMillis() / 1000 + 2082844800; // 转换为Mac时间
-        moovAtom[20] = (byte) ((creationTime >> 24) & 0xFF);
-        moovAtom[21] = (byte) ((creationTime >> 16) & 0xFF);
-        moovAtom[22] = (byte) ((creationTime >> 8) & 0xFF);
-        moovAtom[23] = (byte) (creationTime & 0xFF);
-        
-        // 修改时间 (4 bytes) - 使用当前时间
-        moovAtom[24] = (byte) ((creationTime >> 24) & 0xFF);
-        moovAtom[25] = (byte) ((creationTime >> 16) & 0xFF);
-        moovAtom[26] = (byte) ((creationTime >> 8) & 0xFF);
-        moovAtom[27] = (byte) (creationTime & 0xFF);
-        
-        // 时间刻度 (4 bytes) - 1000
-        moovAtom[28] = 0x00;
-        moovAtom[29] = 0x00;
-        moovAtom[30] = 0x03;
-        moovAtom[31] = (byte) 0xE8; // 1000
-        
-        // 持续时间 (4 bytes) - 40秒 * 1000 = 40000
-        moovAtom[32] = 0x00;
-        moovAtom[33] = 0x00;
-        moovAtom[34] = (byte) 0x9C;
-        moovAtom[35] = 0x40; // 40000
-        
-        // 速率 (4 bytes) - 1.0
-        moovAtom[36] = 0x00;
-        moovAtom[37] = 0x01;
-        moovAtom[38] = 0x00;
-        moovAtom[39] = 0x00; // 65536 = 1.0
-        
-        // 音量 (2 bytes) - 1.0
-        moovAtom[40] = 0x01;
-        moovAtom[41] = 0x00; // 256 = 1.0
-        
-        // 保留字段 (10 bytes)
-        for (int i = 42; i < 52; i++) {
-            moovAtom[i] = 0x00;
+    /**
+     * 根据清单确定续传起点：取从头开始连续完成的片段，并校验.part文件末尾片段的CRC，
+     * 文件长度不足或校验失败时逐个回退
+     */
+    private int resolveResumeIndex(HlsManifest manifest, File partFile) throws IOException {
+        int count = manifest.contiguousCount();
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            offset += manifest.get(i).size;
         }
         
-        // 矩阵 (36 bytes) - 单位矩阵
-        // 前16字节
-        moovAtom[52] = 0x00; moovAtom[53] = 0x01; moovAtom[54] = 0x00; moovAtom[55] = 0x00;
-        moovAtom[56] = 0x00; moovAtom[57] = 0x00; moovAtom[58] = 0x00; moovAtom[59] = 0x00;
-        moovAtom[60] = 0x00; moovAtom[61] = 0x00; moovAtom[62] = 0x00; moovAtom[63] = 0x00;
-        moovAtom[64] = 0x00; moovAtom[65] = 0x01; moovAtom[66] = 0x00; moovAtom[67] = 0x00;
-        
-        // 中间16字节
-        moovAtom[68] = 0x00; moovAtom[69] = 0x00; moovAtom[70] = 0x00; moovAtom[71] = 0x00;
-        moovAtom[72] = 0x00; moovAtom[73] = 0x00; moovAtom[74] = 0x00; moovAtom[75] = 0x00;
-        moovAtom[76] = 0x00; moovAtom[77] = 0x01; moovAtom[78] = 0x00; moovAtom[79] = 0x00;
-        moovAtom[80] = 0x00; moovAtom[81] = 0x00; moovAtom[82] = 0x00; moovAtom[83] = 0x00;
-        
-        // 最后4字节
-        moovAtom[84] = 0x00; moovAtom[85] = 0x00; moovAtom[86] = 0x00; moovAtom[87] = 0x00;
-        
-        // 预定义 (24 bytes)
-        for (int i = 88; i < 108; i++) {
-            moovAtom[i] = 0x00;
+        long fileLength = partFile.length();
+        while (count > 0) {
+            HlsManifest.Entry last = manifest.get(count - 1);
+            long start = offset - last.size;
+            if (offset <= fileLength && HlsManifest.checksum(partFile, start, last.size) == last.crc32) {
+                break;
+            }
+            logger.debug("片段 %s 校验失败，重新下载", count - 1);
+            offset = start;
+            count--;
         }
         
-        outputStream.write(moovAtom);
-        logger.info("写入moov原子，大小: 108 bytes");
+        manifest.retainFirst(count);
+        return count;
     }
-
-    private boolean mergeFmp4Segments(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        logger.info("使用fMP4格式合并");
-        
-        // 对于fMP4 HLS，我们需要使用ffmpeg或类似工具来正确合并
-        // 由于这是Java实现，我们使用一个简化的方法：
-        // 1. 找到第一个包含初始化信息的片段
-        // 2. 创建一个基本的MP4容器
-        // 3. 将所有片段的mdat部分合并
-        
-        try {
-            // 查找第一个片段
-            Path firstSegment = findSegmentFile(tempDir, 0);
-            if (firstSegment == null || !Files.exists(firstSegment)) {
-                logger.error("找不到第一个fMP4片段");
-                return false;
-            }
-            
-            logger.info("处理fMP4片段合并，共 %s 个片段", playlist.getSegments().size());
-            
-            // 创建一个临时的m3u8文件用于ffmpeg处理
-            File tempM3u8 = File.createTempFile("temp_", ".m3u8");
+    
+    /**
+     * 执行单个片段或播放列表的下载，可重试的错误按退避策略重试，致命错误或重试耗尽后抛出
+     */
+    private <T> T withRetries(RetryPolicy retryPolicy, String target, Callable<T> task) throws Exception {
+        for (int attempt = 0; ; attempt++) {
             try {
-                // 生成m3u8播放列表
-                generateM3u8Playlist(playlist, tempM3u8, tempDir);
-                
-                // 使用ffmpeg合并（如果可用）
-                if (isFfmpegAvailable()) {
-                    logger.info("使用ffmpeg合并fMP4片段");
-                    return mergeWithFfmpeg(tempM3u8, outputFile);
-                } else {
-                    // 回退到简单合并（可能不完美）
-                    logger.warning("ffmpeg不可用，使用简单合并方法");
-                    return simpleFmp4Merge(playlist, outputFile, tempDir);
-                }
-                
-            } finally {
-                if (tempM3u8.exists()) {
-                    tempM3u8.delete();
+                return task.call();
+            } catch (Exception e) {
+                if (shouldCancel() || attempt >= retryPolicy.getMaxRetries() || !retryPolicy.isRetriable(e)) {
+                    throw e;
                 }
+                long delay = retryPolicy.getDelayMillis(attempt + 1);
+                stats.incrementRetryCount();
+                logger.warning("%s 下载失败: %s，%s ms后重试 (%s/%s)",
+                        target, e.getMessage(), delay, attempt + 1, retryPolicy.getMaxRetries());
+                Thread.sleep(delay);
             }
-            
-        } catch (Exception e) {
-            logger.error("合并fMP4片段失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
     }
     
-    private boolean simpleFmp4Merge(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        logger.info("使用改进的fMP4合并方法");
-        
-        // 改进的fMP4合并方法：
-        // 1. 找到第一个包含初始化信息的片段
-        // 2. 提取并合并所有片段的媒体数据
-        // 3. 创建正确的MP4容器结构
-        
-        try {
-            // 查找所有片段文件
-            List<Path> segmentFiles = new ArrayList<>();
-            for (int i = 0; i < playlist.getSegments().size(); i++) {
-                Path segmentFile = findSegmentFile(tempDir, i);
-                if (segmentFile != null && Files.exists(segmentFile)) {
-                    segmentFiles.add(segmentFile);
-                    logger.info("找到fMP4片段 %s: %s (大小: %s bytes)", i, segmentFile, Files.size(segmentFile));
-                } else {
-                    logger.warning("fMP4片段文件不存在: segment_%s", i);
-                }
-            }
-            
-            if (segmentFiles.isEmpty()) {
-                logger.error("没有找到任何fMP4片段文件");
-                return false;
-            }
-            
-            // 使用改进的MP4合并算法
-            return mergeFmp4SegmentsImproved(segmentFiles, outputFile);
-            
-        } catch (Exception e) {
-            logger.error("改进的fMP4合并失败: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
+    private synchronized void resetSegmentProgress(long estimatedTotalSize, long initialBytes) {
+        this.segmentBytesDownloaded = initialBytes;
+        this.estimatedTotalSize = estimatedTotalSize;
     }
     
-    private boolean mergeFmp4SegmentsImproved(List<Path> segmentFiles, File outputFile) throws Exception {
-        logger.info("使用改进的MP4合并算法，共 %s 个片段", segmentFiles.size());
-        
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            // 读取第一个片段作为基础
-            Path firstSegment = segmentFiles.get(0);
-            byte[] firstSegmentData = Files.readAllBytes(firstSegment);
-            
-            // 分析第一个片段的MP4结构
-            Mp4Structure firstStructure = analyzeMp4Structure(firstSegmentData);
-            logger.info("第一个片段结构分析: 包含 %s 个原子", firstStructure.atoms.size());
-            
-            // 创建输出MP4文件
-            // 1. 写入ftyp原子（如果第一个片段有的话，否则创建默认的）
-            if (firstStructure.hasFtyp) {
-                writeFtypAtom(outputStream, firstSegmentData, firstStructure);
-            } else {
-                // 创建默认的ftyp原子
-                writeDefaultFtypAtom(outputStream);
-            }
-            
-            // 2. 写入moov原子（从第一个片段提取，如果不存在则创建基本的）
-            if (firstStructure.hasMoov) {
-                writeMoovAtom(outputStream, firstSegmentData, firstStructure);
+    /**
+     * 片段完成回调，由工作线程调用
+     */
+    private synchronized void onSegmentDownloaded(int index, long size) {
+        segmentBytesDownloaded += size;
+        updateProgress(segmentBytesDownloaded, estimatedTotalSize, 0);
+        logger.debug("片段 %s 下载完成，累计下载: %s bytes", index + 1, segmentBytesDownloaded);
+    }
+    
+    /**
+     * 计算估算的总大小：字节范围片段取其长度，其他片段按时长乘以码率，码率依次取
+     * 片段的EXT-X-BITRATE、所选变体的BANDWIDTH、格式的tbr，都没有时按2Mbps估算
+     */
+    private long calculateEstimatedTotalSize(M3u8Playlist playlist, VideoFormat format) {
+        long defaultBitrate = variantBandwidth > 0 ? variantBandwidth
+                : format.getTbr() != null && format.getTbr() > 0 ? format.getTbr() * 1000L : DEFAULT_ESTIMATE_BITRATE;
+        double totalDuration = 0;
+        long estimatedSize = 0;
+        for (M3u8Playlist.Segment segment : playlist.getSegments()) {
+            totalDuration += segment.getDuration();
+            if (segment.getByteRange() != null) {
+                estimatedSize += segment.getByteRange().getLength();
             } else {
-                // 创建基本的moov原子
-                writeBasicMoovAtom(outputStream);
+                // 大小 = 时长(秒) * 码率(bps) / 8
+                long bitrate = segment.getBitrate() > 0 ? segment.getBitrate() : defaultBitrate;
+                estimatedSize += (long) (segment.getDuration() * bitrate / 8);
             }
-            
-            // 3. 合并所有片段的mdat原子
-            writeMdatAtom(outputStream, segmentFiles);
-            
-            logger.info("改进的MP4合并完成，输出文件大小: %s bytes", outputFile.length());
-            return outputFile.length() > 0;
-            
-        } catch (Exception e) {
-            logger.error("改进的MP4合并异常: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
-    }
-    
-    private static class Mp4Atom {
-        int size;
-        String type;
-        int offset;
-        byte[] data;
+        logger.info("总时长: %s 秒，估算大小: %s bytes", totalDuration, estimatedSize);
         
-        Mp4Atom(int size, String type, int offset) {
-            this.size = size;
-            this.type = type;
-            this.offset = offset;
-        }
-    }
-    
-    private static class Mp4Structure {
-        List<Mp4Atom> atoms = new ArrayList<>();
-        boolean hasFtyp = false;
-        boolean hasMoov = false;
-        boolean hasMdat = false;
+        return estimatedSize;
     }
     
-    private Mp4Structure analyzeMp4Structure(byte[] data) {
-        Mp4Structure structure = new Mp4Structure();
-        int offset = 0;
+    /**
+     * 内存模式下实际下载量超过上限
+     */
+    private static final class MemoryThresholdExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long bytes;
         
-        while (offset < data.length - 8) {
-            // 读取原子大小（4字节，大端序）
-            int size = ((data[offset] & 0xFF) << 24) | 
-                      ((data[offset + 1] & 0xFF) << 16) | 
-                      ((data[offset + 2] & 0xFF) << 8) | 
-                      (data[offset + 3] & 0xFF);
-            
-            if (size <= 0 || size > data.length - offset) {
-                break;
-            }
-            
-            // 读取原子类型（4字节）
-            String type = new String(data, offset + 4, 4);
-            
-            Mp4Atom atom = new Mp4Atom(size, type, offset);
-            atom.data = new byte[size];
-            System.arraycopy(data, offset, atom.data, 0, size);
-            structure.atoms.add(atom);
-            
-            // 检查特殊原子类型
-            switch (type) {
-                case "ftyp":
-                    structure.hasFtyp = true;
-                    break;
-                case "moov":
-                    structure.hasMoov = true;
-                    break;
-                case "mdat":
-                    structure.hasMdat = true;
-                    break;
-            }
-            
-            offset += size;
+        MemoryThresholdExceededException(long bytes) {
+            super("In-memory download exceeded threshold: " + bytes + " bytes");
+            this.bytes = bytes;
         }
         
-        return structure;
+        long getBytes() {
+            return bytes;
+        }
     }
     
-    private void writeFtypAtom(FileOutputStream outputStream, byte[] firstSegmentData, Mp4Structure structure) throws Exception {
-        for (Mp4Atom atom : structure.atoms) {
-            if ("ftyp".equals(atom.type)) {
-                outputStream.write(atom.data);
-                logger.info("写入ftyp原子，大小: %s bytes", atom.size);
-                break;
+    /**
+     * 下载片段并返回实际大小（带进度更新）
+     */
+    private long downloadSegmentWithProgress(M3u8Playlist.Segment segment, VideoFormat format, Path segmentFile, int index,
+                                             boolean withInit, HlsManifest manifest) throws Exception {
+        byte[] init = withInit ? loadInitSection(segment.getInitSection(), format) : null;
+        CRC32 crc = new CRC32();
+        // 加密片段在写入时解密，清单记录的是解密后的文件内容
+        try (OutputStream fileStream = new CheckedOutputStream(new FileOutputStream(segmentFile.toFile()), crc);
+             OutputStream outputStream = decryptor.decryptingStream(segment, fileStream)) {
+            if (init != null) {
+                fileStream.write(init);
             }
+            transferSegment(segment, format, index, outputStream);
         }
+        // 片段文件关闭后再记录，清单中的片段一定是完整的
+        long size = segmentFile.toFile().length();
+        manifest.record(index, size, crc.getValue());
+        return size;
     }
     
-    private void writeMoovAtom(FileOutputStream outputStream, byte[] firstSegmentData, Mp4Structure structure) throws Exception {
-        for (Mp4Atom atom : structure.atoms) {
-            if ("moov".equals(atom.type)) {
-                outputStream.write(atom.data);
-                logger.info("写入moov原子，大小: %s bytes", atom.size);
-                break;
-            }
-        }
+    /**
+     * 下载片段到内存缓冲区，供流式合并直接写入输出文件；
+     * withInit为true时在片段数据前放入其EXT-X-MAP初始化段，输出即为可直接播放的分段MP4
+     */
+    private ByteBuffer readSegment(M3u8Playlist.Segment segment, VideoFormat format, int index,
+                                   boolean withInit) throws Exception {
+        return readSegment(segment, format, index, withInit, new SegmentBufferPool.SegmentBuffer(SEGMENT_BUFFER_HINT));
     }
     
-    private void writeMdatAtom(FileOutputStream outputStream, List<Path> segmentFiles) throws Exception {
-        logger.info("开始合并mdat原子，共 %s 个片段", segmentFiles.size());
-        
-        for (int i = 0; i < segmentFiles.size(); i++) {
-            Path segmentFile = segmentFiles.get(i);
-            byte[] segmentData = Files.readAllBytes(segmentFile);
-            
-            Mp4Structure structure = analyzeMp4Structure(segmentData);
-            
-            // 找到并写入mdat原子
-            for (Mp4Atom atom : structure.atoms) {
-                if ("mdat".equals(atom.type)) {
-                    outputStream.write(atom.data);
-                    logger.info("写入片段 %s 的mdat原子，大小: %s bytes", i, atom.size);
-                    break;
-                }
-            }
+    /**
+     * 下载片段到指定的缓冲区，缓冲区中原有的数据会被清空（重试时复用同一个缓冲区）
+     */
+    private ByteBuffer readSegment(M3u8Playlist.Segment segment, VideoFormat format, int index, boolean withInit,
+                                   SegmentBufferPool.SegmentBuffer buffer) throws Exception {
+        buffer.reset();
+        if (withInit) {
+            buffer.write(loadInitSection(segment.getInitSection(), format));
         }
-        
-        logger.info("mdat原子合并完成");
+        int initLength = buffer.size();
+        transferSegment(segment, format, index, buffer);
+        
+        ByteBuffer data = buffer.toByteBuffer();
+        data.position(initLength);
+        data = decryptor.decrypt(segment, data);
+        if (segment.getInitSection() != null) {
+            Fmp4Remuxer.checkSegment(data, index);
+        }
+        data.position(0);
+        return data;
     }
     
-    private void writeDefaultFtypAtom(FileOutputStream outputStream) throws Exception {
-        // 创建Python兼容的ftyp原子 (28 bytes)
-        // 与Python yt-dlp生成的格式完全一致
-        byte[] ftypAtom = new byte[28];
-        
-        // 原子大小 (28 bytes)
-        ftypAtom[0] = 0x00;
-        ftypAtom[1] = 0x00;
-        ftypAtom[2] = 0x00;
-        ftypAtom[3] = 0x1c;
-        
-        // 原子类型 "ftyp"
-        ftypAtom[4] = 'f';
-        ftypAtom[5] = 't';
-        ftypAtom[6] = 'y';
-        ftypAtom[7] = 'p';
-        
-        // major_brand "iso5" (与Python版本一致)
-        ftypAtom[8] = 'i';
-        ftypAtom[9] = 's';
-        ftypAtom[10] = 'o';
-        ftypAtom[11] = '5';
-        
-        // minor_version (与Python版本一致: 0x00000200)
-        ftypAtom[12] = 0x00;
-        ftypAtom[13] = 0x00;
-        ftypAtom[14] = 0x02;
-        ftypAtom[15] = 0x00;
-        
-        // compatible_brands: "iso5", "iso6", "mp41" (与Python版本一致)
-        System.arraycopy("iso5".getBytes(), 0, ftypAtom, 16, 4);
-        System.arraycopy("iso6".getBytes(), 0, ftypAtom, 20, 4);
-        System.arraycopy("mp41".getBytes(), 0, ftypAtom, 24, 4);
-        
-        outputStream.write(ftypAtom);
-        logger.info("写入Python兼容的ftyp原子，大小: 28 bytes (iso5品牌)");
+    private static boolean hasByteRanges(M3u8Playlist playlist) {
+        for (M3u8Playlist.Segment segment : playlist.getSegments()) {
+            if (segment.getByteRange() != null) {
+                return true;
+            }
+        }
+        return false;
     }
     
-    private void writeBasicMoovAtom(FileOutputStream outputStream) throws Exception {
-        // 创建一个更完整的moov原子，基于Python版本的结构
-        // 参考Python版本生成的moov原子结构
-        
-        // moov原子总大小 (108 bytes，与Python版本一致)
-        byte[] moovAtom = new byte[108];
-        int offset = 0;
-        
-        // moov原子大小 (108 bytes)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x6c;
-        
-        // moov原子类型
-        moovAtom[offset++] = 'm';
-        moovAtom[offset++] = 'o';
-        moovAtom[offset++] = 'o';
-        moovAtom[offset++] = 'v';
-        
-        // mvhd原子 (电影头部)
-        // mvhd原子大小 (108 bytes)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x6c;
-        
-        // mvhd原子类型
-        moovAtom[offset++] = 'm';
-        moovAtom[offset++] = 'v';
-        moovAtom[offset++] = 'h';
-        moovAtom[offset++] = 'd';
-        
-        // mvhd版本和标志 (1 byte version + 3 bytes flags)
-        moovAtom[offset++] = 0x00; // 版本
-        moovAtom[offset++] = 0x00; // 标志
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        
-        // 创建时间 (4 bytes)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        
-        // 修改时间 (4 bytes)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        
-        // 时间刻度 (4 bytes) - 1000 (0x03e8)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x03;
-        moovAtom[offset++] = (byte) 0xe8;
-        
-        // 持续时间 (4 bytes) - 0 (未指定)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        
-        // 播放速率 (4 bytes) - 1.0 (0x00010000)
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x01;
-        moovAtom[offset++] = 0x00;
-        moovAtom[offset++] = 0x00;
-        
-        // 音量 (2 bytes) - 1.0 (0x0100)
-        moovAtom[offset++] = 0x01;
-        moovAtom[offset++] = 0x00;
-        
-        // 保留字段 (10 bytes)
-        for (int i = 0; i < 10; i++) {
-            moovAtom[offset++] = 0x00;
-        }
-        
-        // 矩阵结构 (36 bytes) - 单位矩阵
-        // 这里简化为零矩阵
-        for (int i = 0; i < 36; i++) {
-            moovAtom[offset++] = 0x00;
+    /**
+     * fMP4输出按hls_fmp4_index选项在文件末尾追加mfra随机访问索引
+     */
+    private void appendFmp4Index(M3u8Playlist playlist, File file) {
+        if (!getBooleanParam("hls_fmp4_index", false) || !Fmp4Remuxer.isFragmented(playlist)) {
+            return;
         }
-        
-        // 预览时间和持续时间 (6 bytes)
-        for (int i = 0; i < 6; i++) {
-            moovAtom[offset++] = 0x00;
+        try {
+            long size = Fmp4Remuxer.appendIndex(file);
+            logger.info("追加mfra索引: %s bytes", size);
+        } catch (IOException e) {
+            // 索引只用于加速定位，失败时保留没有索引的文件
+            logger.warning("生成mfra索引失败: %s", e.getMessage());
         }
-        
-        // 写入moov原子
-        outputStream.write(moovAtom);
-        logger.info("写入Python兼容的moov原子，大小: 108 bytes");
     }
     
-    private void generateM3u8Playlist(HlsPlaylist playlist, File outputFile, Path tempDir) throws Exception {
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            writer.write("#EXTM3U\n");
-            writer.write("#EXT-X-VERSION:3\n");
-            writer.write("#EXT-X-TARGETDURATION:10\n");
-            writer.write("#EXT-X-MEDIA-SEQUENCE:0\n");
-            
-            for (int i = 0; i < playlist.getSegments().size(); i++) {
-                Path segmentFile = findSegmentFile(tempDir, i);
-                if (segmentFile != null) {
-                    HlsSegment segment = playlist.getSegments().get(i);
-                    writer.write("#EXTINF:" + segment.getDuration() + ",\n");
-                    writer.write(segmentFile.getFileName().toString() + "\n");
+    private long transferSegment(M3u8Playlist.Segment segment, VideoFormat format, int index, OutputStream outputStream) throws Exception {
+        logger.info("下载片段 %s: %s", index, segment.getUri());
+        
+        ByteRangeCoalescer coalescer = byteRanges;
+        if (coalescer != null && coalescer.contains(segment)) {
+            // 相邻的字节范围合并为一次请求，由同组第一个片段下载
+            return coalescer.transfer(segment, outputStream, (uri, offset, length) -> {
+                SegmentBufferPool.SegmentBuffer buffer = new SegmentBufferPool.SegmentBuffer((int) length);
+                // 合并后的请求较大，连接中断时从已收到的位置继续请求剩余部分；没有进展时交给重试策略
+                while (true) {
+                    int received = buffer.size();
+                    try {
+                        transfer(uri, new M3u8Playlist.ByteRange(length - received, offset + received), format,
+                                "range " + (offset + received) + "+" + (length - received), buffer);
+                        return buffer.toByteBuffer();
+                    } catch (IOException e) {
+                        if (buffer.size() == received) {
+                            throw e;
+                        }
+                        logger.debug("合并范围在 %s/%s bytes 处中断，继续请求: %s", buffer.size(), length, e.getMessage());
+                    }
                 }
-            }
-            
-            writer.write("#EXT-X-ENDLIST\n");
+            });
         }
+        return transfer(segment.getUri(), segment.getByteRange(), format, "segment " + index, outputStream);
     }
     
-    private boolean isFfmpegAvailable() {
-        try {
-            Process process = Runtime.getRuntime().exec("ffmpeg -version");
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            return false;
+    /**
+     * 下载资源写入输出流，range不为null时只请求该字节范围。
+     * 服务器忽略Range返回200时跳过范围之前的数据，读满范围长度后放弃剩余响应
+     */
+    private long transfer(String url, M3u8Playlist.ByteRange range, VideoFormat format, String target,
+                          OutputStream outputStream) throws Exception {
+        HttpTransport.Request request = createRequest(url, format);
+        if (range != null) {
+            request.header("Range", "bytes=" + range.getOffset() + "-" + (range.getEnd() - 1));
         }
-    }
-    
-    private boolean mergeWithFfmpeg(File m3u8File, File outputFile) throws Exception {
+        
+        HttpTransport.Response response = getHttpTransport().execute(request);
+        boolean complete = false;
         try {
-            String[] command = {
-                "ffmpeg", "-i", m3u8File.getAbsolutePath(),
-                "-c", "copy", "-bsf:a", "aac_adtstoasc",
-                outputFile.getAbsolutePath()
-            };
+            int responseCode = response.getStatusCode();
+            boolean partial = range != null && responseCode == HttpURLConnection.HTTP_PARTIAL;
+            if (responseCode != HttpURLConnection.HTTP_OK && !partial) {
+                throw new HttpStatusException(responseCode, "HTTP error: " + responseCode + " for " + target);
+            }
             
-            Process process = Runtime.getRuntime().exec(command);
-            int exitCode = process.waitFor();
+            long contentLength = response.getContentLength();
+            logger.debug("%s 响应成功，内容长度: %s bytes", target, contentLength);
             
-            if (exitCode == 0 && outputFile.exists() && outputFile.length() > 0) {
-                logger.info("ffmpeg合并成功，输出文件大小: %s bytes", outputFile.length());
-                return true;
+            InputStream inputStream = response.getBody();
+            long expected = contentLength;
+            if (range != null) {
+                if (!partial) {
+                    skipFully(inputStream, range.getOffset(), target);
+                }
+                expected = range.getLength();
+            }
+            
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            long totalBytes = 0;
+            
+            while ((expected < 0 || totalBytes < expected)
+                    && (bytesRead = inputStream.read(buffer, 0,
+                            (int) (expected < 0 ? buffer.length : Math.min(buffer.length, expected - totalBytes)))) != -1) {
+                if (shouldCancel()) {
+                    throw new InterruptedException("Download cancelled");
+                }
+                
+                outputStream.write(buffer, 0, bytesRead);
+                totalBytes += bytesRead;
+            }
+            
+            // 连接中途断开时输入流可能直接返回EOF，按内容长度校验数据是否完整
+            if (expected >= 0 && totalBytes != expected) {
+                throw new EOFException(target + " truncated: " + totalBytes + "/" + expected + " bytes");
+            }
+            
+            logger.debug("Downloaded " + target + ": " + totalBytes + " bytes");
+            complete = true;
+            return totalBytes;
+            
+        } finally {
+            // 失败或取消时不复用连接；完整读取时close()把连接放回连接池
+            if (complete) {
+                response.close();
             } else {
-                logger.error("ffmpeg合并失败，退出码: %s", exitCode);
-                return false;
+                response.abort();
             }
-        } catch (Exception e) {
-            logger.error("ffmpeg合并异常: " + e.getMessage());
-            return false;
         }
     }
     
-    private void copyFile(File source, FileOutputStream destination) throws Exception {
-        try (FileInputStream inputStream = new FileInputStream(source)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                destination.write(buffer, 0, bytesRead);
+    private static void skipFully(InputStream inputStream, long count, String target) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0) {
+                    throw new EOFException(target + ": response ended before byte range start");
+                }
+                skipped = 1;
             }
+            count -= skipped;
         }
     }
     
-    private HttpURLConnection createConnection(URL url, VideoFormat format) throws Exception {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        connection.setRequestMethod("GET");
-        connection.setConnectTimeout(30000);
-        connection.setReadTimeout(60000);
-        connection.setInstanceFollowRedirects(true);
-        
-        // 设置请求头
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-        connection.setRequestProperty("Accept", "*/*");
-        connection.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-        connection.setRequestProperty("Connection", "keep-alive");
-        
-        // 添加全局HTTP头部
-        if (params != null) {
-            String httpHeaders = params.getHttpHeaders();
-            if (httpHeaders != null && !httpHeaders.isEmpty()) {
-                String[] headerLines = httpHeaders.split("\n");
-                for (String headerLine : headerLines) {
-                    String[] parts = headerLine.split(":", 2);
-                    if (parts.length == 2) {
-                        connection.setRequestProperty(parts[0].trim(), parts[1].trim());
+    /**
+     * 按下载阶段记录的顺序把片段文件拼接到输出文件。
+     * TS片段直接拼接；fMP4片段文件中已包含所需的初始化段，拼接结果就是分段MP4。
+     * FileChannel.transferTo由内核直接复制数据，不经过用户态缓冲区
+     */
+    private boolean mergeSegments(M3u8Playlist playlist, File outputFile, List<Path> segmentFiles) throws Exception {
+        logger.info("开始合并 %s 个片段到文件: %s", segmentFiles.size(), outputFile.getAbsolutePath());
+        
+        try (FileChannel output = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < segmentFiles.size(); i++) {
+                try (FileChannel input = FileChannel.open(segmentFiles.get(i), StandardOpenOption.READ)) {
+                    long size = input.size();
+                    long transferred = 0;
+                    while (transferred < size) {
+                        long count = input.transferTo(transferred, size - transferred, output);
+                        if (count <= 0) {
+                            throw new IOException("Failed to transfer segment " + i + " at " + transferred + "/" + size);
+                        }
+                        transferred += count;
                     }
+                    logger.debug("合并片段 %s: %s bytes", i, size);
                 }
             }
+        } catch (IOException e) {
+            logger.error("合并片段失败: " + e.getMessage());
+            return false;
         }
         
-        // 添加格式特定的头部
-        if (format.getHttpHeaders() != null) {
-            for (Map.Entry<String, String> entry : format.getHttpHeaders().entrySet()) {
-                connection.setRequestProperty(entry.getKey(), entry.getValue());
-            }
+        logger.info("片段合并完成，输出文件大小: %s bytes", outputFile.length());
+        if (outputFile.length() == 0) {
+            return false;
         }
-        
-        return connection;
+        appendFmp4Index(playlist, outputFile);
+        return true;
     }
     
-    private String resolveUrl(String url, String baseUrl) {
-        if (url.startsWith("http://") || url.startsWith("https://")) {
-            return url;
-        }
-        
-        try {
-            URL base = new URL(baseUrl);
-            return new URL(base, url).toString();
-        } catch (MalformedURLException e) {
-            return url;
-        }
+    /**
+     * 构造请求，全局请求头、User-Agent和代理由传输层统一设置，这里只添加格式特定的头部
+     */
+    private HttpTransport.Request createRequest(String url, VideoFormat format) {
+        return new HttpTransport.Request(url).headers(format.getHttpHeaders());
     }
     
     private String getSegmentExtension(String segmentUrl) {
@@ -1189,109 +1125,17 @@ public class HlsDownloader extends BaseDownloader {
         }
     }
     
-    private int parseVersion(String line) {
-        try {
-            return Integer.parseInt(line.substring("#EXT-X-VERSION:".length()).trim());
-        } catch (Exception e) {
-            return 3; // 默认版本
-        }
-    }
-    
-    private int parseTargetDuration(String line) {
-        try {
-            return Integer.parseInt(line.substring("#EXT-X-TARGETDURATION:".length()).trim());
-        } catch (Exception e) {
-            return 10; // 默认时长
-        }
-    }
-    
-    private long parseMediaSequence(String line) {
-        try {
-            return Long.parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()).trim());
-        } catch (Exception e) {
-            return 0;
-        }
-    }
-    
-    private double parseSegmentDuration(String line) {
-        try {
-            String durationStr = line.substring("#EXTINF:".length()).split(",")[0].trim();
-            return Double.parseDouble(durationStr);
-        } catch (Exception e) {
-            return 10.0; // 默认时长
-        }
-    }
-    
-    private String extractAttribute(String line, String attribute) {
-        String pattern = attribute + "=";
-        int index = line.indexOf(pattern);
-        if (index >= 0) {
-            int start = index + pattern.length();
-            int end = line.indexOf(",", start);
-            if (end < 0) {
-                end = line.length();
-            }
-            return line.substring(start, end).trim();
-        }
-        return null;
-    }
-    
-    private void shutdownExecutor() {
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
-    }
-    
-    
     /**
-     * HLS播放列表类
+     * 片段重试策略，重试次数通过fragment_retries选项配置
      */
-    public static class HlsPlaylist {
-        private int version = 3;
-        private int targetDuration = 10;
-        private long mediaSequence = 0;
-        private boolean endList = false;
-        private List<HlsSegment> segments = new ArrayList<>();
-        
-        public int getVersion() { return version; }
-        public void setVersion(int version) { this.version = version; }
-        
-        public int getTargetDuration() { return targetDuration; }
-        public void setTargetDuration(int targetDuration) { this.targetDuration = targetDuration; }
-        
-        public long getMediaSequence() { return mediaSequence; }
-        public void setMediaSequence(long mediaSequence) { this.mediaSequence = mediaSequence; }
-        
-        public boolean isEndList() { return endList; }
-        public void setEndList(boolean endList) { this.endList = endList; }
-        
-        public List<HlsSegment> getSegments() { return segments; }
-        public void setSegments(List<HlsSegment> segments) { this.segments = segments; }
-        
-        public void addSegment(HlsSegment segment) {
-            this.segments.add(segment);
-        }
+    private RetryPolicy getRetryPolicy() {
+        return new RetryPolicy(getIntParam("fragment_retries", RetryPolicy.DEFAULT_FRAGMENT_RETRIES));
     }
     
     /**
-     * HLS片段类
+     * 单个下载任务同时进行的片段数，通过concurrent_fragments选项配置
      */
-    public static class HlsSegment {
-        private String url;
-        private double duration;
-        
-        public String getUrl() { return url; }
-        public void setUrl(String url) { this.url = url; }
-        
-        public double getDuration() { return duration; }
-        public void setDuration(double duration) { this.duration = duration; }
+    private int getConcurrentFragments() {
+        return Math.max(1, getIntParam("concurrent_fragments", DEFAULT_CONCURRENT_FRAGMENTS));
     }
 }
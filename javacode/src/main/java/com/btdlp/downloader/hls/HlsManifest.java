@@ -0,0 +1,248 @@
+package com.btdlp.downloader.hls;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * HLS下载任务的片段完成清单
+ * 以追加方式记录每个已落盘片段的大小和CRC32，任务中断后重新运行时只下载缺失的片段。
+ * 清单通过片段URL（不含查询参数）的指纹与播放列表绑定，签名参数变化不影响续传
+ */
+class HlsManifest implements Closeable {
+
+    private static final String HEADER = "# btdlp hls manifest v1";
+
+    private final File file;
+    private final String playlistUrl;
+    private final long mediaSequence;
+    private final int segmentCount;
+    private final String fingerprint;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    private Writer writer;
+
+    /**
+     * 已完成片段的记录
+     */
+    static final class Entry {
+        final long size;
+        final long crc32;
+
+        Entry(long size, long crc32) {
+            this.size = size;
+            this.crc32 = crc32;
+        }
+    }
+
+    private HlsManifest(File file, String playlistUrl, long mediaSequence, int segmentCount, String fingerprint) {
+        this.file = file;
+        this.playlistUrl = playlistUrl;
+        this.mediaSequence = mediaSequence;
+        this.segmentCount = segmentCount;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 打开清单：resume为true且已有清单与播放列表一致时沿用已有记录，否则新建空清单
+     */
+    static HlsManifest open(File file, M3u8Playlist playlist, boolean resume) throws IOException {
+        HlsManifest manifest = new HlsManifest(file, playlist.getUrl(), playlist.getMediaSequence(),
+                playlist.getSegments().size(), fingerprint(playlist.getSegments()));
+
+        if (resume && file.isFile()) {
+            manifest.load();
+        }
+        manifest.rewrite();
+        return manifest;
+    }
+
+    private void load() {
+        Map<Integer, Entry> loaded = new HashMap<>();
+        boolean sameSegments = false;
+        boolean sameSequence = false;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("fingerprint=")) {
+                    sameSegments = line.substring("fingerprint=".length()).equals(fingerprint);
+                } else if (line.startsWith("media_sequence=")) {
+                    sameSequence = Long.parseLong(line.substring("media_sequence=".length())) == mediaSequence;
+                } else if (line.startsWith("seg=")) {
+                    // seg=<index>,<size>,<crc32>；崩溃时最后一行可能不完整，直接忽略
+                    String[] parts = line.substring("seg=".length()).split(",");
+                    if (parts.length == 3) {
+                        try {
+                            loaded.put(Integer.parseInt(parts[0]),
+                                    new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2], 16)));
+                        } catch (NumberFormatException e) {
+                            // 忽略损坏的记录
+                        }
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return;
+        }
+
+        if (sameSegments && sameSequence) {
+            entries.putAll(loaded);
+        }
+    }
+
+    /**
+     * 以当前记录重写整个清单（临时文件+重命名），之后的记录以追加方式写入
+     */
+    private synchronized void rewrite() throws IOException {
+        closeWriter();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+            out.write(HEADER + "\n");
+            out.write("playlist=" + (playlistUrl != null ? playlistUrl : "") + "\n");
+            out.write("media_sequence=" + mediaSequence + "\n");
+            out.write("segments=" + segmentCount + "\n");
+            out.write("fingerprint=" + fingerprint + "\n");
+            for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+        }
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to write manifest: " + file);
+            }
+        }
+
+        writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录一个已写入磁盘的片段
+     */
+    synchronized void record(int index, long size, long crc32) throws IOException {
+        Entry entry = new Entry(size, crc32);
+        entries.put(index, entry);
+        if (writer != null) {
+            writeEntry(writer, index, entry);
+            writer.flush();
+        }
+    }
+
+    synchronized Entry get(int index) {
+        return entries.get(index);
+    }
+
+    /**
+     * 从第0个片段开始连续完成的片段数
+     */
+    synchronized int contiguousCount() {
+        int count = 0;
+        while (entries.containsKey(count)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 丢弃指定片段的记录
+     */
+    synchronized void discard(int index) throws IOException {
+        if (entries.remove(index) != null) {
+            rewrite();
+        }
+    }
+
+    /**
+     * 只保留前count个片段的记录
+     */
+    synchronized void retainFirst(int count) throws IOException {
+        if (entries.keySet().removeIf(index -> index >= count)) {
+            rewrite();
+        }
+    }
+
+    synchronized void delete() {
+        closeWriter();
+        file.delete();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // 忽略关闭错误
+            }
+            writer = null;
+        }
+    }
+
+    private static void writeEntry(Writer out, int index, Entry entry) throws IOException {
+        out.write("seg=" + index + "," + entry.size + "," + Long.toHexString(entry.crc32) + "\n");
+    }
+
+    private static String fingerprint(List<M3u8Playlist.Segment> segments) {
+        CRC32 crc = new CRC32();
+        for (M3u8Playlist.Segment segment : segments) {
+            String url = segment.getUri() != null ? segment.getUri() : "";
+            int query = url.indexOf('?');
+            crc.update((query >= 0 ? url.substring(0, query) : url).getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return segments.size() + "-" + Long.toHexString(crc.getValue());
+    }
+
+    static long checksum(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * 计算文件中指定区间的CRC32
+     */
+    static long checksum(File file, long offset, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                buffer.clear();
+                if (end - position < buffer.capacity()) {
+                    buffer.limit((int) (end - position));
+                }
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file: " + file);
+                }
+                buffer.flip();
+                crc.update(buffer);
+                position += read;
+            }
+        }
+        return crc.getValue();
+    }
+}
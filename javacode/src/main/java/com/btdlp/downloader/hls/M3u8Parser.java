@@ -0,0 +1,357 @@
+package com.btdlp.downloader.hls;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * M3U8单遍解析器
+ * 一次读取即可解析主播放列表和媒体播放列表，支持STREAM-INF、MEDIA、KEY、MAP、BYTERANGE、
+ * DISCONTINUITY和PROGRAM-DATE-TIME等标签。属性列表每行只扫描一次，
+ * 相对URL在常见情况下直接拼接目录前缀，不为每个片段创建URL对象
+ */
+public final class M3u8Parser {
+
+    private final String url;
+    private final String baseDirectory;
+    private URL baseUrl;
+
+    // 当前标签的属性，每个带属性的标签解析时复用
+    private final AttributeList attributes = new AttributeList();
+
+    private M3u8Parser(String url) {
+        this.url = url;
+        this.baseDirectory = baseDirectory(url);
+    }
+
+    public static M3u8Playlist parse(String content, String url) throws IOException {
+        return parse(new StringReader(content), url);
+    }
+
+    /**
+     * 解析播放列表，url用于解析相对地址
+     */
+    public static M3u8Playlist parse(Reader reader, String url) throws IOException {
+        BufferedReader bufferedReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        return new M3u8Parser(url).parse(bufferedReader);
+    }
+
+    private M3u8Playlist parse(BufferedReader reader) throws IOException {
+        int version = 1;
+        int targetDuration = 0;
+        long mediaSequence = 0;
+        long discontinuitySequence = 0;
+        String playlistType = null;
+        boolean endList = false;
+        boolean independentSegments = false;
+        List<M3u8Playlist.Variant> variants = new ArrayList<>();
+        List<M3u8Playlist.Rendition> renditions = new ArrayList<>();
+        List<M3u8Playlist.Segment> segments = new ArrayList<>();
+
+        // 作用于后续所有片段的状态
+        M3u8Playlist.Key currentKey = null;
+        M3u8Playlist.InitSection currentInit = null;
+        long currentDiscontinuitySequence = 0;
+        String lastRangeUri = null;
+        long lastRangeEnd = 0;
+        // EXT-X-BITRATE作用于之后的片段，直到下一个EXT-X-BITRATE
+        long currentBitrate = 0;
+
+        // 只作用于下一个片段或变体的状态
+        double duration = 0;
+        String title = null;
+        boolean discontinuity = false;
+        String programDateTime = null;
+        long rangeLength = -1;
+        long rangeOffset = -1;
+        boolean pendingVariant = false;
+        long bandwidth = 0;
+        long averageBandwidth = 0;
+        int width = 0;
+        int height = 0;
+        double frameRate = 0;
+        String codecs = null;
+        String audioGroup = null;
+        String videoGroup = null;
+        String subtitlesGroup = null;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            if (line.charAt(0) != '#') {
+                String uri = resolve(line);
+                if (pendingVariant) {
+                    variants.add(new M3u8Playlist.Variant(uri, bandwidth, averageBandwidth, width, height,
+                            frameRate, codecs, audioGroup, videoGroup, subtitlesGroup));
+                    pendingVariant = false;
+                } else {
+                    M3u8Playlist.ByteRange byteRange = null;
+                    if (rangeLength >= 0) {
+                        // 未指定偏移时，紧接同一资源上一个字节范围之后
+                        long offset = rangeOffset >= 0 ? rangeOffset
+                                : (uri.equals(lastRangeUri) ? lastRangeEnd : 0);
+                        byteRange = new M3u8Playlist.ByteRange(rangeLength, offset);
+                        lastRangeUri = uri;
+                        lastRangeEnd = byteRange.getEnd();
+                    }
+                    if (discontinuity) {
+                        currentDiscontinuitySequence++;
+                    }
+                    segments.add(new M3u8Playlist.Segment(uri, duration, title,
+                            mediaSequence + segments.size(), discontinuitySequence + currentDiscontinuitySequence,
+                            discontinuity, programDateTime, byteRange, currentKey, currentInit, currentBitrate));
+                }
+                duration = 0;
+                title = null;
+                discontinuity = false;
+                programDateTime = null;
+                rangeLength = -1;
+                rangeOffset = -1;
+                continue;
+            }
+
+            if (!line.startsWith("#EXT")) {
+                // 普通注释
+                continue;
+            }
+
+            if (line.startsWith("#EXTINF:")) {
+                int comma = line.indexOf(',', 8);
+                duration = parseDouble(comma >= 0 ? line.substring(8, comma) : line.substring(8), 0);
+                title = comma >= 0 && comma + 1 < line.length() ? line.substring(comma + 1) : null;
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                String value = line.substring(17);
+                int at = value.indexOf('@');
+                rangeLength = parseLong(at >= 0 ? value.substring(0, at) : value, -1);
+                rangeOffset = at >= 0 ? parseLong(value.substring(at + 1), -1) : -1;
+            } else if (line.startsWith("#EXT-X-KEY:")) {
+                attributes.parse(line, 11);
+                currentKey = parseKey();
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                attributes.parse(line, 11);
+                currentInit = parseInitSection();
+                lastRangeUri = null;
+            } else if (line.startsWith("#EXT-X-BITRATE:")) {
+                // 单位为kbps
+                currentBitrate = parseLong(line.substring(15), 0) * 1000;
+            } else if (line.equals("#EXT-X-DISCONTINUITY")) {
+                discontinuity = true;
+            } else if (line.startsWith("#EXT-X-PROGRAM-DATE-TIME:")) {
+                programDateTime = line.substring(25);
+            } else if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                attributes.parse(line, 18);
+                pendingVariant = true;
+                bandwidth = parseLong(attributes.get("BANDWIDTH"), 0);
+                averageBandwidth = parseLong(attributes.get("AVERAGE-BANDWIDTH"), 0);
+                frameRate = parseDouble(attributes.get("FRAME-RATE"), 0);
+                codecs = attributes.get("CODECS");
+                audioGroup = attributes.get("AUDIO");
+                videoGroup = attributes.get("VIDEO");
+                subtitlesGroup = attributes.get("SUBTITLES");
+                width = 0;
+                height = 0;
+                String resolution = attributes.get("RESOLUTION");
+                if (resolution != null) {
+                    int x = resolution.indexOf('x');
+                    if (x > 0) {
+                        width = (int) parseLong(resolution.substring(0, x), 0);
+                        height = (int) parseLong(resolution.substring(x + 1), 0);
+                    }
+                }
+            } else if (line.startsWith("#EXT-X-MEDIA:")) {
+                attributes.parse(line, 13);
+                String uri = attributes.get("URI");
+                renditions.add(new M3u8Playlist.Rendition(attributes.get("TYPE"), attributes.get("GROUP-ID"),
+                        attributes.get("NAME"), attributes.get("LANGUAGE"), uri != null ? resolve(uri) : null,
+                        "YES".equals(attributes.get("DEFAULT")), "YES".equals(attributes.get("AUTOSELECT"))));
+            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+                targetDuration = (int) Math.ceil(parseDouble(line.substring(22), 0));
+            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = parseLong(line.substring(22), 0);
+            } else if (line.startsWith("#EXT-X-DISCONTINUITY-SEQUENCE:")) {
+                discontinuitySequence = parseLong(line.substring(30), 0);
+            } else if (line.startsWith("#EXT-X-PLAYLIST-TYPE:")) {
+                playlistType = line.substring(21).trim();
+            } else if (line.startsWith("#EXT-X-VERSION:")) {
+                version = (int) parseLong(line.substring(15), 1);
+            } else if (line.equals("#EXT-X-ENDLIST")) {
+                endList = true;
+            } else if (line.equals("#EXT-X-INDEPENDENT-SEGMENTS")) {
+                independentSegments = true;
+            }
+        }
+
+        return new M3u8Playlist(url, !variants.isEmpty(), version, targetDuration, mediaSequence,
+                discontinuitySequence, playlistType, endList, independentSegments, variants, renditions, segments);
+    }
+
+    private M3u8Playlist.Key parseKey() {
+        String method = attributes.get("METHOD");
+        if (method == null || "NONE".equals(method)) {
+            return null;
+        }
+        String uri = attributes.get("URI");
+        return new M3u8Playlist.Key(method, uri != null ? resolve(uri) : null,
+                parseIv(attributes.get("IV")), attributes.get("KEYFORMAT"));
+    }
+
+    private M3u8Playlist.InitSection parseInitSection() {
+        String uri = attributes.get("URI");
+        if (uri == null) {
+            return null;
+        }
+        M3u8Playlist.ByteRange byteRange = null;
+        String range = attributes.get("BYTERANGE");
+        if (range != null) {
+            int at = range.indexOf('@');
+            byteRange = new M3u8Playlist.ByteRange(parseLong(at >= 0 ? range.substring(0, at) : range, 0),
+                    at >= 0 ? parseLong(range.substring(at + 1), 0) : 0);
+        }
+        return new M3u8Playlist.InitSection(resolve(uri), byteRange);
+    }
+
+    /**
+     * 解析十六进制IV，不足128位时在高位补0
+     */
+    private static byte[] parseIv(String value) {
+        if (value == null) {
+            return null;
+        }
+        int start = value.startsWith("0x") || value.startsWith("0X") ? 2 : 0;
+        byte[] iv = new byte[16];
+        for (int i = value.length(), j = 15; i > start && j >= 0; i -= 2, j--) {
+            int high = i - 2 >= start ? Character.digit(value.charAt(i - 2), 16) : 0;
+            int low = Character.digit(value.charAt(i - 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            iv[j] = (byte) ((high << 4) | low);
+        }
+        return iv;
+    }
+
+    /**
+     * 解析相对地址：普通文件名直接拼接播放列表所在目录，其他情况交给URL处理
+     */
+    private String resolve(String uri) {
+        if (uri.startsWith("http://") || uri.startsWith("https://")) {
+            return uri;
+        }
+        char first = uri.charAt(0);
+        if (baseDirectory != null && first != '/' && first != '.' && first != '?' && first != '#'
+                && uri.indexOf(':') < 0) {
+            return baseDirectory + uri;
+        }
+        try {
+            if (baseUrl == null) {
+                baseUrl = new URL(url);
+            }
+            return new URL(baseUrl, uri).toString();
+        } catch (MalformedURLException | NullPointerException e) {
+            return uri;
+        }
+    }
+
+    private static String baseDirectory(String url) {
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return null;
+        }
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int slash = url.lastIndexOf('/', end - 1);
+        // 必须在主机名之后
+        if (slash < url.indexOf("//") + 2) {
+            return url.substring(0, end) + "/";
+        }
+        return url.substring(0, slash + 1);
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 可复用的属性列表，一次扫描解析NAME=VALUE和NAME="VALUE"形式的属性
+     */
+    private static final class AttributeList {
+        private final List<String> names = new ArrayList<>();
+        private final List<String> values = new ArrayList<>();
+
+        void parse(String line, int start) {
+            names.clear();
+            values.clear();
+            int length = line.length();
+            int pos = start;
+            while (pos < length) {
+                int eq = line.indexOf('=', pos);
+                if (eq < 0) {
+                    break;
+                }
+                String name = line.substring(pos, eq).trim();
+                String value;
+                int next;
+                if (eq + 1 < length && line.charAt(eq + 1) == '"') {
+                    int close = line.indexOf('"', eq + 2);
+                    if (close < 0) {
+                        close = length;
+                    }
+                    value = line.substring(eq + 2, close);
+                    next = line.indexOf(',', close);
+                } else {
+                    next = line.indexOf(',', eq + 1);
+                    value = line.substring(eq + 1, next < 0 ? length : next).trim();
+                }
+                names.add(name);
+                values.add(value);
+                if (next < 0) {
+                    break;
+                }
+                pos = next + 1;
+            }
+        }
+
+        String get(String name) {
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).equals(name)) {
+                    return values.get(i);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.btdlp.downloader.hls;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * M3U8播放列表的不可变模型，由{@link M3u8Parser}创建
+ * 主播放列表包含变体流和备用媒体，媒体播放列表包含片段
+ */
+public final class M3u8Playlist {
+
+    private final String url;
+    private final boolean master;
+    private final int version;
+    private final int targetDuration;
+    private final long mediaSequence;
+    private final long discontinuitySequence;
+    private final String playlistType;
+    private final boolean endList;
+    private final boolean independentSegments;
+    private final List<Variant> variants;
+    private final List<Rendition> renditions;
+    private final List<Segment> segments;
+
+    M3u8Playlist(String url, boolean master, int version, int targetDuration, long mediaSequence,
+                 long discontinuitySequence, String playlistType, boolean endList, boolean independentSegments,
+                 List<Variant> variants, List<Rendition> renditions, List<Segment> segments) {
+        this.url = url;
+        this.master = master;
+        this.version = version;
+        this.targetDuration = targetDuration;
+        this.mediaSequence = mediaSequence;
+        this.discontinuitySequence = discontinuitySequence;
+        this.playlistType = playlistType;
+        this.endList = endList;
+        this.independentSegments = independentSegments;
+        this.variants = Collections.unmodifiableList(variants);
+        this.renditions = Collections.unmodifiableList(renditions);
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    public String getUrl() { return url; }
+
+    /**
+     * 是否为主播放列表（包含EXT-X-STREAM-INF）
+     */
+    public boolean isMaster() { return master; }
+
+    public int getVersion() { return version; }
+    public int getTargetDuration() { return targetDuration; }
+    public long getMediaSequence() { return mediaSequence; }
+    public long getDiscontinuitySequence() { return discontinuitySequence; }
+    public String getPlaylistType() { return playlistType; }
+    public boolean isEndList() { return endList; }
+    public boolean isIndependentSegments() { return independentSegments; }
+    public List<Variant> getVariants() { return variants; }
+    public List<Rendition> getRenditions() { return renditions; }
+    public List<Segment> getSegments() { return segments; }
+
+    /**
+     * 没有EXT-X-ENDLIST且不是VOD类型的媒体播放列表会继续追加片段
+     */
+    public boolean isLive() {
+        return !master && !endList && !"VOD".equalsIgnoreCase(playlistType);
+    }
+
+    /**
+     * 所有片段的总时长（秒）
+     */
+    public double getTotalDuration() {
+        double total = 0;
+        for (Segment segment : segments) {
+            total += segment.getDuration();
+        }
+        return total;
+    }
+
+    /**
+     * 变体流（EXT-X-STREAM-INF）
+     */
+    public static final class Variant {
+        private final String uri;
+        private final long bandwidth;
+        private final long averageBandwidth;
+        private final int width;
+        private final int height;
+        private final double frameRate;
+        private final String codecs;
+        private final String audioGroup;
+        private final String videoGroup;
+        private final String subtitlesGroup;
+
+        Variant(String uri, long bandwidth, long averageBandwidth, int width, int height, double frameRate,
+                String codecs, String audioGroup, String videoGroup, String subtitlesGroup) {
+            this.uri = uri;
+            this.bandwidth = bandwidth;
+            this.averageBandwidth = averageBandwidth;
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.codecs = codecs;
+            this.audioGroup = audioGroup;
+            this.videoGroup = videoGroup;
+            this.subtitlesGroup = subtitlesGroup;
+        }
+
+        public String getUri() { return uri; }
+        public long getBandwidth() { return bandwidth; }
+        public long getAverageBandwidth() { return averageBandwidth; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public double getFrameRate() { return frameRate; }
+        public String getCodecs() { return codecs; }
+        public String getAudioGroup() { return audioGroup; }
+        public String getVideoGroup() { return videoGroup; }
+        public String getSubtitlesGroup() { return subtitlesGroup; }
+    }
+
+    /**
+     * 备用媒体（EXT-X-MEDIA），如独立的音轨和字幕
+     */
+    public static final class Rendition {
+        private final String type;
+        private final String groupId;
+        private final String name;
+        private final String language;
+        private final String uri;
+        private final boolean defaultRendition;
+        private final boolean autoSelect;
+
+        Rendition(String type, String groupId, String name, String language, String uri,
+                  boolean defaultRendition, boolean autoSelect) {
+            this.type = type;
+            this.groupId = groupId;
+            this.name = name;
+            this.language = language;
+            this.uri = uri;
+            this.defaultRendition = defaultRendition;
+            this.autoSelect = autoSelect;
+        }
+
+        public String getType() { return type; }
+        public String getGroupId() { return groupId; }
+        public String getName() { return name; }
+        public String getLanguage() { return language; }
+        public String getUri() { return uri; }
+        public boolean isDefault() { return defaultRendition; }
+        public boolean isAutoSelect() { return autoSelect; }
+    }
+
+    /**
+     * 媒体片段，携带对其生效的密钥、初始化段和字节范围
+     */
+    public static final class Segment {
+        private final String uri;
+        private final double duration;
+        private final String title;
+        private final long sequence;
+        private final long discontinuitySequence;
+        private final boolean discontinuity;
+        private final String programDateTime;
+        private final ByteRange byteRange;
+        private final Key key;
+        private final InitSection initSection;
+        private final long bitrate;
+
+        Segment(String uri, double duration, String title, long sequence, long discontinuitySequence,
+                boolean discontinuity, String programDateTime, ByteRange byteRange, Key key,
+                InitSection initSection, long bitrate) {
+            this.uri = uri;
+            this.duration = duration;
+            this.title = title;
+            this.sequence = sequence;
+            this.discontinuitySequence = discontinuitySequence;
+            this.discontinuity = discontinuity;
+            this.programDateTime = programDateTime;
+            this.byteRange = byteRange;
+            this.key = key;
+            this.initSection = initSection;
+            this.bitrate = bitrate;
+        }
+
+        public String getUri() { return uri; }
+        public double getDuration() { return duration; }
+        public String getTitle() { return title; }
+
+        /**
+         * 媒体序号
+         */
+        public long getSequence() { return sequence; }
+
+        public long getDiscontinuitySequence() { return discontinuitySequence; }
+
+        /**
+         * 片段前是否有EXT-X-DISCONTINUITY
+         */
+        public boolean isDiscontinuity() { return discontinuity; }
+
+        /**
+         * EXT-X-PROGRAM-DATE-TIME的原始ISO 8601值
+         */
+        public String getProgramDateTime() { return programDateTime; }
+
+        public ByteRange getByteRange() { return byteRange; }
+        public Key getKey() { return key; }
+        public InitSection getInitSection() { return initSection; }
+
+        /**
+         * EXT-X-BITRATE声明的近似码率（bps），未声明时为0
+         */
+        public long getBitrate() { return bitrate; }
+
+        public boolean isEncrypted() { return key != null && !key.isNone(); }
+    }
+
+    /**
+     * 加密密钥（EXT-X-KEY）
+     */
+    public static final class Key {
+        private final String method;
+        private final String uri;
+        private final byte[] iv;
+        private final String keyFormat;
+
+        Key(String method, String uri, byte[] iv, String keyFormat) {
+            this.method = method;
+            this.uri = uri;
+            this.iv = iv;
+            this.keyFormat = keyFormat;
+        }
+
+        public String getMethod() { return method; }
+        public String getUri() { return uri; }
+
+        /**
+         * 显式IV，未指定时为null
+         */
+        public byte[] getIv() { return iv != null ? iv.clone() : null; }
+
+        public String getKeyFormat() { return keyFormat; }
+        public boolean isNone() { return method == null || "NONE".equals(method); }
+
+        boolean hasIv() { return iv != null; }
+
+        byte[] ivBytes() { return iv; }
+    }
+
+    /**
+     * fMP4初始化段（EXT-X-MAP）
+     */
+    public static final class InitSection {
+        private final String uri;
+        private final ByteRange byteRange;
+
+        InitSection(String uri, ByteRange byteRange) {
+            this.uri = uri;
+            this.byteRange = byteRange;
+        }
+
+        public String getUri() { return uri; }
+        public ByteRange getByteRange() { return byteRange; }
+    }
+
+    /**
+     * 字节范围，偏移量已按规范从前一个片段推算出来
+     */
+    public static final class ByteRange {
+        private final long length;
+        private final long offset;
+
+        ByteRange(long length, long offset) {
+            this.length = length;
+            this.offset = offset;
+        }
+
+        public long getLength() { return length; }
+        public long getOffset() { return offset; }
+
+        /**
+         * 结束位置（不含）
+         */
+        public long getEnd() { return offset + length; }
+    }
+}
@@ -0,0 +1,116 @@
+package com.btdlp.downloader.hls;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HLS片段流式组装器
+ * 片段下载完成后，只要它之前的片段都已写入，就立即追加到输出文件；
+ * 乱序完成的片段暂存在有界的重排窗口中，等待前序片段到达
+ */
+class SegmentAssembler implements Closeable {
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final HlsManifest manifest;
+    private final Map<Integer, ByteBuffer> pending = new HashMap<>();
+
+    private int nextIndex;
+    private long bytesWritten;
+    private boolean aborted = false;
+
+    SegmentAssembler(File outputFile, int windowSize) throws IOException {
+        this(outputFile, windowSize, 0, 0, null);
+    }
+
+    /**
+     * 从第startIndex个片段、文件偏移startOffset处继续组装，偏移之后的旧数据会被截掉；
+     * manifest不为null时每个写出的片段都会记录到清单中
+     */
+    SegmentAssembler(File outputFile, int windowSize, int startIndex, long startOffset,
+                     HlsManifest manifest) throws IOException {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.manifest = manifest;
+        this.nextIndex = startIndex;
+        this.bytesWritten = startOffset;
+        this.channel = FileChannel.open(outputFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.truncate(startOffset);
+        this.channel.position(startOffset);
+    }
+
+    /**
+     * 阻塞直到指定片段落入重排窗口，避免乱序片段无限堆积在内存中
+     */
+    synchronized void awaitWindow(int index) throws InterruptedException {
+        while (!aborted && index >= nextIndex + windowSize) {
+            wait();
+        }
+        if (aborted) {
+            throw new InterruptedException("Segment assembly aborted");
+        }
+    }
+
+    /**
+     * 提交已下载完成的片段，并写出所有已连续就绪的片段
+     */
+    synchronized void complete(int index, ByteBuffer data) throws IOException {
+        if (aborted) {
+            return;
+        }
+        if (index < nextIndex || pending.containsKey(index)) {
+            throw new IllegalStateException("Segment " + index + " completed twice");
+        }
+
+        pending.put(index, data);
+
+        ByteBuffer ready;
+        while ((ready = pending.remove(nextIndex)) != null) {
+            long size = ready.remaining();
+            long crc32 = manifest != null ? HlsManifest.checksum(ready) : 0;
+            while (ready.hasRemaining()) {
+                bytesWritten += channel.write(ready);
+            }
+            if (manifest != null) {
+                manifest.record(nextIndex, size, crc32);
+            }
+            nextIndex++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * 中止组装，唤醒所有等待窗口的线程并丢弃暂存的片段
+     */
+    synchronized void abort() {
+        aborted = true;
+        pending.clear();
+        notifyAll();
+    }
+
+    /**
+     * 已按顺序写入输出文件的片段数
+     */
+    synchronized int getCompletedCount() {
+        return nextIndex;
+    }
+
+    synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pending.clear();
+        channel.close();
+    }
+}
@@ -0,0 +1,65 @@
+package com.btdlp.downloader.hls;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * 片段缓冲区池，跨下载任务复用，内存模式下载短视频时避免每个片段重新分配和扩容字节数组。
+ * 池中保留的缓冲区总容量有上限，超出时归还的缓冲区直接丢弃
+ */
+final class SegmentBufferPool {
+
+    static final SegmentBufferPool SHARED = new SegmentBufferPool(64L * 1024 * 1024, 512 * 1024);
+
+    private final long maxRetainedBytes;
+    private final int initialSize;
+    private final ArrayDeque<SegmentBuffer> buffers = new ArrayDeque<>();
+    private long retainedBytes;
+
+    SegmentBufferPool(long maxRetainedBytes, int initialSize) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.initialSize = initialSize;
+    }
+
+    /**
+     * 取出一个已清空的缓冲区，池为空时新建
+     */
+    synchronized SegmentBuffer acquire() {
+        SegmentBuffer buffer = buffers.pollLast();
+        if (buffer == null) {
+            return new SegmentBuffer(initialSize);
+        }
+        retainedBytes -= buffer.capacity();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，调用方之后不能再使用它以及由它创建的ByteBuffer
+     */
+    synchronized void release(SegmentBuffer buffer) {
+        if (buffer == null || retainedBytes + buffer.capacity() > maxRetainedBytes) {
+            return;
+        }
+        retainedBytes += buffer.capacity();
+        buffers.addLast(buffer);
+    }
+
+    /**
+     * 可直接暴露内部数组的字节缓冲，避免toByteArray()的额外拷贝
+     */
+    static class SegmentBuffer extends ByteArrayOutputStream {
+        SegmentBuffer(int initialSize) {
+            super(initialSize);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.btdlp.downloader.hls;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 滑动窗口片段调度器
+ * 同一时刻最多只有maxInFlight个片段任务在执行，调用方按顺序提交，
+ * 窗口已满时submit阻塞，直到有任务完成腾出位置。
+ * 内存占用与播放列表长度无关
+ */
+class SegmentScheduler {
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final Set<FutureTask<Void>> inFlight =
+            Collections.newSetFromMap(new ConcurrentHashMap<FutureTask<Void>, Boolean>());
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    SegmentScheduler(Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * 提交一个片段任务，窗口已满时阻塞
+     * @throws ExecutionException 之前提交的任务已经失败
+     */
+    void submit(final Callable<?> task) throws InterruptedException, ExecutionException {
+        checkFailure();
+        permits.acquire();
+
+        FutureTask<Void> future = new FutureTask<Void>(() -> {
+            task.call();
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                inFlight.remove(this);
+                if (!isCancelled()) {
+                    try {
+                        get();
+                    } catch (ExecutionException e) {
+                        failure.compareAndSet(null, e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                permits.release();
+            }
+        };
+
+        inFlight.add(future);
+        try {
+            checkFailure();
+            executor.execute(future);
+        } catch (ExecutionException | RejectedExecutionException e) {
+            inFlight.remove(future);
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 等待所有已提交的任务结束
+     * @throws ExecutionException 任一任务失败
+     */
+    void awaitCompletion() throws InterruptedException, ExecutionException {
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+        checkFailure();
+    }
+
+    /**
+     * 取消所有仍在执行的任务
+     */
+    void cancel() {
+        for (FutureTask<Void> future : inFlight) {
+            future.cancel(true);
+        }
+    }
+
+    Throwable getFailure() {
+        return failure.get();
+    }
+
+    private void checkFailure() throws ExecutionException {
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+    }
+}
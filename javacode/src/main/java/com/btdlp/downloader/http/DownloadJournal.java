@@ -0,0 +1,191 @@
+package com.btdlp.downloader.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * 断点续传日志
+ * 记录.part文件中已经完整写入的字节区间，以及用于校验远端文件未变化的ETag/Last-Modified，
+ * 下载中断后重新运行时只请求缺失的区间
+ */
+class DownloadJournal {
+
+    private static final long SAVE_INTERVAL_MS = 2000;
+
+    private final File journalFile;
+    private final long totalLength;
+    private final String etag;
+    private final String lastModified;
+
+    // 已完成区间：起始偏移 -> 结束偏移（不含）
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private long lastSaveTime;
+
+    DownloadJournal(File journalFile, long totalLength, String etag, String lastModified) {
+        this.journalFile = journalFile;
+        this.totalLength = totalLength;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * 读取已有的日志，文件不存在或损坏时返回null
+     */
+    static DownloadJournal load(File journalFile) {
+        if (!journalFile.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream inputStream = new FileInputStream(journalFile)) {
+            properties.load(inputStream);
+
+            DownloadJournal journal = new DownloadJournal(journalFile,
+                    Long.parseLong(properties.getProperty("length", "-1")),
+                    properties.getProperty("etag"),
+                    properties.getProperty("last_modified"));
+
+            String rangeList = properties.getProperty("ranges", "");
+            for (String range : rangeList.split(",")) {
+                int dash = range.indexOf('-');
+                if (dash > 0) {
+                    journal.markCompleted(Long.parseLong(range.substring(0, dash).trim()),
+                            Long.parseLong(range.substring(dash + 1).trim()));
+                }
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 远端文件是否与日志记录时一致
+     */
+    boolean matches(long totalLength, String etag, String lastModified) {
+        if (this.totalLength != totalLength) {
+            return false;
+        }
+        if (this.etag != null || etag != null) {
+            return this.etag != null && this.etag.equals(etag);
+        }
+        return this.lastModified != null && this.lastModified.equals(lastModified);
+    }
+
+    /**
+     * 用于If-Range请求头的校验值，优先使用ETag
+     */
+    String getValidator() {
+        return etag != null ? etag : lastModified;
+    }
+
+    /**
+     * 从start开始第一个尚未下载的字节位置
+     */
+    synchronized long resumePosition(long start) {
+        Map.Entry<Long, Long> range = ranges.floorEntry(start);
+        if (range != null && range.getValue() > start) {
+            return range.getValue();
+        }
+        return start;
+    }
+
+    /**
+     * 标记[start, end)区间已写入，并与相邻区间合并
+     */
+    synchronized void markCompleted(long start, long end) {
+        if (end <= start) {
+            return;
+        }
+
+        Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+        if (floor != null && floor.getValue() >= start) {
+            start = floor.getKey();
+            end = Math.max(end, floor.getValue());
+        }
+
+        Iterator<Map.Entry<Long, Long>> iterator = ranges.tailMap(start, true).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> next = iterator.next();
+            if (next.getKey() > end) {
+                break;
+            }
+            end = Math.max(end, next.getValue());
+            iterator.remove();
+        }
+
+        ranges.put(start, end);
+    }
+
+    /**
+     * 已完成的字节数
+     */
+    synchronized long getCompletedBytes() {
+        long completed = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            completed += range.getValue() - range.getKey();
+        }
+        return completed;
+    }
+
+    synchronized void reset() {
+        ranges.clear();
+    }
+
+    /**
+     * 定期把数据刷到磁盘后再保存日志，保证日志记录的区间一定已经落盘
+     */
+    synchronized void checkpoint(FileChannel channel) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastSaveTime >= SAVE_INTERVAL_MS) {
+            channel.force(false);
+            save();
+            lastSaveTime = now;
+        }
+    }
+
+    synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("length", String.valueOf(totalLength));
+        if (etag != null) {
+            properties.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            properties.setProperty("last_modified", lastModified);
+        }
+
+        StringBuilder rangeList = new StringBuilder();
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (rangeList.length() > 0) {
+                rangeList.append(',');
+            }
+            rangeList.append(range.getKey()).append('-').append(range.getValue());
+        }
+        properties.setProperty("ranges", rangeList.toString());
+
+        // 先写临时文件再替换，避免中途崩溃留下损坏的日志
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+            properties.store(outputStream, null);
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            journalFile.delete();
+            if (!tempFile.renameTo(journalFile)) {
+                throw new IOException("Failed to write journal: " + journalFile);
+            }
+        }
+    }
+
+    void delete() {
+        journalFile.delete();
+    }
+}
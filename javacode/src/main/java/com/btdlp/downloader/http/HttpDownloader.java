@@ -3,11 +3,22 @@ package com.btdlp.downloader.http;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.downloader.BaseDownloader;
+import com.btdlp.network.ContentDecoder;
+import com.btdlp.network.HttpTransport;
 import com.btdlp.utils.Logger;
 
 import java.io.*;
 import java.net.*;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * HTTP下载器
@@ -17,6 +28,13 @@ public class HttpDownloader extends BaseDownloader {
     private static final int BUFFER_SIZE = 8192;
     private static final int CONNECT_TIMEOUT = 30000;
     private static final int READ_TIMEOUT = 60000;
+    private static final int DEFAULT_CONNECTIONS = 4;
+    private static final long MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    
+    private final AtomicLong chunkBytesDownloaded = new AtomicLong();
+    private long lastChunkProgressTime;
     
     public HttpDownloader() {
         super();
@@ -48,21 +66,42 @@ public class HttpDownloader extends BaseDownloader {
         String url = format.getUrl();
         logger.info("Starting HTTP download: " + url);
         
-        // 检查URL是否可访问
-        if (!isUrlAccessible(url, format)) {
+        // 检查URL是否可访问，同时获取文件大小和Range支持情况
+        RangeProbe probe = probeRanges(url, format);
+        if (probe == null) {
             throw new IOException("URL is not accessible: " + url);
         }
         
-        // 获取文件大小
-        long fileSize = getFileSize(url, format);
+        long fileSize = probe.contentLength;
         if (fileSize > 0) {
             stats.setTotalBytes(fileSize);
         }
         
-        // 执行下载
-        boolean success = downloadFile(url, outputFile, format);
+        // 先写入.part文件，下载完成后再重命名为目标文件
+        File partFile = new File(outputFile.getPath() + PART_SUFFIX);
+        DownloadJournal journal = openJournal(partFile, probe);
+        
+        // 执行下载：服务器支持Range且文件足够大时使用多连接分块下载
+        int connections = getConnectionCount(probe);
+        boolean success;
+        try {
+            if (connections > 1) {
+                logger.info("Using %s parallel connections for %s bytes", connections, fileSize);
+                success = downloadFileChunked(url, partFile, format, fileSize, connections, journal);
+            } else {
+                success = downloadFile(url, partFile, format, journal);
+            }
+        } finally {
+            if (journal != null) {
+                saveJournal(journal);
+            }
+        }
         
         if (success) {
+            Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (journal != null) {
+                journal.delete();
+            }
             logger.info("HTTP download completed: " + outputFile.getAbsolutePath());
         } else {
             logger.error("HTTP download failed: " + url);
@@ -71,6 +110,60 @@ public class HttpDownloader extends BaseDownloader {
         return success;
     }
     
+    /**
+     * 打开断点续传日志：远端文件未变化时沿用已有的.part文件，否则重新开始。
+     * 服务器不支持Range时返回null
+     */
+    private DownloadJournal openJournal(File partFile, RangeProbe probe) {
+        File journalFile = new File(partFile.getPath() + JOURNAL_SUFFIX);
+        
+        if (!probe.acceptRanges) {
+            journalFile.delete();
+            return null;
+        }
+        
+        if (getBooleanParam("continuedl", true) && partFile.exists()) {
+            DownloadJournal existing = DownloadJournal.load(journalFile);
+            if (existing != null && existing.matches(probe.contentLength, probe.etag, probe.lastModified)) {
+                logger.info("Resuming download, %s bytes already on disk", existing.getCompletedBytes());
+                return existing;
+            }
+            logger.info("Remote file changed or journal missing, restarting download");
+        }
+        
+        partFile.delete();
+        journalFile.delete();
+        return new DownloadJournal(journalFile, probe.contentLength, probe.etag, probe.lastModified);
+    }
+    
+    private void saveJournal(DownloadJournal journal) {
+        try {
+            journal.save();
+        } catch (IOException e) {
+            logger.warning("Failed to save download journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 设置续传请求头，If-Range保证远端文件变化时服务器返回完整内容而不是错位的区间
+     */
+    private void setResumeHeaders(HttpTransport.Request request, long start, long end, DownloadJournal journal) {
+        request.header("Range", "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : ""));
+        if (journal != null && journal.getValidator() != null) {
+            request.header("If-Range", journal.getValidator());
+        }
+    }
+    
+    /**
+     * 校验206响应的Content-Range确实从请求的位置开始
+     */
+    private void checkContentRange(HttpTransport.Response response, long start) throws IOException {
+        String contentRange = response.getHeader("Content-Range");
+        if (contentRange != null && !contentRange.startsWith("bytes " + start + "-")) {
+            throw new IOException("Unexpected Content-Range, requested from byte " + start + ": " + contentRange);
+        }
+    }
+    
     private boolean retryDownload(String url, int maxRetries, DownloadOperation operation) throws Exception {
         Exception lastException = null;
         
@@ -92,100 +185,278 @@ public class HttpDownloader extends BaseDownloader {
         throw lastException;
     }
     
-    private boolean downloadFile(String url, File outputFile, VideoFormat format) throws Exception {
+    private boolean downloadFile(String url, File partFile, VideoFormat format, DownloadJournal journal) throws Exception {
         return retryDownload(url, 3, () -> {
-            URL urlObj = new URL(url);
-            HttpURLConnection connection = createConnection(urlObj, format);
+            long resumeFrom = journal != null ? journal.resumePosition(0) : 0;
+            if (resumeFrom > partFile.length()) {
+                // 日志与.part文件不一致，只能从头开始
+                journal.reset();
+                resumeFrom = 0;
+            }
+            if (resumeFrom > 0 && stats.getTotalBytes() > 0 && resumeFrom >= stats.getTotalBytes()) {
+                return true;
+            }
+            
+            HttpTransport.Request request = createRequest(url, format);
+            if (resumeFrom > 0) {
+                logger.info("Resuming from byte " + resumeFrom);
+                setResumeHeaders(request, resumeFrom, -1, journal);
+            }
             
+            HttpTransport.Response response = getHttpTransport().execute(request);
+            boolean complete = false;
             try {
-                int responseCode = connection.getResponseCode();
+                int responseCode = response.getStatusCode();
                 
-                if (responseCode == HttpURLConnection.HTTP_OK) {
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL && resumeFrom > 0) {
+                    checkContentRange(response, resumeFrom);
+                } else if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    // 服务器返回完整内容（不支持Range或文件已变化），从头写入
+                    resumeFrom = 0;
+                    if (journal != null) {
+                        journal.reset();
+                    }
+                    
                     // 获取内容长度
-                    long contentLength = connection.getContentLengthLong();
+                    long contentLength = response.getContentLength();
                     if (contentLength > 0 && stats.getTotalBytes() == 0) {
                         stats.setTotalBytes(contentLength);
                     }
+                } else {
+                    throw new IOException("HTTP error: " + responseCode + " " + response.getStatusMessage());
+                }
+                
+                // 下载文件
+                InputStream inputStream = response.getBody();
+                try (FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
                     
-                    // 下载文件
-                    try (InputStream inputStream = connection.getInputStream();
-                         FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-                        
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        long totalBytesRead = 0;
-                        long lastUpdateTime = System.currentTimeMillis();
+                    channel.truncate(resumeFrom);
+                    channel.position(resumeFrom);
+                    
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                    long totalBytesRead = resumeFrom;
+                    long lastUpdateTime = System.currentTimeMillis();
+                    
+                    int bytesRead;
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        if (shouldCancel()) {
+                            logger.info("Download cancelled by user");
+                            return false;
+                        }
                         
-                        int bytesRead;
-                        while ((bytesRead = inputStream.read(buffer)) != -1) {
-                            if (shouldCancel()) {
-                                logger.info("Download cancelled by user");
-                                return false;
-                            }
-                            
-                            outputStream.write(buffer, 0, bytesRead);
-                            totalBytesRead += bytesRead;
-                            
-                            // 更新进度
-                            long currentTime = System.currentTimeMillis();
-                            if (currentTime - lastUpdateTime >= 1000) { // 每秒更新一次
-                                long speed = totalBytesRead * 1000 / (currentTime - (stats.getDownloadTimeMs() > 0 ? stats.getDownloadTimeMs() : currentTime));
-                                updateProgress(totalBytesRead, stats.getTotalBytes(), speed);
-                                lastUpdateTime = currentTime;
-                            }
-                            
-                            // 应用速率限制
-                            applyRateLimit(bytesRead);
+                        byteBuffer.clear().limit(bytesRead);
+                        while (byteBuffer.hasRemaining()) {
+                            channel.write(byteBuffer);
+                        }
+                        if (journal != null) {
+                            journal.markCompleted(totalBytesRead, totalBytesRead + bytesRead);
+                            journal.checkpoint(channel);
                         }
+                        totalBytesRead += bytesRead;
                         
-                        // 最终进度更新
-                        updateProgress(totalBytesRead, stats.getTotalBytes(), 0);
+                        // 更新进度
+                        long currentTime = System.currentTimeMillis();
+                        if (currentTime - lastUpdateTime >= 1000) { // 每秒更新一次
+                            long speed = totalBytesRead * 1000 / (currentTime - (stats.getDownloadTimeMs() > 0 ? stats.getDownloadTimeMs() : currentTime));
+                            updateProgress(totalBytesRead, stats.getTotalBytes(), speed);
+                            lastUpdateTime = currentTime;
+                        }
                         
-                        return true;
+                        // 应用速率限制
+                        applyRateLimit(bytesRead);
                     }
-                } else {
-                    throw new IOException("HTTP error: " + responseCode + " " + connection.getResponseMessage());
+                    
+                    if (stats.getTotalBytes() > 0 && totalBytesRead < stats.getTotalBytes()) {
+                        throw new IOException("Connection closed early at byte " + totalBytesRead + " of " + stats.getTotalBytes());
+                    }
+                    
+                    // 最终进度更新
+                    updateProgress(totalBytesRead, stats.getTotalBytes(), 0);
+                    
+                    complete = true;
+                    return true;
                 }
                 
             } finally {
-                connection.disconnect();
+                closeResponse(response, complete);
             }
         });
     }
     
-    private HttpURLConnection createConnection(URL url, VideoFormat format) throws Exception {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    /**
+     * 计算分块下载使用的连接数，返回1表示使用单连接下载
+     */
+    private int getConnectionCount(RangeProbe probe) {
+        int connections = getIntParam("http_connections", DEFAULT_CONNECTIONS);
+        if (connections <= 1 || !probe.acceptRanges || probe.contentLength <= 0) {
+            return 1;
+        }
         
-        connection.setRequestMethod("GET");
-        connection.setConnectTimeout(CONNECT_TIMEOUT);
-        connection.setReadTimeout(READ_TIMEOUT);
-        connection.setInstanceFollowRedirects(true);
+        // 限速是按单个连接计算的，多连接会突破限速
+        if (getRateLimitBytesPerSecond() > 0) {
+            return 1;
+        }
         
-        // 设置请求头
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-        connection.setRequestProperty("Accept", "*/*");
-        connection.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-        connection.setRequestProperty("Connection", "keep-alive");
-        connection.setRequestProperty("Range", "bytes=0-");
+        long maxByChunkSize = probe.contentLength / MIN_CHUNK_SIZE;
+        return (int) Math.max(1, Math.min(connections, maxByChunkSize));
+    }
+    
+    /**
+     * 多连接分块下载：文件预分配后切分为多个字节区间，
+     * 每个区间由独立连接下载，并通过FileChannel按偏移写入
+     */
+    private boolean downloadFileChunked(String url, File partFile, VideoFormat format, long fileSize, int connections,
+                                        DownloadJournal journal) throws Exception {
+        chunkBytesDownloaded.set(journal != null ? journal.getCompletedBytes() : 0);
+        lastChunkProgressTime = System.currentTimeMillis();
         
-        // 添加格式特定的头部
-        if (format.getHttpHeaders() != null) {
-            for (Map.Entry<String, String> entry : format.getHttpHeaders().entrySet()) {
-                connection.setRequestProperty(entry.getKey(), entry.getValue());
+        try (RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+            file.setLength(fileSize);
+            FileChannel channel = file.getChannel();
+            
+            long chunkSize = (fileSize + connections - 1) / connections;
+            List<Future<Boolean>> chunks = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                final long start = i * chunkSize;
+                final long end = Math.min(fileSize, start + chunkSize) - 1;
+                final int chunkIndex = i;
+                chunks.add(getExecutorService().submit(() -> downloadChunk(url, format, channel, journal, chunkIndex, start, end)));
+            }
+            
+            boolean success = true;
+            for (Future<Boolean> chunk : chunks) {
+                try {
+                    success &= chunk.get();
+                } catch (ExecutionException e) {
+                    logger.error("Chunk download failed: " + e.getCause().getMessage());
+                    success = false;
+                }
+                if (!success) {
+                    for (Future<Boolean> other : chunks) {
+                        other.cancel(true);
+                    }
+                    break;
+                }
+            }
+            
+            if (success) {
+                channel.force(false);
+                updateProgress(fileSize, fileSize, 0);
             }
+            return success;
         }
+    }
+    
+    /**
+     * 下载单个字节区间，重试时从该区间已写入的位置继续
+     */
+    private boolean downloadChunk(String url, VideoFormat format, FileChannel channel, DownloadJournal journal,
+                                  int chunkIndex, long start, long end) throws Exception {
+        final long[] position = {journal != null ? journal.resumePosition(start) : start};
+        
+        return retryDownload(url, 3, () -> {
+            if (position[0] > end) {
+                return true;
+            }
+            
+            HttpTransport.Request request = createRequest(url, format);
+            setResumeHeaders(request, position[0], end, journal);
+            
+            HttpTransport.Response response = getHttpTransport().execute(request);
+            boolean complete = false;
+            try {
+                int responseCode = response.getStatusCode();
+                if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+                    if (responseCode == HttpURLConnection.HTTP_OK && journal != null) {
+                        // If-Range不匹配，远端文件已变化，已下载的区间全部作废
+                        journal.reset();
+                    }
+                    throw new IOException("Range request not honored for chunk " + chunkIndex + ", HTTP " + responseCode);
+                }
+                
+                checkContentRange(response, position[0]);
+                
+                InputStream inputStream = response.getBody();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                int bytesRead;
+                while (position[0] <= end && (bytesRead = inputStream.read(buffer)) != -1) {
+                    if (shouldCancel()) {
+                        logger.info("Download cancelled by user");
+                        return false;
+                    }
+                    
+                    int length = (int) Math.min(bytesRead, end - position[0] + 1);
+                    long chunkStart = position[0];
+                    byteBuffer.clear().limit(length);
+                    while (byteBuffer.hasRemaining()) {
+                        position[0] += channel.write(byteBuffer, position[0]);
+                    }
+                    if (journal != null) {
+                        journal.markCompleted(chunkStart, position[0]);
+                        journal.checkpoint(channel);
+                    }
+                    onChunkProgress(length);
+                }
+                
+                if (position[0] <= end) {
+                    throw new IOException("Connection closed early for chunk " + chunkIndex + " at byte " + position[0]);
+                }
+                complete = true;
+                return true;
+                
+            } finally {
+                closeResponse(response, complete);
+            }
+        });
+    }
+    
+    private void onChunkProgress(int bytesRead) {
+        long downloaded = chunkBytesDownloaded.addAndGet(bytesRead);
+        long currentTime = System.currentTimeMillis();
+        synchronized (chunkBytesDownloaded) {
+            if (currentTime - lastChunkProgressTime >= 1000) { // 每秒更新一次
+                long elapsed = Math.max(1, currentTime - stats.getDownloadTimeMs());
+                updateProgress(downloaded, stats.getTotalBytes(), stats.getDownloadTimeMs() > 0 ? downloaded * 1000 / elapsed : 0);
+                lastChunkProgressTime = currentTime;
+            }
+        }
+    }
+    
+    /**
+     * 构造请求，User-Agent等默认请求头和代理由传输层统一设置。
+     * 媒体内容不请求压缩（格式头部中的Accept-Encoding也被覆盖），Range偏移、Content-Length和续传位置都按原始字节计算
+     */
+    private HttpTransport.Request createRequest(String url, VideoFormat format) {
+        HttpTransport.Request request = new HttpTransport.Request(url)
+                .timeouts(CONNECT_TIMEOUT, READ_TIMEOUT)
+                .header("Range", "bytes=0-")
+                .headers(format.getHttpHeaders())
+                .header("Accept-Encoding", ContentDecoder.IDENTITY);
         
         // 设置引用页面
         if (format.getUrl() != null) {
             try {
                 URL formatUrl = new URL(format.getUrl());
-                connection.setRequestProperty("Referer", formatUrl.getProtocol() + "://" + formatUrl.getHost());
+                request.header("Referer", formatUrl.getProtocol() + "://" + formatUrl.getHost());
             } catch (Exception e) {
-                connection.setRequestProperty("Referer", "https://www.google.com/");
+                request.header("Referer", "https://www.google.com/");
             }
         }
         
-        return connection;
+        return request;
+    }
+    
+    /**
+     * 完整读取的响应放回连接池；出错或取消时响应体没有读完，直接断开连接
+     */
+    private void closeResponse(HttpTransport.Response response, boolean complete) {
+        if (complete) {
+            response.close();
+        } else {
+            response.abort();
+        }
     }
     
     private void applyRateLimit(int bytesRead) {
@@ -203,35 +474,67 @@ public class HttpDownloader extends BaseDownloader {
     }
     
     public long getFileSize(String url, VideoFormat format) throws Exception {
-        URL urlObj = new URL(url);
-        HttpURLConnection connection = createConnection(urlObj, format);
-        
-        try {
-            connection.setRequestMethod("HEAD");
-            int responseCode = connection.getResponseCode();
+        try (HttpTransport.Response response = getHttpTransport().execute(createRequest(url, format).method("HEAD"))) {
+            int responseCode = response.getStatusCode();
             
             if (responseCode == HttpURLConnection.HTTP_OK) {
-                return connection.getContentLengthLong();
+                return response.getContentLength();
             } else {
                 logger.warning("Could not get file size, HTTP error: " + responseCode);
                 return -1;
             }
-        } finally {
-            connection.disconnect();
         }
     }
     
+    /**
+     * 通过一次HEAD请求获取文件大小和Range支持情况，URL不可访问时返回null
+     */
+    public RangeProbe probeRanges(String url, VideoFormat format) {
+        try {
+            try (HttpTransport.Response response = getHttpTransport().execute(createRequest(url, format).method("HEAD"))) {
+                int responseCode = response.getStatusCode();
+                
+                String etag = response.getHeader("ETag");
+                String lastModified = response.getHeader("Last-Modified");
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    // 206响应本身说明支持Range，总大小在Content-Range中
+                    return new RangeProbe(parseTotalLength(response.getHeader("Content-Range")), true,
+                            etag, lastModified);
+                } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                    String acceptRanges = response.getHeader("Accept-Ranges");
+                    return new RangeProbe(response.getContentLength(),
+                            acceptRanges != null && acceptRanges.trim().equalsIgnoreCase("bytes"), etag, lastModified);
+                } else {
+                    logger.warning("URL accessibility check failed, HTTP error: " + responseCode);
+                    return null;
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("URL accessibility check failed: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private long parseTotalLength(String contentRange) {
+        // 格式: bytes 0-1023/4096
+        if (contentRange != null) {
+            int slash = contentRange.lastIndexOf('/');
+            if (slash >= 0) {
+                try {
+                    return Long.parseLong(contentRange.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    // 总大小未知（*）
+                }
+            }
+        }
+        return -1;
+    }
+    
     public boolean isUrlAccessible(String url, VideoFormat format) {
         try {
-            URL urlObj = new URL(url);
-            HttpURLConnection connection = createConnection(urlObj, format);
-            
-            try {
-                connection.setRequestMethod("HEAD");
-                int responseCode = connection.getResponseCode();
+            try (HttpTransport.Response response = getHttpTransport().execute(createRequest(url, format).method("HEAD"))) {
+                int responseCode = response.getStatusCode();
                 return responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL;
-            } finally {
-                connection.disconnect();
             }
         } catch (Exception e) {
             logger.warning("URL accessibility check failed: " + e.getMessage());
@@ -240,7 +543,7 @@ public class HttpDownloader extends BaseDownloader {
     }
     
     private boolean lambda$performDownload$0(String url, File outputFile, VideoFormat format) throws Exception {
-        return downloadFile(url, outputFile, format);
+        return downloadFile(url, outputFile, format, null);
     }
     
     /**
@@ -251,6 +554,39 @@ public class HttpDownloader extends BaseDownloader {
         boolean execute() throws Exception;
     }
     
+    /**
+     * HEAD探测结果
+     */
+    public static class RangeProbe {
+        private final long contentLength;
+        private final boolean acceptRanges;
+        private final String etag;
+        private final String lastModified;
+        
+        public RangeProbe(long contentLength, boolean acceptRanges, String etag, String lastModified) {
+            this.contentLength = contentLength;
+            this.acceptRanges = acceptRanges;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+        
+        public long getContentLength() {
+            return contentLength;
+        }
+        
+        public boolean isAcceptRanges() {
+            return acceptRanges;
+        }
+        
+        public String getEtag() {
+            return etag;
+        }
+        
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+    
     /**
      * 下载操作数据类
      */
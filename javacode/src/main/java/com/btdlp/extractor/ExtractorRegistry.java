@@ -1,13 +1,21 @@
 package com.btdlp.extractor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Registry for managing information extractors
+ * 注册时按getHosts()建立域名索引，查找时只对该域名的候选提取器和不限域名的提取器做正则匹配
  */
 public class ExtractorRegistry {
     private List<InfoExtractor> extractors;
+    // 域名 -> 候选提取器（含不限域名的提取器），保持注册顺序
+    private final Map<String, List<InfoExtractor>> hostIndex = new ConcurrentHashMap<>();
+    // 不限域名的提取器
+    private volatile List<InfoExtractor> catchAll = Collections.emptyList();
 
     public ExtractorRegistry() {
         this.extractors = new ArrayList<>();
@@ -36,12 +44,36 @@ public class ExtractorRegistry {
         }
     }
 
-    public void register(InfoExtractor extractor) {
+    public synchronized void register(InfoExtractor extractor) {
         extractors.add(extractor);
+        String[] hosts = extractor.getHosts();
+        if (hosts == null || hosts.length == 0) {
+            // 不限域名的提取器追加到每个域名的候选末尾，与逐个匹配时的优先顺序一致
+            catchAll = append(catchAll, extractor);
+            for (Map.Entry<String, List<InfoExtractor>> entry : hostIndex.entrySet()) {
+                entry.setValue(append(entry.getValue(), extractor));
+            }
+            return;
+        }
+        for (String host : hosts) {
+            String key = host.toLowerCase();
+            List<InfoExtractor> candidates = hostIndex.get(key);
+            if (candidates == null) {
+                // 先注册的不限域名提取器排在前面
+                candidates = catchAll;
+            }
+            if (!candidates.contains(extractor)) {
+                hostIndex.put(key, append(candidates, extractor));
+            }
+        }
     }
 
     public InfoExtractor getExtractor(String url) {
-        for (InfoExtractor extractor : extractors) {
+        if (url == null) {
+            return null;
+        }
+        List<InfoExtractor> candidates = findHostCandidates(extractHost(url));
+        for (InfoExtractor extractor : candidates != null ? candidates : catchAll) {
             if (extractor.suitable(url)) {
                 return extractor;
             }
@@ -49,8 +81,73 @@ public class ExtractorRegistry {
         return null;
     }
 
-    public List<InfoExtractor> getAllExtractors() {
+    /**
+     * URL的域名（或其上级域名）是否有专门的提取器，不进行正则匹配
+     */
+    public boolean hasHostExtractor(String url) {
+        return url != null && findHostCandidates(extractHost(url)) != null;
+    }
+
+    public synchronized List<InfoExtractor> getAllExtractors() {
         return new ArrayList<>(extractors);
     }
 
+    /**
+     * 依次用域名本身及其上级域名查找索引，如vm.tiktok.com -> tiktok.com
+     */
+    private List<InfoExtractor> findHostCandidates(String host) {
+        while (!host.isEmpty()) {
+            List<InfoExtractor> candidates = hostIndex.get(host);
+            if (candidates != null) {
+                return candidates;
+            }
+            int dot = host.indexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            host = host.substring(dot + 1);
+        }
+        return null;
+    }
+
+    /**
+     * 候选列表注册后不再修改，查找时无需加锁
+     */
+    private static List<InfoExtractor> append(List<InfoExtractor> list, InfoExtractor extractor) {
+        List<InfoExtractor> copy = new ArrayList<>(list.size() + 1);
+        copy.addAll(list);
+        copy.add(extractor);
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * 取出URL中的主机名（小写），允许省略协议，与各提取器的URL正则一致
+     */
+    public static String extractHost(String url) {
+        int scheme = url.indexOf("://");
+        int slash = url.indexOf('/');
+        // 省略协议时查询参数中可能含有其它URL的"://"
+        int start = scheme >= 0 && scheme < slash ? scheme + 3 : 0;
+        int end = url.length();
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        String authority = url.substring(start, end);
+        int at = authority.lastIndexOf('@');
+        if (at >= 0) {
+            authority = authority.substring(at + 1);
+        }
+        int colon = authority.indexOf(':');
+        if (colon >= 0) {
+            authority = authority.substring(0, colon);
+        }
+        if (authority.endsWith(".")) {
+            authority = authority.substring(0, authority.length() - 1);
+        }
+        return authority.toLowerCase();
+    }
 }
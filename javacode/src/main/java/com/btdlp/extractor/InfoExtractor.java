@@ -2,6 +2,8 @@ package com.btdlp.extractor;
 
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.BubeDL;
+import com.btdlp.network.HttpTransport;
+import com.btdlp.network.HttpTransports;
 import com.btdlp.options.BubeDLOptions;
 import com.btdlp.utils.Logger;
 
@@ -14,6 +16,7 @@ public abstract class InfoExtractor {
     protected BubeDL downloader;
     protected BubeDLOptions params;
     protected Logger logger;
+    protected HttpTransport httpTransport;
 
     public InfoExtractor() {
         this.logger = new Logger(false, false, false);
@@ -24,10 +27,32 @@ public abstract class InfoExtractor {
         this.params = downloader.getParams();
     }
 
+    /**
+     * 指定使用的传输层，未指定时按选项使用共享的传输层
+     */
+    public void setHttpTransport(HttpTransport httpTransport) {
+        this.httpTransport = httpTransport;
+    }
+
+    protected HttpTransport getHttpTransport() {
+        if (httpTransport == null) {
+            httpTransport = HttpTransports.forOptions(params);
+        }
+        return httpTransport;
+    }
+
     public boolean suitable(String url) {
         return getVALID_URL().matcher(url).matches();
     }
 
+    /**
+     * 提取器处理的域名（如tiktok.com，同时匹配其子域名），ExtractorRegistry据此建立索引
+     * 返回空数组表示不限域名（如M3U8Extractor），每个URL都会尝试
+     */
+    public String[] getHosts() {
+        return new String[0];
+    }
+
     public VideoInfo extract(String url) throws ExtractorException {
         try {
             String videoId = extractVideoId(url);
@@ -37,6 +62,18 @@ public abstract class InfoExtractor {
         }
     }
 
+    /**
+     * 视频信息缓存的键：提取器名称加视频ID，无法得到视频ID时返回null（不缓存）
+     */
+    public String getCacheKey(String url) {
+        try {
+            String videoId = extractVideoId(url);
+            return videoId != null && !videoId.isEmpty() ? getIE_NAME() + ":" + videoId : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     protected abstract String extractVideoId(String url);
     protected abstract VideoInfo realExtract(String url, String videoId) throws Exception;
 
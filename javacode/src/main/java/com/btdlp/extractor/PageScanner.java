@@ -0,0 +1,329 @@
+package com.btdlp.extractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 网页多字段扫描器
+ * 字段规则在提取器类中声明一次并预编译（static final），extract时对整个页面只遍历一遍：
+ * 以每条正则开头的固定文本（如"description":）作为锚点，按前两个字符分派，
+ * 锚点命中后才在该位置用正则匹配。结果与每个字段单独调用Matcher.find()一致。
+ * 没有固定开头的正则（如以[或(开头）在遍历后单独查找
+ */
+public final class PageScanner {
+
+    private static final int ASCII = 128;
+
+    private final Rule[] rules;
+    // 首字符 -> 第二个字符（取低7位）-> 锚点规则；锚点只有一个字符的规则放在每个分组中
+    private final Rule[][][] rulesByPrefix = new Rule[ASCII][][];
+    private final Rule[] nonAsciiRules;
+    private final Rule[] unanchoredRules;
+
+    private PageScanner(List<Rule> ruleList) {
+        this.rules = ruleList.toArray(new Rule[0]);
+        List<List<Rule>> byChar = new ArrayList<>(ASCII);
+        for (int i = 0; i < ASCII; i++) {
+            byChar.add(new ArrayList<Rule>());
+        }
+        List<Rule> nonAscii = new ArrayList<>();
+        List<Rule> unanchored = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.anchor.isEmpty()) {
+                unanchored.add(rule);
+            } else if (rule.anchor.charAt(0) < ASCII) {
+                byChar.get(rule.anchor.charAt(0)).add(rule);
+            } else {
+                nonAscii.add(rule);
+            }
+        }
+        for (int i = 0; i < ASCII; i++) {
+            if (!byChar.get(i).isEmpty()) {
+                rulesByPrefix[i] = groupBySecondChar(byChar.get(i));
+            }
+        }
+        this.nonAsciiRules = nonAscii.toArray(new Rule[0]);
+        this.unanchoredRules = unanchored.toArray(new Rule[0]);
+    }
+
+    private static Rule[][] groupBySecondChar(List<Rule> rules) {
+        Rule[][] groups = new Rule[ASCII][];
+        for (int c = 0; c < ASCII; c++) {
+            List<Rule> group = new ArrayList<>();
+            for (Rule rule : rules) {
+                if (rule.anchor.length() == 1 || (rule.anchor.charAt(1) & (ASCII - 1)) == c) {
+                    group.add(rule);
+                }
+            }
+            if (!group.isEmpty()) {
+                groups[c] = group.toArray(new Rule[0]);
+            }
+        }
+        return groups;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 扫描页面，提取所有字段
+     */
+    public Result scan(CharSequence page) {
+        Result result = new Result();
+        if (page == null || page.length() == 0) {
+            return result;
+        }
+        int length = page.length();
+        // 每条规则各自的Matcher、下一次允许匹配的位置（同一字段的匹配互不重叠）以及是否已完成
+        Matcher[] matchers = new Matcher[rules.length];
+        int[] nextAllowed = new int[rules.length];
+        boolean[] done = new boolean[rules.length];
+        int pending = 0;
+        for (Rule rule : rules) {
+            if (!rule.anchor.isEmpty()) {
+                pending++;
+            }
+        }
+
+        for (int pos = 0; pos < length && pending > 0; pos++) {
+            char c = page.charAt(pos);
+            Rule[] candidates;
+            if (c < ASCII) {
+                Rule[][] groups = rulesByPrefix[c];
+                if (groups == null) {
+                    continue;
+                }
+                candidates = pos + 1 < length ? groups[page.charAt(pos + 1) & (ASCII - 1)] : groups[0];
+                if (candidates == null) {
+                    continue;
+                }
+            } else {
+                candidates = nonAsciiRules;
+            }
+            for (Rule rule : candidates) {
+                int index = rule.index;
+                if (done[index] || pos < nextAllowed[index] || !startsWith(page, pos, rule.anchor)) {
+                    continue;
+                }
+                Matcher matcher = matchers[index];
+                if (matcher == null) {
+                    matcher = rule.pattern.matcher(page);
+                    matcher.useTransparentBounds(true);
+                    matcher.useAnchoringBounds(false);
+                    matchers[index] = matcher;
+                }
+                matcher.region(pos, length);
+                if (matcher.lookingAt()) {
+                    result.add(rule, matcher.group(rule.group));
+                    nextAllowed[index] = Math.max(matcher.end(), pos + 1);
+                    if (!rule.all) {
+                        done[index] = true;
+                        pending--;
+                    }
+                }
+            }
+        }
+
+        for (Rule rule : unanchoredRules) {
+            Matcher matcher = rule.pattern.matcher(page);
+            while (matcher.find()) {
+                result.add(rule, matcher.group(rule.group));
+                if (!rule.all) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean startsWith(CharSequence page, int offset, String anchor) {
+        if (offset + anchor.length() > page.length()) {
+            return false;
+        }
+        for (int i = 1; i < anchor.length(); i++) {
+            if (page.charAt(offset + i) != anchor.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 正则开头的固定文本；遇到元字符、字符类转义或量词为止，带标志或顶层有|的正则返回空字符串
+     */
+    static String literalPrefix(String regex) {
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int next;
+            char literal;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    break;
+                }
+                char escaped = regex.charAt(i + 1);
+                // \d、\s、\Q等有特殊含义
+                if (Character.isLetterOrDigit(escaped)) {
+                    break;
+                }
+                literal = escaped;
+                next = i + 2;
+            } else if ("[](){}.*+?^$|".indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            // 后面跟着量词时该字符不是固定的
+            if (next < regex.length() && "*+?{".indexOf(regex.charAt(next)) >= 0) {
+                break;
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 字段规则的构建器
+     */
+    public static final class Builder {
+        private final List<Rule> rules = new ArrayList<>();
+        private final Map<String, Rule> names = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 字段取第一个匹配的第1组
+         */
+        public Builder first(String name, String regex) {
+            return add(name, regex, 1, false);
+        }
+
+        /**
+         * 字段取所有匹配的第1组，按页面中的顺序
+         */
+        public Builder all(String name, String regex) {
+            return add(name, regex, 1, true);
+        }
+
+        public Builder add(String name, String regex, int group, boolean all) {
+            if (names.containsKey(name)) {
+                throw new IllegalArgumentException("Duplicate field: " + name);
+            }
+            Rule rule = new Rule(rules.size(), name, Pattern.compile(regex), literalPrefix(regex), group, all);
+            rules.add(rule);
+            names.put(name, rule);
+            return this;
+        }
+
+        public PageScanner build() {
+            return new PageScanner(rules);
+        }
+    }
+
+    private static final class Rule {
+        final int index;
+        final String name;
+        final Pattern pattern;
+        final String anchor;
+        final int group;
+        final boolean all;
+
+        Rule(int index, String name, Pattern pattern, String anchor, int group, boolean all) {
+            this.index = index;
+            this.name = name;
+            this.pattern = pattern;
+            this.anchor = anchor;
+            this.group = group;
+            this.all = all;
+        }
+    }
+
+    /**
+     * 一次扫描的结果，按字段名取值
+     */
+    public static final class Result {
+        private final Map<String, List<String>> values = new HashMap<>();
+
+        private Result() {
+        }
+
+        private void add(Rule rule, String value) {
+            List<String> list = values.get(rule.name);
+            if (list == null) {
+                list = new ArrayList<>(rule.all ? 4 : 1);
+                values.put(rule.name, list);
+            }
+            list.add(value);
+        }
+
+        /**
+         * 字段的第一个值，没有匹配时返回null
+         */
+        public String get(String name) {
+            List<String> list = values.get(name);
+            return list != null ? list.get(0) : null;
+        }
+
+        /**
+         * 字段的所有值，没有匹配时返回空列表
+         */
+        public List<String> getAll(String name) {
+            List<String> list = values.get(name);
+            return list != null ? Collections.unmodifiableList(list) : Collections.<String>emptyList();
+        }
+
+        /**
+         * 字段的第一个值解析为整数，没有匹配或无法解析时返回null
+         */
+        public Long getLong(String name) {
+            String value = get(name);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public boolean has(String name) {
+            return values.containsKey(name);
+        }
+    }
+}
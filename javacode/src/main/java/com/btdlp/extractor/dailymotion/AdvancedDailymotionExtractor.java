@@ -3,16 +3,20 @@ package com.btdlp.extractor.dailymotion;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.extractor.InfoExtractor;
+import com.btdlp.network.HttpTransport;
+import com.btdlp.utils.JsonUtils;
 import com.btdlp.utils.Logger;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.net.URL;
 
 /**
  * Dailymotion视频提取器
@@ -26,6 +30,19 @@ public class AdvancedDailymotionExtractor extends InfoExtractor {
     private static final String EXCLUDED_URL_REGEX = "(?:cdn|player|stream|manifest).*?\\.(?:m3u8|mpd|mp4|webm)";
     private static final Pattern EXCLUDED_URL_PATTERN = Pattern.compile(EXCLUDED_URL_REGEX, Pattern.CASE_INSENSITIVE);
     
+    private static final Pattern RESOLUTION_PATTERN = Pattern.compile("/H264-(\\d+)x(\\d+)(?:-(\\d+)/)?");
+    
+    // 元数据API中用到的路径，其余部分读取时直接跳过
+    private static final JsonUtils.JsonPathSelector METADATA_SELECTOR = JsonUtils.pathSelector()
+        .path("title", "title")
+        .path("description", "description")
+        .path("duration", "duration")
+        .path("posters", "posters.*")
+        .path("uploader", "owner.screenname")
+        .path("viewCount", "views_total")
+        .path("qualities", "qualities")
+        .build();
+    
     private Object auth; // DailymotionAuth对象，这里简化为Object
     
     static {
@@ -51,6 +68,11 @@ public class AdvancedDailymotionExtractor extends InfoExtractor {
         return VALID_URL_PATTERN;
     }
     
+    @Override
+    public String[] getHosts() {
+        return new String[]{"dailymotion.com"};
+    }
+    
     @Override
     public boolean suitable(String url) {
         // 首先检查是否匹配基本模式
@@ -341,24 +363,19 @@ public class AdvancedDailymotionExtractor extends InfoExtractor {
      * 下载URL内容
      */
     private String downloadUrl(String urlString) {
-        try {
-            URL url = new URL(urlString);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            
-            // 设置请求头，模拟浏览器
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Linux; Android 11; SM-A5160 Build/RP1A.200720.012; wv) AppleWebKit/537.36 (KHTML, like Gecko) Version/4.0 Chrome/140.0.7339.207 Mobile Safari/537.36");
-            connection.setRequestProperty("Accept", "application/json, text/plain, */*");
-            connection.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-            connection.setRequestProperty("Referer", "https://www.dailymotion.com/");
-            connection.setRequestProperty("Origin", "https://www.dailymotion.com");
-            
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            
-            int responseCode = connection.getResponseCode();
+        // 设置请求头，模拟浏览器
+        HttpTransport.Request request = new HttpTransport.Request(urlString)
+                .header("User-Agent", "Mozilla/5.0 (Linux; Android 11; SM-A5160 Build/RP1A.200720.012; wv) AppleWebKit/537.36 (KHTML, like Gecko) Version/4.0 Chrome/140.0.7339.207 Mobile Safari/537.36")
+                .header("Accept", "application/json, text/plain, */*")
+                .header("Accept-Language", "en-US,en;q=0.9")
+                .header("Referer", "https://www.dailymotion.com/")
+                .header("Origin", "https://www.dailymotion.com")
+                .timeouts(10000, 10000);
+        
+        try (HttpTransport.Response httpResponse = getHttpTransport().execute(request)) {
+            int responseCode = httpResponse.getStatusCode();
             if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+                BufferedReader reader = new BufferedReader(new InputStreamReader(httpResponse.getBody()));
                 StringBuilder response = new StringBuilder();
                 String line;
                 
@@ -388,44 +405,40 @@ public class AdvancedDailymotionExtractor extends InfoExtractor {
         videoInfo.setUrl(url);
         
         try {
+            JsonUtils.JsonPathValues values = METADATA_SELECTOR.read(metadata);
+            
             // 提取标题
-            String title = searchRegex(metadata, "\"title\":\"([^\"]+)\"", "title", true);
+            String title = values.getString("title");
             videoInfo.setTitle(title != null ? title : "Dailymotion Video " + videoId);
             
             // 提取描述
-            String description = searchRegex(metadata, "\"description\":\"([^\"]+)\"", "description", true);
-            videoInfo.setDescription(description);
+            videoInfo.setDescription(values.getString("description"));
             
             // 提取时长
-            String durationStr = searchRegex(metadata, "\"duration\":(\\d+)", "duration", true);
-            if (durationStr != null) {
-                try {
-                    videoInfo.setDuration(Long.parseLong(durationStr));
-                } catch (NumberFormatException e) {
-                    // 忽略解析错误
-                }
+            Long duration = values.getLong("duration");
+            if (duration != null) {
+                videoInfo.setDuration(duration);
             }
             
             // 提取缩略图
-            String thumbnail = searchRegex(metadata, "\"posters\":\\{[^}]*\"([^\"]+\\.jpg[^\"]*)\"", "thumbnail", true);
-            videoInfo.setThumbnail(thumbnail);
+            for (String poster : values.getStrings("posters")) {
+                if (poster.contains(".jpg")) {
+                    videoInfo.setThumbnail(poster);
+                    break;
+                }
+            }
             
             // 提取上传者
-            String uploader = searchRegex(metadata, "\"owner\":\\{[^}]*\"screenname\":\"([^\"]+)\"", "uploader", true);
-            videoInfo.setUploader(uploader);
+            videoInfo.setUploader(values.getString("uploader"));
             
             // 提取观看次数
-            String viewCountStr = searchRegex(metadata, "\"views_total\":(\\d+)", "view_count", true);
-            if (viewCountStr != null) {
-                try {
-                    videoInfo.setViewCount(Long.parseLong(viewCountStr));
-                } catch (NumberFormatException e) {
-                    // 忽略解析错误
-                }
+            Long viewCount = values.getLong("viewCount");
+            if (viewCount != null) {
+                videoInfo.setViewCount(viewCount);
             }
             
             // 提取视频格式 - 这是关键部分
-            List<VideoFormat> formats = extractFormatsFromMetadata(metadata);
+            List<VideoFormat> formats = extractFormatsFromMetadata(values.get("qualities"), metadata);
             videoInfo.setFormats(formats);
             
             logger.info("Successfully parsed metadata for video: " + videoInfo.getTitle() + 
@@ -443,73 +456,39 @@ public class AdvancedDailymotionExtractor extends InfoExtractor {
     
     /**
      * 从元数据中提取视频格式 - 按照Python版本的逻辑
+     * Python版本: for quality, media_list in metadata['qualities'].items():
      */
-    private List<VideoFormat> extractFormatsFromMetadata(String metadata) {
+    private List<VideoFormat> extractFormatsFromMetadata(JsonElement qualities, String metadata) {
         List<VideoFormat> formats = new ArrayList<>();
         
         try {
             logger.debug("Starting format extraction from metadata");
             
-            // 按照Python版本：直接解析qualities字段
-            // Python版本: for quality, media_list in metadata['qualities'].items():
-            
-            // 使用简单的字符串处理方法提取qualities
-            int qualitiesIndex = metadata.indexOf("\"qualities\":");
-            if (qualitiesIndex != -1) {
-                logger.debug("Found qualities at index: " + qualitiesIndex);
-                
-                // 提取qualities部分
-                String qualitiesStart = metadata.substring(qualitiesIndex);
-                logger.debug("Qualities start: " + qualitiesStart.substring(0, Math.min(200, qualitiesStart.length())));
-                
-                // 解析每个质量等级
-                String[] qualityKeys = {"auto", "1080", "720", "480", "360", "240"};
-                
-                for (String quality : qualityKeys) {
-                    String qualityKey = "\"" + quality + "\":";
-                    int qualityIndex = qualitiesStart.indexOf(qualityKey);
-                    if (qualityIndex != -1) {
-                        logger.debug("Found quality " + quality + " at index: " + qualityIndex);
+            if (qualities != null && qualities.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> entry : qualities.getAsJsonObject().entrySet()) {
+                    String quality = entry.getKey();
+                    if (!entry.getValue().isJsonArray()) {
+                        continue;
+                    }
+                    
+                    for (JsonElement media : entry.getValue().getAsJsonArray()) {
+                        if (!media.isJsonObject()) {
+                            continue;
+                        }
+                        JsonObject mediaObject = media.getAsJsonObject();
+                        String mediaUrl = JsonUtils.getString(mediaObject, "url", null);
+                        String mediaType = JsonUtils.getString(mediaObject, "type", null);
                         
-                        // 查找数组开始和结束
-                        int arrayStart = qualitiesStart.indexOf("[", qualityIndex);
-                        int arrayEnd = qualitiesStart.indexOf("]", arrayStart);
+                        logger.debug("Found media: URL=" + mediaUrl + ", type=" + mediaType);
                         
-                        if (arrayStart != -1 && arrayEnd != -1) {
-                            String autoArray = qualitiesStart.substring(arrayStart + 1, arrayEnd);
-                            logger.debug("Quality " + quality + " array content: " + autoArray);
+                        // 跳过无效的URL或特殊类型
+                        if (mediaUrl != null && !mediaUrl.isEmpty() && 
+                            !"application/vnd.lumberjack.manifest".equals(mediaType)) {
                             
-                            // 提取URL
-                            int urlIndex = autoArray.indexOf("\"url\":\"");
-                            if (urlIndex != -1) {
-                                String urlStart = autoArray.substring(urlIndex + 7);
-                                int urlEnd = urlStart.indexOf("\"");
-                                if (urlEnd != -1) {
-                                    String mediaUrl = urlStart.substring(0, urlEnd).replace("\\/", "/");
-                                    
-                                    // 提取type
-                                    int typeIndex = autoArray.indexOf("\"type\":\"");
-                                    if (typeIndex != -1) {
-                                        String typeStart = autoArray.substring(typeIndex + 8);
-                                        int typeEnd = typeStart.indexOf("\"");
-                                        if (typeEnd != -1) {
-                                            String mediaType = typeStart.substring(0, typeEnd).replace("\\/", "/");
-                                            
-                                            logger.debug("Found media: URL=" + mediaUrl + ", type=" + mediaType);
-                                            
-                                            // 跳过无效的URL或特殊类型
-                                            if (mediaUrl != null && !mediaUrl.isEmpty() && 
-                                                !"application/vnd.lumberjack.manifest".equals(mediaType)) {
-                                                
-                                                VideoFormat format = createVideoFormatFromMedia(mediaUrl, mediaType, quality);
-                                                if (format != null) {
-                                                    formats.add(format);
-                                                    logger.debug("Added format: " + quality + " - " + mediaType + " - " + mediaUrl);
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
+                            VideoFormat format = createVideoFormatFromMedia(mediaUrl, mediaType, quality);
+                            if (format != null) {
+                                formats.add(format);
+                                logger.debug("Added format: " + quality + " - " + mediaType + " - " + mediaUrl);
                             }
                         }
                     }
@@ -554,8 +533,7 @@ public class AdvancedDailymotionExtractor extends InfoExtractor {
             format.setFormatId("http-" + quality);
             
             // 尝试从URL中提取分辨率信息
-            Pattern resolutionPattern = Pattern.compile("/H264-(\\d+)x(\\d+)(?:-(\\d+)/)?");
-            Matcher matcher = resolutionPattern.matcher(mediaUrl);
+            Matcher matcher = RESOLUTION_PATTERN.matcher(mediaUrl);
             if (matcher.find()) {
                 try {
                     int width = Integer.parseInt(matcher.group(1));
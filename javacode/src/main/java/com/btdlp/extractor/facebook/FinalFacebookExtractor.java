@@ -3,6 +3,7 @@ package com.btdlp.extractor.facebook;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.extractor.InfoExtractor;
+import com.btdlp.extractor.PageScanner;
 import com.btdlp.utils.Logger;
 
 import java.io.IOException;
@@ -17,8 +18,21 @@ import java.util.regex.Matcher;
 public class FinalFacebookExtractor extends InfoExtractor {
     
     private static final String TAG = "FinalFacebookExtractor";
+    private static final Pattern VALID_URL_PATTERN = Pattern.compile(
+        "(?:https?://)?(?:www\\.)?facebook\\.com/(?:[^/]+/videos/|watch/\\?v=)([0-9]+)"
+    );
     private static final String FACEBOOK_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     
+    // 页面字段规则，类加载时编译一次，每个页面只扫描一遍
+    private static final PageScanner PAGE_SCANNER = PageScanner.builder()
+        .first("title", "<title>([^<]+)</title>")
+        .first("description", "<meta name=\"description\" content=\"([^\"]+)\"")
+        .all("scheduledVideoUrl", "scheduled_server_data.*?video_url.*?\"([^\"]+)\"")
+        .all("video_url", "\"video_url\":\"([^\"]+)\"")
+        .all("mp4Src", "\"src\":\"([^\"]+\\.mp4[^\"]*)\"")
+        .all("video_src", "video_src=\"([^\"]+)\"")
+        .build();
+    
     public FinalFacebookExtractor() {
         super();
     }
@@ -35,9 +49,12 @@ public class FinalFacebookExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(
-            "(?:https?://)?(?:www\\.)?facebook\\.com/(?:[^/]+/videos/|watch/\\?v=)([0-9]+)"
-        );
+        return VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"facebook.com"};
     }
     
     @Override
@@ -60,14 +77,15 @@ public class FinalFacebookExtractor extends InfoExtractor {
         try {
             // 下载网页内容
             String webpage = downloadWebpageWithUserAgent(url);
+            PageScanner.Result page = PAGE_SCANNER.scan(webpage);
             
             // 提取基本信息
-            extractBasicInfo(webpage, videoInfo);
+            extractBasicInfo(page, videoInfo);
             
             // 提取视频格式
-            List<VideoFormat> formats = extractVideoFormatsFromScheduledServerJS(webpage, videoId);
+            List<VideoFormat> formats = extractVideoFormatsFromScheduledServerJS(page, videoId);
             if (formats.isEmpty()) {
-                formats = findAlternativeFormats(webpage);
+                formats = findAlternativeFormats(page);
             }
             videoInfo.setFormats(formats);
             
@@ -85,36 +103,29 @@ public class FinalFacebookExtractor extends InfoExtractor {
         return "";
     }
     
-    private void extractBasicInfo(String webpage, VideoInfo videoInfo) {
-        // 从网页内容中提取基本信息
-        // 这里使用正则表达式提取标题、描述等信息
+    private void extractBasicInfo(PageScanner.Result page, VideoInfo videoInfo) {
+        // 从网页扫描结果中提取标题、描述等基本信息
         
         // 提取标题
-        Pattern titlePattern = Pattern.compile("<title>([^<]+)</title>");
-        Matcher titleMatcher = titlePattern.matcher(webpage);
-        if (titleMatcher.find()) {
-            videoInfo.setTitle(titleMatcher.group(1).trim());
+        String title = page.get("title");
+        if (title != null) {
+            videoInfo.setTitle(title.trim());
         } else {
             videoInfo.setTitle("Facebook Video " + videoInfo.getId());
         }
         
         // 提取描述
-        Pattern descPattern = Pattern.compile("<meta name=\"description\" content=\"([^\"]+)\"");
-        Matcher descMatcher = descPattern.matcher(webpage);
-        if (descMatcher.find()) {
-            videoInfo.setDescription(descMatcher.group(1));
+        String description = page.get("description");
+        if (description != null) {
+            videoInfo.setDescription(description);
         }
     }
     
-    private List<VideoFormat> extractVideoFormatsFromScheduledServerJS(String webpage, String videoId) {
+    private List<VideoFormat> extractVideoFormatsFromScheduledServerJS(PageScanner.Result page, String videoId) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 从JavaScript代码中提取视频URL
-        Pattern jsPattern = Pattern.compile("scheduled_server_data.*?video_url.*?\"([^\"]+)\"");
-        Matcher jsMatcher = jsPattern.matcher(webpage);
-        
-        while (jsMatcher.find()) {
-            String videoUrl = jsMatcher.group(1);
+        for (String videoUrl : page.getAll("scheduledVideoUrl")) {
             VideoFormat format = createVideoFormatFromUrl(videoUrl);
             if (format != null) {
                 formats.add(format);
@@ -160,20 +171,12 @@ public class FinalFacebookExtractor extends InfoExtractor {
         return format;
     }
     
-    private List<VideoFormat> findAlternativeFormats(String webpage) {
+    private List<VideoFormat> findAlternativeFormats(PageScanner.Result page) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 寻找其他可能的视频URL模式
-        Pattern[] urlPatterns = {
-            Pattern.compile("\"video_url\":\"([^\"]+)\""),
-            Pattern.compile("\"src\":\"([^\"]+\\.mp4[^\"]*)\""),
-            Pattern.compile("video_src=\"([^\"]+)\"")
-        };
-        
-        for (Pattern pattern : urlPatterns) {
-            Matcher matcher = pattern.matcher(webpage);
-            while (matcher.find()) {
-                String url = matcher.group(1);
+        for (String field : new String[]{"video_url", "mp4Src", "video_src"}) {
+            for (String url : page.getAll(field)) {
                 VideoFormat format = createVideoFormatFromUrl(url);
                 if (format != null) {
                     formats.add(format);
@@ -35,7 +35,12 @@ public class AdvancedInstagramExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(InstagramUtils.VALID_URL_REGEX);
+        return InstagramUtils.VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"instagram.com"};
     }
     
     @Override
@@ -19,6 +19,9 @@ import java.util.regex.Matcher;
 public class InstagramExtractor extends InfoExtractor {
     
     private static final String TAG = "InstagramExtractor";
+    private static final Pattern VALID_URL_PATTERN = Pattern.compile(
+        "(?:https?://)?(?:www\\.)?instagram\\.com/(?:p|reel)/([^/]+)/?"
+    );
     private static final String INSTAGRAM_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     
     public InstagramExtractor() {
@@ -37,9 +40,12 @@ public class InstagramExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(
-            "(?:https?://)?(?:www\\.)?instagram\\.com/(?:p|reel)/([^/]+)/?"
-        );
+        return VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"instagram.com"};
     }
     
     @Override
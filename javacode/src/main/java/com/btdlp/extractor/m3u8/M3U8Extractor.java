@@ -6,6 +6,9 @@ import com.btdlp.extractor.InfoExtractor;
 import com.btdlp.downloader.hls.HlsDownloader;
 import com.btdlp.utils.Logger;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -43,18 +46,32 @@ public class M3U8Extractor extends InfoExtractor {
     
     @Override
     public boolean suitable(String url) {
-        logger.info("M3U8Extractor.suitable() called for URL: " + url);
-        
+        // 作为不限域名的提取器，每个没有专门提取器的URL都会调用，只记录匹配成功的情况
         boolean matches = VALID_URL_PATTERN.matcher(url).matches();
         if (matches) {
             logger.info("M3U8Extractor accepting URL: " + url);
-        } else {
-            logger.info("URL does not match M3U8 pattern: " + url);
         }
         
         return matches;
     }
     
+    /**
+     * 视频ID只是URL的32位hash，可能冲突；缓存键改用完整URL的SHA-256
+     */
+    @Override
+    public String getCacheKey(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder(getIE_NAME()).append(':');
+            for (byte b : digest.digest(url.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+    
     @Override
     protected String extractVideoId(String url) {
         // 从URL中提取视频ID，使用URL的hash作为ID
@@ -18,6 +18,9 @@ import java.util.regex.Matcher;
 public class AdvancedPornhubExtractor extends InfoExtractor {
     
     private static final String TAG = "AdvancedPornhubExtractor";
+    private static final Pattern VALID_URL_PATTERN = Pattern.compile(
+        "(?:https?://)?(?:www\\.)?(?:pornhub\\.com|pornhubpremium\\.com)/(?:view_video\\.php\\?viewkey=|embed/)([a-zA-Z0-9]+)"
+    );
     private static final String PORNHUB_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     
     public AdvancedPornhubExtractor() {
@@ -36,9 +39,12 @@ public class AdvancedPornhubExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(
-            "(?:https?://)?(?:www\\.)?(?:pornhub\\.com|pornhubpremium\\.com)/(?:view_video\\.php\\?viewkey=|embed/)([a-zA-Z0-9]+)"
-        );
+        return VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"pornhub.com", "pornhubpremium.com"};
     }
     
     @Override
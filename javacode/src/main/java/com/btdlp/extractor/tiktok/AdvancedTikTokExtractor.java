@@ -3,7 +3,11 @@ package com.btdlp.extractor.tiktok;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.extractor.InfoExtractor;
+import com.btdlp.extractor.PageScanner;
+import com.btdlp.utils.JsonUtils;
 import com.btdlp.utils.Logger;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,9 +20,44 @@ import java.util.regex.Matcher;
 public class AdvancedTikTokExtractor extends InfoExtractor {
     
     private static final String TAG = "AdvancedTikTokExtractor";
+    private static final Pattern VALID_URL_PATTERN = Pattern.compile(
+        "(?:https?://)?(?:www\\.)?(?:vm\\.)?tiktok\\.com/(?:@[^/]+/video/|t/[^/]+/)([0-9]+)"
+    );
     private static final String TIKTOK_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     private static final String TIKTOK_MOBILE_USER_AGENT = "Mozilla/5.0 (iPhone; CPU iPhone OS 14_6 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/14.0.3 Mobile/15E148 Safari/604.1";
     
+    // 页面字段规则，类加载时编译一次，每个页面只扫描一遍
+    private static final PageScanner PAGE_SCANNER = PageScanner.builder()
+        .all("bitrate", "\"bitrate\":([0-9]+)")
+        .all("playAddr", "\"playAddr\":\"([^\"]+)\"")
+        .all("video_url", "\"video_url\":\"([^\"]+)\"")
+        .all("downloadAddr", "\"downloadAddr\":\"([^\"]+)\"")
+        .all("mp4Src", "src=\"([^\"]+\\.mp4[^\"]*)\"")
+        .first("desc", "\"desc\":\"([^\"]+)\"")
+        .first("nickname", "\"nickname\":\"([^\"]+)\"")
+        .build();
+    // 页面内嵌状态JSON的位置，新版在前
+    private static final String[] STATE_MARKERS = {
+        "id=\"__UNIVERSAL_DATA_FOR_REHYDRATION__\"",
+        "id=\"SIGI_STATE\""
+    };
+    private static final String UNIVERSAL_ITEM = "__DEFAULT_SCOPE__[webapp.video-detail].itemInfo.itemStruct";
+    private static final String SIGI_ITEM = "ItemModule.*";
+    private static final String API_ITEM = "aweme_detail";
+    // 内嵌状态和移动API响应中用到的路径，其余部分读取时直接跳过
+    private static final JsonUtils.JsonPathSelector STATE_SELECTOR = JsonUtils.pathSelector()
+        .path("bitrateInfo", UNIVERSAL_ITEM + ".video.bitrateInfo.*", SIGI_ITEM + ".video.bitrateInfo.*")
+        .path("playAddr", UNIVERSAL_ITEM + ".video.playAddr", SIGI_ITEM + ".video.playAddr",
+            API_ITEM + ".video.play_addr.url_list.0")
+        .path("downloadAddr", UNIVERSAL_ITEM + ".video.downloadAddr", SIGI_ITEM + ".video.downloadAddr",
+            API_ITEM + ".video.download_addr.url_list.0")
+        .path("desc", UNIVERSAL_ITEM + ".desc", SIGI_ITEM + ".desc", API_ITEM + ".desc")
+        .path("nickname", UNIVERSAL_ITEM + ".author.nickname", "UserModule.users.*.nickname",
+            API_ITEM + ".author.nickname")
+        .build();
+    private static final Pattern ARRAY_PATTERN = Pattern.compile("\\[([^\\]]*\"[^\"]*\"[^\\]]*)\\]");
+    private static final Pattern MP4_URL_PATTERN = Pattern.compile("\"([^\"]+\\.mp4[^\"]*)\"");
+    
     public AdvancedTikTokExtractor() {
         super();
     }
@@ -35,9 +74,12 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(
-            "(?:https?://)?(?:www\\.)?(?:vm\\.)?tiktok\\.com/(?:@[^/]+/video/|t/[^/]+/)([0-9]+)"
-        );
+        return VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"tiktok.com"};
     }
     
     @Override
@@ -133,12 +175,24 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         videoInfo.setId(videoId);
         videoInfo.setTitle("TikTok Video " + videoId);
         
+        // 优先读取页面内嵌的状态JSON
+        for (String marker : STATE_MARKERS) {
+            JsonUtils.JsonPathValues state = STATE_SELECTOR.readEmbedded(content, marker);
+            if (state != null && !state.isEmpty()) {
+                videoInfo.setFormats(parseStateFormats(state));
+                extractBasicInfo(state, videoInfo);
+                return videoInfo;
+            }
+        }
+        
+        PageScanner.Result page = PAGE_SCANNER.scan(content);
+        
         // 解析网页内容中的视频信息
-        List<VideoFormat> formats = parseJsonData(content, videoId);
+        List<VideoFormat> formats = parseJsonData(page, videoId);
         videoInfo.setFormats(formats);
         
         // 提取基本信息
-        extractBasicInfo(content, videoInfo);
+        extractBasicInfo(page, videoInfo);
         
         return videoInfo;
     }
@@ -149,7 +203,7 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         videoInfo.setTitle("TikTok Video");
         
         // 从嵌入内容中解析视频信息
-        List<VideoFormat> formats = parseJsonData(content, "");
+        List<VideoFormat> formats = parseJsonData(PAGE_SCANNER.scan(content), "");
         videoInfo.setFormats(formats);
         
         return videoInfo;
@@ -161,29 +215,82 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         videoInfo.setTitle("TikTok Video");
         
         // 解析移动API响应
-        List<VideoFormat> formats = parseJsonData(content, "");
+        JsonUtils.JsonPathValues state = STATE_SELECTOR.read(content);
+        if (!state.isEmpty()) {
+            videoInfo.setFormats(parseStateFormats(state));
+            extractBasicInfo(state, videoInfo);
+            return videoInfo;
+        }
+        
+        List<VideoFormat> formats = parseJsonData(PAGE_SCANNER.scan(content), "");
         videoInfo.setFormats(formats);
         
         return videoInfo;
     }
     
-    private List<VideoFormat> parseJsonData(String content, String videoId) {
+    private List<VideoFormat> parseStateFormats(JsonUtils.JsonPathValues state) {
+        List<VideoFormat> formats = new ArrayList<>();
+        
+        // 各码率的播放地址
+        for (JsonElement element : state.getAll("bitrateInfo")) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            JsonObject bitrateInfo = element.getAsJsonObject();
+            JsonElement playAddr = bitrateInfo.get("PlayAddr");
+            if (playAddr == null || !playAddr.isJsonObject()) {
+                continue;
+            }
+            JsonElement urlList = playAddr.getAsJsonObject().get("UrlList");
+            if (urlList == null || !urlList.isJsonArray() || urlList.getAsJsonArray().size() == 0) {
+                continue;
+            }
+            VideoFormat format = createVideoFormat(urlList.getAsJsonArray().get(0).getAsString(), "mp4", "video");
+            if (format != null) {
+                Long bitrate = JsonUtils.getLong(bitrateInfo, "Bitrate");
+                if (bitrate != null) {
+                    format.setAbr(bitrate.intValue());
+                    format.setFormatId("bitrate_" + bitrate);
+                }
+                formats.add(format);
+            }
+        }
+        
+        // 默认播放地址和下载地址
+        for (String playAddr : state.getStrings("playAddr")) {
+            VideoFormat format = createVideoFormat(playAddr, "mp4", "video");
+            if (format != null) {
+                format.setFormatId("playaddr");
+                formats.add(format);
+            }
+        }
+        for (String downloadAddr : state.getStrings("downloadAddr")) {
+            VideoFormat format = createVideoFormat(downloadAddr, "mp4", "video");
+            if (format != null) {
+                formats.add(format);
+            }
+        }
+        
+        return formats;
+    }
+    
+    private List<VideoFormat> parseJsonData(PageScanner.Result page, String videoId) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 尝试解析比特率信息
-        List<VideoFormat> bitrateFormats = parseBitrateInfo(content);
+        List<VideoFormat> bitrateFormats = parseBitrateInfo(page);
         if (!bitrateFormats.isEmpty()) {
             formats.addAll(bitrateFormats);
         }
         
         // 尝试解析播放地址
-        List<VideoFormat> playAddrFormats = parsePlayAddr(content);
+        List<VideoFormat> playAddrFormats = parsePlayAddr(page);
         if (!playAddrFormats.isEmpty()) {
             formats.addAll(playAddrFormats);
         }
         
         // 搜索视频URL
-        List<String> urls = searchVideoUrls(content);
+        List<String> urls = searchVideoUrls(page);
         for (String url : urls) {
             VideoFormat format = createVideoFormat(url, "mp4", "video");
             if (format != null) {
@@ -194,15 +301,11 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         return formats;
     }
     
-    private List<VideoFormat> parseBitrateInfo(String content) {
+    private List<VideoFormat> parseBitrateInfo(PageScanner.Result page) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 解析比特率信息
-        Pattern bitratePattern = Pattern.compile("\"bitrate\":([0-9]+)");
-        Matcher bitrateMatcher = bitratePattern.matcher(content);
-        
-        while (bitrateMatcher.find()) {
-            String bitrate = bitrateMatcher.group(1);
+        for (String bitrate : page.getAll("bitrate")) {
             // 根据比特率创建格式
             VideoFormat format = new VideoFormat();
             format.setAbr(Integer.parseInt(bitrate));
@@ -215,15 +318,11 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         return formats;
     }
     
-    private List<VideoFormat> parsePlayAddr(String content) {
+    private List<VideoFormat> parsePlayAddr(PageScanner.Result page) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 解析播放地址
-        Pattern playAddrPattern = Pattern.compile("\"playAddr\":\"([^\"]+)\"");
-        Matcher playAddrMatcher = playAddrPattern.matcher(content);
-        
-        while (playAddrMatcher.find()) {
-            String playAddr = playAddrMatcher.group(1);
+        for (String playAddr : page.getAll("playAddr")) {
             VideoFormat format = createVideoFormat(playAddr, "mp4", "video");
             if (format != null) {
                 format.setFormatId("playaddr");
@@ -238,13 +337,11 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         List<String> urls = new ArrayList<>();
         
         // 从数组中提取URL
-        Pattern arrayPattern = Pattern.compile("\\[([^\\]]*\"[^\"]*\"[^\\]]*)\\]");
-        Matcher arrayMatcher = arrayPattern.matcher(content);
+        Matcher arrayMatcher = ARRAY_PATTERN.matcher(content);
         
         while (arrayMatcher.find()) {
             String arrayContent = arrayMatcher.group(1);
-            Pattern urlPattern = Pattern.compile("\"([^\"]+\\.mp4[^\"]*)\"");
-            Matcher urlMatcher = urlPattern.matcher(arrayContent);
+            Matcher urlMatcher = MP4_URL_PATTERN.matcher(arrayContent);
             
             while (urlMatcher.find()) {
                 urls.add(urlMatcher.group(1));
@@ -254,21 +351,12 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         return urls;
     }
     
-    private List<String> searchVideoUrls(String content) {
+    private List<String> searchVideoUrls(PageScanner.Result page) {
         List<String> urls = new ArrayList<>();
         
         // 搜索各种可能的视频URL模式
-        Pattern[] urlPatterns = {
-            Pattern.compile("\"video_url\":\"([^\"]+)\""),
-            Pattern.compile("\"playAddr\":\"([^\"]+)\""),
-            Pattern.compile("\"downloadAddr\":\"([^\"]+)\""),
-            Pattern.compile("src=\"([^\"]+\\.mp4[^\"]*)\"")
-        };
-        
-        for (Pattern pattern : urlPatterns) {
-            Matcher matcher = pattern.matcher(content);
-            while (matcher.find()) {
-                String url = matcher.group(1);
+        for (String field : new String[]{"video_url", "playAddr", "downloadAddr", "mp4Src"}) {
+            for (String url : page.getAll(field)) {
                 if (url != null && !url.isEmpty()) {
                     urls.add(url);
                 }
@@ -289,12 +377,23 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
                   .replace("&#39;", "'");
     }
     
-    private void extractBasicInfo(String content, VideoInfo videoInfo) {
+    private void extractBasicInfo(JsonUtils.JsonPathValues state, VideoInfo videoInfo) {
+        // JSON中的字符串已解码，无需处理HTML实体
+        String desc = state.getString("desc");
+        if (desc != null && !desc.isEmpty()) {
+            videoInfo.setTitle(desc.length() > 100 ? desc.substring(0, 100) + "..." : desc);
+        }
+        
+        String nickname = state.getString("nickname");
+        if (nickname != null) {
+            videoInfo.setUploader(nickname);
+        }
+    }
+    
+    private void extractBasicInfo(PageScanner.Result page, VideoInfo videoInfo) {
         // 提取标题
-        Pattern titlePattern = Pattern.compile("\"desc\":\"([^\"]+)\"");
-        Matcher titleMatcher = titlePattern.matcher(content);
-        if (titleMatcher.find()) {
-            String desc = decodeHtmlEntities(titleMatcher.group(1));
+        if (page.has("desc")) {
+            String desc = decodeHtmlEntities(page.get("desc"));
             if (desc != null && desc.length() > 100) {
                 desc = desc.substring(0, 100) + "...";
             }
@@ -302,10 +401,9 @@ public class AdvancedTikTokExtractor extends InfoExtractor {
         }
         
         // 提取作者信息
-        Pattern authorPattern = Pattern.compile("\"nickname\":\"([^\"]+)\"");
-        Matcher authorMatcher = authorPattern.matcher(content);
-        if (authorMatcher.find()) {
-            videoInfo.setUploader(authorMatcher.group(1));
+        String nickname = page.get("nickname");
+        if (nickname != null) {
+            videoInfo.setUploader(nickname);
         }
     }
     
@@ -41,6 +41,11 @@ public class AdvancedTwitterExtractor extends InfoExtractor {
         return VALID_URL_PATTERN;
     }
     
+    @Override
+    public String[] getHosts() {
+        return new String[]{"twitter.com", "x.com"};
+    }
+    
     @Override
     public boolean suitable(String url) {
         return VALID_URL_PATTERN.matcher(url).matches();
@@ -3,7 +3,10 @@ package com.btdlp.extractor.vimeo;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.extractor.InfoExtractor;
+import com.btdlp.utils.JsonUtils;
 import com.btdlp.utils.Logger;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,8 +19,21 @@ import java.util.regex.Matcher;
 public class AdvancedVimeoExtractor extends InfoExtractor {
     
     private static final String TAG = "AdvancedVimeoExtractor";
+    private static final Pattern VALID_URL_PATTERN = Pattern.compile(
+        "(?:https?://)?(?:www\\.)?vimeo\\.com/(?:[^/]+/)*([0-9]+)"
+    );
     private static final String VIMEO_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     
+    // 播放器配置中用到的路径，其余部分读取时直接跳过
+    private static final JsonUtils.JsonPathSelector CONFIG_SELECTOR = JsonUtils.pathSelector()
+        .path("progressive", "request.files.progressive.*")
+        .path("hls", "request.files.hls")
+        .path("dash", "request.files.dash")
+        .path("title", "video.title")
+        .path("description", "video.description")
+        .path("duration", "video.duration")
+        .build();
+    
     public AdvancedVimeoExtractor() {
         super();
     }
@@ -34,9 +50,12 @@ public class AdvancedVimeoExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(
-            "(?:https?://)?(?:www\\.)?vimeo\\.com/(?:[^/]+/)*([0-9]+)"
-        );
+        return VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"vimeo.com"};
     }
     
     @Override
@@ -133,19 +152,28 @@ public class AdvancedVimeoExtractor extends InfoExtractor {
         videoInfo.setTitle("Vimeo Video");
         
         // 解析配置响应
-        List<VideoFormat> progressiveFormats = parseProgressiveFormatsFromConfig(response);
-        List<VideoFormat> hlsFormats = parseHlsFormatsFromConfig(response);
-        List<VideoFormat> dashFormats = parseDashFormatsFromConfig(response);
+        JsonUtils.JsonPathValues config = CONFIG_SELECTOR.read(response);
         
         List<VideoFormat> allFormats = new ArrayList<>();
-        allFormats.addAll(progressiveFormats);
-        allFormats.addAll(hlsFormats);
-        allFormats.addAll(dashFormats);
+        allFormats.addAll(parseProgressiveFormatsFromConfig(config));
+        allFormats.addAll(parseStreamFormatsFromConfig(config.get("hls"), "m3u8", "hls"));
+        allFormats.addAll(parseStreamFormatsFromConfig(config.get("dash"), "mpd", "dash"));
         
         videoInfo.setFormats(allFormats);
         
         // 提取基本信息
-        extractBasicInfo(response, videoInfo);
+        String title = config.getString("title");
+        if (title != null) {
+            videoInfo.setTitle(title);
+        }
+        String description = config.getString("description");
+        if (description != null) {
+            videoInfo.setDescription(description);
+        }
+        Long duration = config.getLong("duration");
+        if (duration != null) {
+            videoInfo.setDuration(duration);
+        }
         
         return videoInfo;
     }
@@ -299,37 +327,17 @@ public class AdvancedVimeoExtractor extends InfoExtractor {
         return urls;
     }
     
-    private List<VideoFormat> parseHlsFormatsFromConfig(String config) {
+    private List<VideoFormat> parseProgressiveFormatsFromConfig(JsonUtils.JsonPathValues config) {
         List<VideoFormat> formats = new ArrayList<>();
         
-        // 从配置中解析HLS格式
-        Pattern hlsPattern = Pattern.compile("\"hls\":\\{[^}]*\"url\":\"([^\"]+)\"");
-        Matcher hlsMatcher = hlsPattern.matcher(config);
-        
-        while (hlsMatcher.find()) {
-            String url = hlsMatcher.group(1);
-            VideoFormat format = createVideoFormat(url, "m3u8", "hls");
-            if (format != null) {
-                format.setProtocol("hls");
-                formats.add(format);
+        // 从配置中解析渐进式格式
+        for (JsonElement progressive : config.getAll("progressive")) {
+            if (!progressive.isJsonObject()) {
+                continue;
             }
-        }
-        
-        return formats;
-    }
-    
-    private List<VideoFormat> parseDashFormatsFromConfig(String config) {
-        List<VideoFormat> formats = new ArrayList<>();
-        
-        // 从配置中解析DASH格式
-        Pattern dashPattern = Pattern.compile("\"dash\":\\{[^}]*\"url\":\"([^\"]+)\"");
-        Matcher dashMatcher = dashPattern.matcher(config);
-        
-        while (dashMatcher.find()) {
-            String url = dashMatcher.group(1);
-            VideoFormat format = createVideoFormat(url, "mpd", "dash");
+            String url = JsonUtils.getString(progressive.getAsJsonObject(), "url", null);
+            VideoFormat format = createVideoFormat(url, "mp4", "progressive");
             if (format != null) {
-                format.setProtocol("dash");
                 formats.add(format);
             }
         }
@@ -337,17 +345,34 @@ public class AdvancedVimeoExtractor extends InfoExtractor {
         return formats;
     }
     
-    private List<VideoFormat> parseProgressiveFormatsFromConfig(String config) {
+    /**
+     * 从配置的hls/dash中解析格式，优先使用default_cdn指定的CDN，没有时使用第一个CDN
+     */
+    private List<VideoFormat> parseStreamFormatsFromConfig(JsonElement streams, String ext, String protocol) {
         List<VideoFormat> formats = new ArrayList<>();
+        if (streams == null || !streams.isJsonObject()) {
+            return formats;
+        }
         
-        // 从配置中解析渐进式格式
-        Pattern progressivePattern = Pattern.compile("\"progressive\":\\[[^\\]]*\"url\":\"([^\"]+)\"");
-        Matcher progressiveMatcher = progressivePattern.matcher(config);
+        JsonObject streamsObject = streams.getAsJsonObject();
+        JsonElement cdns = streamsObject.get("cdns");
+        if (cdns == null || !cdns.isJsonObject()) {
+            return formats;
+        }
         
-        while (progressiveMatcher.find()) {
-            String url = progressiveMatcher.group(1);
-            VideoFormat format = createVideoFormat(url, "mp4", "progressive");
+        JsonElement cdn = null;
+        String defaultCdn = JsonUtils.getString(streamsObject, "default_cdn", null);
+        if (defaultCdn != null) {
+            cdn = cdns.getAsJsonObject().get(defaultCdn);
+        }
+        if (cdn == null && cdns.getAsJsonObject().size() > 0) {
+            cdn = cdns.getAsJsonObject().entrySet().iterator().next().getValue();
+        }
+        if (cdn != null && cdn.isJsonObject()) {
+            String url = JsonUtils.getString(cdn.getAsJsonObject(), "url", null);
+            VideoFormat format = createVideoFormat(url, ext, protocol);
             if (format != null) {
+                format.setProtocol(protocol);
                 formats.add(format);
             }
         }
@@ -3,6 +3,7 @@ package com.btdlp.extractor.xhamster;
 import com.btdlp.core.VideoInfo;
 import com.btdlp.core.VideoFormat;
 import com.btdlp.extractor.InfoExtractor;
+import com.btdlp.extractor.PageScanner;
 import com.btdlp.utils.Logger;
 import com.btdlp.utils.XHamsterUtils;
 import com.btdlp.utils.EnhancedHttpClient;
@@ -18,6 +19,26 @@ import java.util.regex.Matcher;
  */
 public class AdvancedXHamsterExtractor extends InfoExtractor {
     
+    // 页面字段规则，类加载时编译一次，每个页面只扫描一遍
+    private static final PageScanner PAGE_SCANNER = PageScanner.builder()
+        .first("error", "<h1[^>]*>([^<]+)</h1>")
+        .first("title", "<title>([^<]+)</title>")
+        .first("description", "\"description\":\\s*\"([^\"]+)\"")
+        .first("uploadDate", "\"uploadDate\":\\s*\"([^\"]+)\"")
+        .first("uploader", "\"uploader\":\\s*\"([^\"]+)\"")
+        .first("thumbnail", "\"thumbnail\":\\s*\"([^\"]+)\"")
+        .first("duration", "\"duration\":\\s*(\\d+)")
+        .first("viewCount", "\"viewCount\":\\s*(\\d+)")
+        .first("likeCount", "\"likeCount\":\\s*(\\d+)")
+        .first("dislikeCount", "\"dislikeCount\":\\s*(\\d+)")
+        .first("commentCount", "\"commentCount\":\\s*(\\d+)")
+        .all("category", "\"category\":\\s*\"([^\"]+)\"")
+        .all("mp4Url", "\"url\":\\s*\"([^\"]+\\.mp4[^\"]*)\"")
+        .all("videoUrl", "\"videoUrl\":\\s*\"([^\"]+)\"")
+        .all("mp4Src", "src=\"([^\"]+\\.mp4[^\"]*)\"")
+        .build();
+    private static final Pattern TITLE_SUFFIX_PATTERN = Pattern.compile("\\s*\\|\\s*XHamster.*$");
+    
     private EnhancedHttpClient httpClient;
     
     public AdvancedXHamsterExtractor() {
@@ -37,7 +58,12 @@ public class AdvancedXHamsterExtractor extends InfoExtractor {
     
     @Override
     public Pattern getVALID_URL() {
-        return Pattern.compile(XHamsterUtils.VALID_URL_REGEX);
+        return XHamsterUtils.VALID_URL_PATTERN;
+    }
+    
+    @Override
+    public String[] getHosts() {
+        return new String[]{"xhamster.com", "xhamster2.com", "xhamster3.com"};
     }
     
     @Override
@@ -107,12 +133,11 @@ public class AdvancedXHamsterExtractor extends InfoExtractor {
         return videoInfo;
     }
     
-    private String extractError(String content) {
-        Pattern errorPattern = Pattern.compile("<h1[^>]*>([^<]+)</h1>");
-        Matcher errorMatcher = errorPattern.matcher(content);
+    private String extractError(PageScanner.Result page) {
+        String error = page.get("error");
         
-        if (errorMatcher.find()) {
-            String errorText = errorMatcher.group(1).trim();
+        if (error != null) {
+            String errorText = error.trim();
             if (errorText.toLowerCase().contains("error") || 
                 errorText.toLowerCase().contains("not found")) {
                 return errorText;
@@ -134,25 +159,23 @@ public class AdvancedXHamsterExtractor extends InfoExtractor {
         videoInfo.setId(videoId);
         videoInfo.setUrl(url);
         
+        PageScanner.Result page = PAGE_SCANNER.scan(content);
+        
         // 提取基本信息
-        extractBasicInfo(content, videoInfo);
+        extractBasicInfo(page, videoInfo);
         
         // 提取视频格式
-        List<VideoFormat> formats = extractFormatsFromInitials(content, videoId);
+        List<VideoFormat> formats = extractFormatsFromInitials(page, videoId);
         videoInfo.setFormats(formats);
         
         return videoInfo;
     }
     
-    private List<VideoFormat> extractFormatsFromInitials(String content, String videoId) {
+    private List<VideoFormat> extractFormatsFromInitials(PageScanner.Result page, String videoId) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 查找视频URL
-        Pattern urlPattern = Pattern.compile("\"url\":\\s*\"([^\"]+\\.mp4[^\"]*)\"");
-        Matcher urlMatcher = urlPattern.matcher(content);
-        
-        while (urlMatcher.find()) {
-            String url = urlMatcher.group(1);
+        for (String url : page.getAll("mp4Url")) {
             VideoFormat format = createVideoFormat(url);
             if (format != null) {
                 formats.add(format);
@@ -167,86 +190,46 @@ public class AdvancedXHamsterExtractor extends InfoExtractor {
         videoInfo.setId(videoId);
         videoInfo.setUrl(url);
         
+        PageScanner.Result page = PAGE_SCANNER.scan(content);
+        
         // 提取基本信息
-        extractBasicInfo(content, videoInfo);
+        extractBasicInfo(page, videoInfo);
         
         // 提取视频格式
-        List<VideoFormat> formats = extractFormatsFromOldLayout(content);
+        List<VideoFormat> formats = extractFormatsFromOldLayout(page);
         videoInfo.setFormats(formats);
         
         return videoInfo;
     }
     
-    private String extractTitle(String content) {
-        Pattern titlePattern = Pattern.compile("<title>([^<]+)</title>");
-        Matcher titleMatcher = titlePattern.matcher(content);
+    private String extractTitle(PageScanner.Result page) {
+        String title = page.get("title");
         
-        if (titleMatcher.find()) {
-            String title = titleMatcher.group(1).trim();
-            title = title.replaceAll("\\s*\\|\\s*XHamster.*$", "");
-            return title;
+        if (title != null) {
+            return TITLE_SUFFIX_PATTERN.matcher(title.trim()).replaceAll("");
         }
         
         return null;
     }
     
-    private String extractDescription(String content) {
-        Pattern descPattern = Pattern.compile("\"description\":\\s*\"([^\"]+)\"");
-        Matcher descMatcher = descPattern.matcher(content);
-        
-        if (descMatcher.find()) {
-            return descMatcher.group(1);
-        }
-        
-        return null;
+    private String extractDescription(PageScanner.Result page) {
+        return page.get("description");
     }
     
-    private String extractUploadDate(String content) {
-        Pattern datePattern = Pattern.compile("\"uploadDate\":\\s*\"([^\"]+)\"");
-        Matcher dateMatcher = datePattern.matcher(content);
-        
-        if (dateMatcher.find()) {
-            return dateMatcher.group(1);
-        }
-        
-        return null;
+    private String extractUploadDate(PageScanner.Result page) {
+        return page.get("uploadDate");
     }
     
-    private String extractUploader(String content) {
-        Pattern uploaderPattern = Pattern.compile("\"uploader\":\\s*\"([^\"]+)\"");
-        Matcher uploaderMatcher = uploaderPattern.matcher(content);
-        
-        if (uploaderMatcher.find()) {
-            return uploaderMatcher.group(1);
-        }
-        
-        return null;
+    private String extractUploader(PageScanner.Result page) {
+        return page.get("uploader");
     }
     
-    private String extractThumbnail(String content) {
-        Pattern thumbnailPattern = Pattern.compile("\"thumbnail\":\\s*\"([^\"]+)\"");
-        Matcher thumbnailMatcher = thumbnailPattern.matcher(content);
-        
-        if (thumbnailMatcher.find()) {
-            return thumbnailMatcher.group(1);
-        }
-        
-        return null;
+    private String extractThumbnail(PageScanner.Result page) {
+        return page.get("thumbnail");
     }
     
-    private Long extractDuration(String content) {
-        Pattern durationPattern = Pattern.compile("\"duration\":\\s*(\\d+)");
-        Matcher durationMatcher = durationPattern.matcher(content);
-        
-        if (durationMatcher.find()) {
-            try {
-                return Long.parseLong(durationMatcher.group(1));
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        
-        return null;
+    private Long extractDuration(PageScanner.Result page) {
+        return page.getLong("duration");
     }
     
     private Long parseDuration(String durationStr) {
@@ -261,89 +244,28 @@ public class AdvancedXHamsterExtractor extends InfoExtractor {
         }
     }
     
-    private Long extractViewCount(String content) {
-        Pattern viewPattern = Pattern.compile("\"viewCount\":\\s*(\\d+)");
-        Matcher viewMatcher = viewPattern.matcher(content);
-        
-        if (viewMatcher.find()) {
-            try {
-                return Long.parseLong(viewMatcher.group(1));
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        
-        return null;
+    private Long extractViewCount(PageScanner.Result page) {
+        return page.getLong("viewCount");
     }
     
-    private Long[] extractLikeDislikeCount(String content) {
-        Long[] counts = new Long[2];
-        
-        Pattern likePattern = Pattern.compile("\"likeCount\":\\s*(\\d+)");
-        Matcher likeMatcher = likePattern.matcher(content);
-        if (likeMatcher.find()) {
-            try {
-                counts[0] = Long.parseLong(likeMatcher.group(1));
-            } catch (NumberFormatException e) {
-                counts[0] = null;
-            }
-        }
-        
-        Pattern dislikePattern = Pattern.compile("\"dislikeCount\":\\s*(\\d+)");
-        Matcher dislikeMatcher = dislikePattern.matcher(content);
-        if (dislikeMatcher.find()) {
-            try {
-                counts[1] = Long.parseLong(dislikeMatcher.group(1));
-            } catch (NumberFormatException e) {
-                counts[1] = null;
-            }
-        }
-        
-        return counts;
+    private Long[] extractLikeDislikeCount(PageScanner.Result page) {
+        return new Long[]{page.getLong("likeCount"), page.getLong("dislikeCount")};
     }
     
-    private Long extractCommentCount(String content) {
-        Pattern commentPattern = Pattern.compile("\"commentCount\":\\s*(\\d+)");
-        Matcher commentMatcher = commentPattern.matcher(content);
-        
-        if (commentMatcher.find()) {
-            try {
-                return Long.parseLong(commentMatcher.group(1));
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        
-        return null;
+    private Long extractCommentCount(PageScanner.Result page) {
+        return page.getLong("commentCount");
     }
     
-    private List<String> extractCategories(String content) {
-        List<String> categories = new ArrayList<>();
-        
-        Pattern categoryPattern = Pattern.compile("\"category\":\\s*\"([^\"]+)\"");
-        Matcher categoryMatcher = categoryPattern.matcher(content);
-        
-        while (categoryMatcher.find()) {
-            categories.add(categoryMatcher.group(1));
-        }
-        
-        return categories;
+    private List<String> extractCategories(PageScanner.Result page) {
+        return new ArrayList<>(page.getAll("category"));
     }
     
-    private List<VideoFormat> extractFormatsFromOldLayout(String content) {
+    private List<VideoFormat> extractFormatsFromOldLayout(PageScanner.Result page) {
         List<VideoFormat> formats = new ArrayList<>();
         
         // 查找各种可能的视频URL模式
-        Pattern[] urlPatterns = {
-            Pattern.compile("\"videoUrl\":\\s*\"([^\"]+)\""),
-            Pattern.compile("\"url\":\\s*\"([^\"]+\\.mp4[^\"]*)\""),
-            Pattern.compile("src=\"([^\"]+\\.mp4[^\"]*)\"")
-        };
-        
-        for (Pattern pattern : urlPatterns) {
-            Matcher matcher = pattern.matcher(content);
-            while (matcher.find()) {
-                String url = matcher.group(1);
+        for (String field : new String[]{"videoUrl", "mp4Url", "mp4Src"}) {
+            for (String url : page.getAll(field)) {
                 VideoFormat format = createVideoFormat(url);
                 if (format != null) {
                     formats.add(format);
@@ -367,39 +289,39 @@ public class AdvancedXHamsterExtractor extends InfoExtractor {
         return formats;
     }
     
-    private void extractBasicInfo(String content, VideoInfo videoInfo) {
+    private void extractBasicInfo(PageScanner.Result page, VideoInfo videoInfo) {
         // 提取标题
-        String title = extractTitle(content);
+        String title = extractTitle(page);
         if (title != null) {
             videoInfo.setTitle(title);
         }
         
         // 提取描述
-        String description = extractDescription(content);
+        String description = extractDescription(page);
         if (description != null) {
             videoInfo.setDescription(description);
         }
         
         // 提取上传者
-        String uploader = extractUploader(content);
+        String uploader = extractUploader(page);
         if (uploader != null) {
             videoInfo.setUploader(uploader);
         }
         
         // 提取时长
-        Long duration = extractDuration(content);
+        Long duration = extractDuration(page);
         if (duration != null) {
             videoInfo.setDuration(duration);
         }
         
         // 提取缩略图
-        String thumbnail = extractThumbnail(content);
+        String thumbnail = extractThumbnail(page);
         if (thumbnail != null) {
             videoInfo.setThumbnail(thumbnail);
         }
         
         // 提取观看次数
-        Long viewCount = extractViewCount(content);
+        Long viewCount = extractViewCount(page);
         if (viewCount != null) {
             videoInfo.setViewCount(viewCount);
         }
@@ -41,6 +41,11 @@ public class AdvancedXVideosExtractor extends InfoExtractor {
         return VALID_URL_PATTERN;
     }
     
+    @Override
+    public String[] getHosts() {
+        return new String[]{"xvideos.com"};
+    }
+    
     @Override
     public boolean suitable(String url) {
         return VALID_URL_PATTERN.matcher(url).matches();
@@ -0,0 +1,98 @@
+package com.btdlp.network;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 按Content-Encoding流式解压响应体
+ * 请求显式设置Accept-Encoding后，HttpURLConnection（包括Android）和OkHttp都不再自动解压，需要调用方处理
+ */
+public final class ContentDecoder {
+
+    /**
+     * 文本请求使用的Accept-Encoding
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /**
+     * 媒体请求使用的Accept-Encoding：压缩对音视频无效，还会使Range偏移和Content-Length失去意义
+     */
+    public static final String IDENTITY = "identity";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentDecoder() {
+    }
+
+    /**
+     * 去掉Accept-Encoding中无法解压的编码（如br），全部不支持时返回identity
+     */
+    public static String supportedEncodings(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        StringBuilder supported = new StringBuilder();
+        for (String token : acceptEncoding.split(",")) {
+            String coding = token.split(";", 2)[0].trim().toLowerCase();
+            if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("deflate") || coding.equals(IDENTITY)) {
+                if (supported.length() > 0) {
+                    supported.append(", ");
+                }
+                supported.append(token.trim());
+            }
+        }
+        return supported.length() > 0 ? supported.toString() : IDENTITY;
+    }
+
+    /**
+     * 响应体的解压流，未压缩或编码未知时返回原始流
+     */
+    public static InputStream decode(HttpTransport.Response response) throws IOException {
+        return decode(response.getBody(), response.getHeader("Content-Encoding"));
+    }
+
+    public static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return inputStream;
+        }
+        String encoding = contentEncoding.trim().toLowerCase();
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            BufferedInputStream buffered = new BufferedInputStream(inputStream, BUFFER_SIZE);
+            // HEAD请求或204等空响应体不能构造GZIPInputStream
+            buffered.mark(1);
+            if (buffered.read() < 0) {
+                return buffered;
+            }
+            buffered.reset();
+            return new GZIPInputStream(buffered, BUFFER_SIZE);
+        }
+        if (encoding.equals("deflate")) {
+            // 规范要求zlib格式，但不少服务器发送不带头的原始deflate数据，按首字节区分
+            BufferedInputStream buffered = new BufferedInputStream(inputStream, BUFFER_SIZE);
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+            if (first < 0) {
+                return buffered;
+            }
+            boolean zlib = second >= 0 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+            return new InflaterInputStream(buffered, new Inflater(!zlib), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    // 自行创建的Inflater不会被InflaterInputStream释放
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+        return inputStream;
+    }
+}
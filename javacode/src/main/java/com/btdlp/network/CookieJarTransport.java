@@ -0,0 +1,45 @@
+package com.btdlp.network;
+
+import com.btdlp.utils.CookieManager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带Cookie存储的传输层包装：请求没有自带Cookie时附加存储中匹配的Cookie，响应的Set-Cookie写回存储
+ */
+public class CookieJarTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final CookieManager cookieManager;
+
+    public CookieJarTransport(HttpTransport delegate, CookieManager cookieManager) {
+        this.delegate = delegate;
+        this.cookieManager = cookieManager;
+    }
+
+    public CookieManager getCookieManager() {
+        return cookieManager;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (request.getHeader("Cookie") == null) {
+            String cookies = cookieManager.getCookies(request.getUrl());
+            if (cookies != null) {
+                request.header("Cookie", cookies);
+            }
+        }
+        Response response = delegate.execute(request);
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            if ("Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                for (String value : header.getValue()) {
+                    // 重定向后以最终地址确定Cookie的默认域名和路径
+                    cookieManager.addCookie(response.getUrl(), value);
+                }
+            }
+        }
+        return response;
+    }
+}
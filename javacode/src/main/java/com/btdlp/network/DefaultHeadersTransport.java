@@ -0,0 +1,40 @@
+package com.btdlp.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 附加选项中请求头的传输层包装：请求没有同名（不区分大小写）请求头时加上http_headers/user_agent中的值，
+ * 底层传输层只按连接相关的配置共享，不因请求头不同而创建新的连接池
+ */
+class DefaultHeadersTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final Map<String, String> headers;
+
+    DefaultHeadersTransport(HttpTransport delegate, Map<String, String> headers) {
+        this.delegate = delegate;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!hasHeader(request, header.getKey())) {
+                request.header(header.getKey(), header.getValue());
+            }
+        }
+        return delegate.execute(request);
+    }
+
+    private static boolean hasHeader(Request request, String name) {
+        for (String key : request.getHeaders().keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package com.btdlp.network;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主机（协议+主机名+端口）限制同时进行的请求数
+ * HTTP/1.1下对应同时打开的连接数，HTTP/2下对应同一连接上并发的流数
+ */
+final class HostPermits {
+
+    private final int maxPerHost;
+    private final Map<String, Semaphore> permits = new HashMap<>();
+
+    HostPermits(int maxPerHost) {
+        if (maxPerHost <= 0) {
+            throw new IllegalArgumentException("maxPerHost must be positive: " + maxPerHost);
+        }
+        this.maxPerHost = maxPerHost;
+    }
+
+    int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    /**
+     * 等待并获取主机的一个许可，返回的信号量用于之后归还
+     * 最多等待timeoutMillis毫秒（0或负数时不限制），超时抛出SocketTimeoutException，
+     * 避免某个未关闭的响应一直占用许可时该主机的请求永远排队
+     */
+    Semaphore acquire(URL url, int timeoutMillis) throws InterruptedIOException {
+        Semaphore semaphore = get(url);
+        try {
+            if (timeoutMillis <= 0) {
+                semaphore.acquire();
+            } else if (!semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("Timed out after " + timeoutMillis + " ms waiting for a connection to "
+                        + url.getHost() + " (limit " + maxPerHost + " per host)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getHost());
+        }
+        return semaphore;
+    }
+
+    private Semaphore get(URL url) {
+        String key = url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() >= 0 ? url.getPort() : url.getDefaultPort());
+        synchronized (permits) {
+            Semaphore semaphore = permits.get(key);
+            if (semaphore == null) {
+                semaphore = new Semaphore(maxPerHost, true);
+                permits.put(key, semaphore);
+            }
+            return semaphore;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.btdlp.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP传输层接口
+ * 下载器和提取器都通过它发送请求，连接复用、每个主机的连接上限、默认请求头和代理由实现统一处理。
+ * 响应用完后必须调用close()，连接才能回到连接池供后续请求复用
+ */
+public interface HttpTransport {
+
+    /**
+     * 发送请求并返回响应，状态码不是2xx时同样返回响应，由调用方决定如何处理
+     */
+    Response execute(Request request) throws IOException;
+
+    /**
+     * HTTP请求，请求头会覆盖传输层的同名默认请求头
+     */
+    final class Request {
+        private final String url;
+        private String method = "GET";
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body;
+        private boolean followRedirects = true;
+        private int connectTimeout;
+        private int readTimeout;
+
+        public Request(String url) {
+            this.url = url;
+        }
+
+        public Request method(String method) {
+            this.method = method;
+            return this;
+        }
+
+        public Request header(String name, String value) {
+            if (value == null) {
+                headers.remove(name);
+            } else {
+                headers.put(name, value);
+            }
+            return this;
+        }
+
+        public Request headers(Map<String, String> headers) {
+            if (headers != null) {
+                for (Map.Entry<String, String> entry : headers.entrySet()) {
+                    header(entry.getKey(), entry.getValue());
+                }
+            }
+            return this;
+        }
+
+        public Request body(byte[] body, String contentType) {
+            this.body = body;
+            return header("Content-Type", contentType);
+        }
+
+        public Request followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        /**
+         * 覆盖传输层的超时时间（毫秒），0表示使用默认值
+         */
+        public Request timeouts(int connectTimeout, int readTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public String getUrl() { return url; }
+        public String getMethod() { return method; }
+        public Map<String, String> getHeaders() { return headers; }
+        public String getHeader(String name) { return headers.get(name); }
+        public byte[] getBody() { return body; }
+        public boolean isFollowRedirects() { return followRedirects; }
+        public int getConnectTimeout() { return connectTimeout; }
+        public int getReadTimeout() { return readTimeout; }
+    }
+
+    /**
+     * HTTP响应
+     * close()读完剩余的少量数据后把连接还给连接池；只读取了部分响应体且剩余数据较多时，
+     * 应调用abort()直接关闭连接
+     */
+    interface Response extends Closeable {
+
+        int getStatusCode();
+
+        String getStatusMessage();
+
+        /**
+         * 跟随重定向后的最终地址
+         */
+        String getUrl();
+
+        /**
+         * 响应头，名称不区分大小写
+         */
+        String getHeader(String name);
+
+        Map<String, List<String>> getHeaders();
+
+        /**
+         * Content-Length，未知时返回-1
+         */
+        long getContentLength();
+
+        /**
+         * 响应体，错误状态码时为错误响应体，没有响应体时为空流
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * 放弃响应，关闭底层连接而不放回连接池
+         */
+        void abort();
+
+        @Override
+        void close();
+    }
+}
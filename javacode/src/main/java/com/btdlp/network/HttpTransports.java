@@ -0,0 +1,168 @@
+package com.btdlp.network;
+
+import com.btdlp.options.BubeDLOptions;
+import com.btdlp.utils.CookieManager;
+import com.btdlp.utils.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 传输层工厂：按选项创建并共享HttpTransport
+ * 连接相关配置（传输类型、代理、每主机连接数）相同的下载器和提取器共用同一个连接池，
+ * 选项中的请求头和Cookie文件由轻量的包装按请求附加，不会为每组请求头创建新的连接池。
+ * 支持的选项：proxy（http://host:port或socks5://host:port）、http_max_connections_per_host、
+ * http_headers（每行一个"名称: 值"）、user_agent、http_transport（http1或http2，默认http1）、
+ * cookies_file（Netscape格式的cookies.txt，请求自动附带其中的Cookie并记录响应的Set-Cookie）
+ */
+public final class HttpTransports {
+
+    public static final String DEFAULT_USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+
+    public static final String TRANSPORT_HTTP1 = "http1";
+    public static final String TRANSPORT_HTTP2 = "http2";
+
+    private static final Map<String, HttpTransport> TRANSPORTS = new HashMap<>();
+
+    private HttpTransports() {
+    }
+
+    /**
+     * 使用默认配置的共享传输层
+     */
+    public static HttpTransport getDefault() {
+        return forOptions(null);
+    }
+
+    /**
+     * 获取与选项对应的共享传输层，options为null时使用默认配置
+     */
+    public static HttpTransport forOptions(BubeDLOptions options) {
+        String proxy = options != null ? options.getString("proxy") : null;
+        Integer maxConnections = options != null ? options.getInt("http_max_connections_per_host") : null;
+        int maxConnectionsPerHost = maxConnections != null && maxConnections > 0
+                ? maxConnections : PooledHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        String type = options != null ? options.getString("http_transport") : null;
+        boolean http2 = TRANSPORT_HTTP2.equalsIgnoreCase(type) || "h2".equalsIgnoreCase(type);
+
+        String key = (http2 ? TRANSPORT_HTTP2 : TRANSPORT_HTTP1) + "|" + proxy + "|" + maxConnectionsPerHost;
+        HttpTransport transport;
+        synchronized (TRANSPORTS) {
+            transport = TRANSPORTS.get(key);
+            if (transport == null) {
+                transport = create(http2, maxConnectionsPerHost, builtinHeaders(), parseProxy(proxy));
+                TRANSPORTS.put(key, transport);
+            }
+        }
+
+        Map<String, String> headers = optionHeaders(options);
+        if (!headers.isEmpty()) {
+            transport = new DefaultHeadersTransport(transport, headers);
+        }
+        String cookiesFile = options != null ? options.getString("cookies_file") : null;
+        if (cookiesFile != null && !cookiesFile.isEmpty()) {
+            transport = new CookieJarTransport(transport, CookieManager.forFile(cookiesFile));
+        }
+        return transport;
+    }
+
+    /**
+     * 创建传输层。选择HTTP/2时优先使用应用自带的OkHttp，其次是JDK 11+的java.net.http；
+     * 两者都不可用（如没有OkHttp的Android）时回退到HttpURLConnection连接池
+     */
+    private static HttpTransport create(boolean http2, int maxConnectionsPerHost, Map<String, String> headers, Proxy proxy) {
+        int connectTimeout = PooledHttpTransport.DEFAULT_CONNECT_TIMEOUT;
+        int readTimeout = PooledHttpTransport.DEFAULT_READ_TIMEOUT;
+        if (http2) {
+            try {
+                if (OkHttpTransport.isAvailable()) {
+                    Logger.logInfo("HTTP/2传输层: OkHttp");
+                    return new OkHttpTransport(maxConnectionsPerHost, headers, proxy, connectTimeout, readTimeout);
+                }
+                if (JdkHttp2Transport.isAvailable(proxy)) {
+                    Logger.logInfo("HTTP/2传输层: java.net.http");
+                    return new JdkHttp2Transport(maxConnectionsPerHost, headers, proxy, connectTimeout, readTimeout);
+                }
+                Logger.logWarning("当前环境不支持HTTP/2传输层，使用HTTP/1.1连接池");
+            } catch (IOException | RuntimeException e) {
+                Logger.logWarning("HTTP/2传输层初始化失败，使用HTTP/1.1连接池: " + e.getMessage());
+            }
+        }
+        return new PooledHttpTransport(maxConnectionsPerHost, headers, proxy, connectTimeout, readTimeout);
+    }
+
+    /**
+     * 共享传输层内置的默认请求头
+     */
+    private static Map<String, String> builtinHeaders() {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("User-Agent", DEFAULT_USER_AGENT);
+        headers.put("Accept", "*/*");
+        headers.put("Accept-Language", "en-US,en;q=0.9");
+        return headers;
+    }
+
+    /**
+     * 选项中的http_headers和user_agent，按请求附加并覆盖内置值
+     */
+    private static Map<String, String> optionHeaders(BubeDLOptions options) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (options == null) {
+            return headers;
+        }
+
+        String httpHeaders = options.getHttpHeaders();
+        if (httpHeaders != null && !httpHeaders.isEmpty()) {
+            for (String headerLine : httpHeaders.split("\n")) {
+                String[] parts = headerLine.split(":", 2);
+                if (parts.length == 2) {
+                    headers.put(parts[0].trim(), parts[1].trim());
+                }
+            }
+        }
+        String userAgent = options.getString("user_agent");
+        if (userAgent != null && !userAgent.isEmpty()) {
+            headers.put("User-Agent", userAgent);
+        }
+        return headers;
+    }
+
+    /**
+     * 请求实际发送的请求头：默认请求头在前，请求自身的同名请求头（不区分大小写）覆盖默认值
+     */
+    static Map<String, String> mergeHeaders(Map<String, String> defaultHeaders, HttpTransport.Request request) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(defaultHeaders);
+        headers.putAll(request.getHeaders());
+        return headers;
+    }
+
+    /**
+     * 解析代理地址，没有协议时按HTTP代理处理；为空或无法解析时返回null（直连）
+     */
+    static Proxy parseProxy(String proxy) {
+        if (proxy == null || proxy.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String value = proxy.trim();
+            URI uri = new URI(value.contains("://") ? value : "http://" + value);
+            if (uri.getHost() == null) {
+                return null;
+            }
+            boolean socks = uri.getScheme() != null && uri.getScheme().toLowerCase().startsWith("socks");
+            int port = uri.getPort() > 0 ? uri.getPort() : (socks ? 1080 : 8080);
+            return new Proxy(socks ? Proxy.Type.SOCKS : Proxy.Type.HTTP,
+                    InetSocketAddress.createUnresolved(uri.getHost(), port));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.btdlp.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于JDK 11+ java.net.http.HttpClient的HTTP/2传输层
+ * 桌面JVM上没有OkHttp时使用；Android没有该API。通过反射调用，本库仍可在Java 8下编译。
+ * 请求超时只限制等待响应头的时间，响应体的读超时由看门狗实现：单次read超过读超时仍未返回时关闭响应
+ */
+final class JdkHttp2Transport implements HttpTransport {
+
+    private static final Api API = Api.load();
+    // java.net.http由自身管理的请求头，设置时会抛出IllegalArgumentException
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+    // 看门狗检查读超时的最长间隔
+    private static final long WATCHDOG_INTERVAL_MILLIS = 1000;
+
+    private static ScheduledThreadPoolExecutor watchdog;
+
+    private final HostPermits hostPermits;
+    private final Map<String, String> defaultHeaders;
+    private final Object client;
+    private final Object noRedirectClient;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    /**
+     * 当前环境中是否可用；java.net.http只支持HTTP代理，SOCKS代理时不可用
+     */
+    static boolean isAvailable(Proxy proxy) {
+        return API != null && (proxy == null || proxy.type() == Proxy.Type.HTTP);
+    }
+
+    JdkHttp2Transport(int maxStreamsPerHost, Map<String, String> defaultHeaders, Proxy proxy,
+                      int connectTimeout, int readTimeout) throws IOException {
+        if (!isAvailable(proxy)) {
+            throw new IllegalStateException("java.net.http is not available");
+        }
+        this.hostPermits = new HostPermits(maxStreamsPerHost);
+        this.defaultHeaders = defaultHeaders != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(defaultHeaders))
+                : Collections.<String, String>emptyMap();
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.client = buildClient(proxy, connectTimeout, API.redirectNormal);
+        this.noRedirectClient = buildClient(proxy, connectTimeout, API.redirectNever);
+    }
+
+    private static Object buildClient(Proxy proxy, int connectTimeout, Object redirect) throws IOException {
+        Object builder = Reflection.invoke(API.newClientBuilder, null);
+        Reflection.invoke(API.version, builder, API.http2);
+        Reflection.invoke(API.followRedirects, builder, redirect);
+        Reflection.invoke(API.connectTimeout, builder, API.millis(connectTimeout));
+        if (proxy != null) {
+            Reflection.invoke(API.proxy, builder,
+                    Reflection.invoke(API.proxySelectorOf, null, (InetSocketAddress) proxy.address()));
+        }
+        return Reflection.invoke(API.buildClient, builder);
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        URL url = new URL(request.getUrl());
+        Object requestBuilder;
+        try {
+            requestBuilder = Reflection.invoke(API.newRequestBuilder, null, url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + request.getUrl(), e);
+        }
+        for (Map.Entry<String, String> header : HttpTransports.mergeHeaders(defaultHeaders, request).entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                Reflection.invoke(API.header, requestBuilder, header.getKey(), header.getValue());
+            }
+        }
+        Object publisher = request.getBody() != null
+                ? Reflection.invoke(API.ofByteArray, null, (Object) request.getBody())
+                : Reflection.invoke(API.noBody, null);
+        Reflection.invoke(API.method, requestBuilder, request.getMethod(), publisher);
+        int timeout = request.getReadTimeout() > 0 ? request.getReadTimeout() : readTimeout;
+        Reflection.invoke(API.timeout, requestBuilder, API.millis(timeout));
+        Object httpRequest = Reflection.invoke(API.buildRequest, requestBuilder);
+
+        Semaphore permits = hostPermits.acquire(url,
+                request.getConnectTimeout() > 0 ? request.getConnectTimeout() : connectTimeout);
+        try {
+            Object response = Reflection.invoke(API.send, request.isFollowRedirects() ? client : noRedirectClient,
+                    httpRequest, Reflection.invoke(API.ofInputStream, null));
+            return new JdkResponse(response, permits, timeout);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor watchdog() {
+        if (watchdog == null) {
+            watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "http2-read-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            watchdog.setRemoveOnCancelPolicy(true);
+        }
+        return watchdog;
+    }
+
+    /**
+     * java.net.http响应，响应体为InputStream，关闭时结束该流并归还许可
+     */
+    private static class JdkResponse implements Response {
+        private final Object response;
+        private final Semaphore permits;
+        private final Map<String, List<String>> headers;
+        private final DeadlineInputStream body;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        @SuppressWarnings("unchecked")
+        JdkResponse(Object response, Semaphore permits, int readTimeout) throws IOException {
+            this.response = response;
+            this.permits = permits;
+            // HttpHeaders.map()本身不区分大小写
+            this.headers = (Map<String, List<String>>) Reflection.invoke(API.headersMap,
+                    Reflection.invoke(API.headers, response));
+            this.body = new DeadlineInputStream((InputStream) Reflection.invoke(API.body, response), this, readTimeout);
+        }
+
+        @Override
+        public int getStatusCode() {
+            try {
+                return (Integer) Reflection.invoke(API.statusCode, response);
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * HTTP/2没有状态描述，返回空字符串
+         */
+        @Override
+        public String getStatusMessage() {
+            return "";
+        }
+
+        @Override
+        public String getUrl() {
+            try {
+                return String.valueOf(Reflection.invoke(API.uri, response));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public long getContentLength() {
+            String contentLength = getHeader("Content-Length");
+            if (contentLength != null) {
+                try {
+                    return Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException e) {
+                    // 按未知长度处理
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void abort() {
+            close();
+        }
+
+        /**
+         * 关闭响应体流即取消尚未读完的流，HTTP/2连接继续供其它请求使用
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    // 忽略
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 带读超时的响应体：看门狗定期检查，单次read阻塞超过readTimeout时关闭响应，
+     * 阻塞的read随之失败并改为抛出SocketTimeoutException，与HttpURLConnection的读超时一致
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+        private final JdkResponse owner;
+        private final int readTimeout;
+        private final ScheduledFuture<?> check;
+        // 当前read开始的时间，0表示没有在读
+        private volatile long readStartedAt;
+        private volatile boolean timedOut;
+
+        DeadlineInputStream(InputStream in, JdkResponse owner, int readTimeout) {
+            super(in);
+            this.owner = owner;
+            this.readTimeout = readTimeout;
+            if (readTimeout > 0) {
+                // 每个读超时周期至少检查4次，超时最多延迟约1/4
+                long interval = Math.max(1, Math.min(readTimeout / 4, WATCHDOG_INTERVAL_MILLIS));
+                this.check = watchdog().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        checkDeadline();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            } else {
+                this.check = null;
+            }
+        }
+
+        private void checkDeadline() {
+            long startedAt = readStartedAt;
+            if (startedAt != 0 && System.currentTimeMillis() - startedAt >= readTimeout) {
+                timedOut = true;
+                owner.close();
+            }
+        }
+
+        private void beginRead() throws SocketTimeoutException {
+            if (timedOut) {
+                throw timeout(null);
+            }
+            readStartedAt = System.currentTimeMillis();
+        }
+
+        private SocketTimeoutException timeout(IOException cause) {
+            SocketTimeoutException e = new SocketTimeoutException("Read timed out after " + readTimeout + " ms");
+            if (cause != null) {
+                e.initCause(cause);
+            }
+            return e;
+        }
+
+        @Override
+        public int read() throws IOException {
+            beginRead();
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timedOut ? timeout(e) : e;
+            } finally {
+                readStartedAt = 0;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            beginRead();
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                throw timedOut ? timeout(e) : e;
+            } finally {
+                readStartedAt = 0;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            beginRead();
+            try {
+                return super.skip(n);
+            } catch (IOException e) {
+                throw timedOut ? timeout(e) : e;
+            } finally {
+                readStartedAt = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (check != null) {
+                check.cancel(false);
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * 反射用到的java.net.http方法，类不存在时为null
+     */
+    private static final class Api {
+        Object http2;
+        Object redirectNormal;
+        Object redirectNever;
+        Method ofMillis;
+        Method newClientBuilder;
+        Method version;
+        Method followRedirects;
+        Method connectTimeout;
+        Method proxy;
+        Method proxySelectorOf;
+        Method buildClient;
+        Method newRequestBuilder;
+        Method header;
+        Method method;
+        Method timeout;
+        Method buildRequest;
+        Method noBody;
+        Method ofByteArray;
+        Method ofInputStream;
+        Method send;
+        Method statusCode;
+        Method headers;
+        Method headersMap;
+        Method uri;
+        Method body;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static Api load() {
+            try {
+                Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+                Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> publisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> publishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> handlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> handlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+                Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+                Class<?> durationClass = Class.forName("java.time.Duration");
+
+                Api api = new Api();
+                api.http2 = Enum.valueOf((Class<Enum>) versionClass, "HTTP_2");
+                api.redirectNormal = Enum.valueOf((Class<Enum>) redirectClass, "NORMAL");
+                api.redirectNever = Enum.valueOf((Class<Enum>) redirectClass, "NEVER");
+                api.ofMillis = durationClass.getMethod("ofMillis", long.class);
+                api.newClientBuilder = clientClass.getMethod("newBuilder");
+                api.version = clientBuilderClass.getMethod("version", versionClass);
+                api.followRedirects = clientBuilderClass.getMethod("followRedirects", redirectClass);
+                api.connectTimeout = clientBuilderClass.getMethod("connectTimeout", durationClass);
+                api.proxy = clientBuilderClass.getMethod("proxy", ProxySelector.class);
+                api.proxySelectorOf = ProxySelector.class.getMethod("of", InetSocketAddress.class);
+                api.buildClient = clientBuilderClass.getMethod("build");
+                api.newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+                api.header = requestBuilderClass.getMethod("header", String.class, String.class);
+                api.method = requestBuilderClass.getMethod("method", String.class, publisherClass);
+                api.timeout = requestBuilderClass.getMethod("timeout", durationClass);
+                api.buildRequest = requestBuilderClass.getMethod("build");
+                api.noBody = publishersClass.getMethod("noBody");
+                api.ofByteArray = publishersClass.getMethod("ofByteArray", byte[].class);
+                api.ofInputStream = handlersClass.getMethod("ofInputStream");
+                api.send = clientClass.getMethod("send", requestClass, handlerClass);
+                api.statusCode = responseClass.getMethod("statusCode");
+                api.headers = responseClass.getMethod("headers");
+                api.headersMap = headersClass.getMethod("map");
+                api.uri = responseClass.getMethod("uri");
+                api.body = responseClass.getMethod("body");
+                return api;
+            } catch (ClassNotFoundException | NoSuchMethodException | IllegalArgumentException | LinkageError e) {
+                return null;
+            }
+        }
+
+        Object millis(int millis) throws IOException {
+            return Reflection.invoke(ofMillis, null, (long) millis);
+        }
+    }
+}
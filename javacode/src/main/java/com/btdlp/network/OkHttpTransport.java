@@ -0,0 +1,316 @@
+package com.btdlp.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于OkHttp的HTTP/2传输层
+ * 通过反射使用应用自带的OkHttp（3.x/4.x），本库不直接依赖它。HTTPS主机通过ALPN协商h2后，
+ * 同一主机的所有请求复用一条TCP连接；不支持h2的主机由OkHttp自动使用HTTP/1.1
+ */
+final class OkHttpTransport implements HttpTransport {
+
+    private static final Api API = Api.load();
+
+    private final Object client;
+    private final HostPermits hostPermits;
+    private final Map<String, String> defaultHeaders;
+    // 请求指定了不同的超时或重定向策略时派生的客户端，与主客户端共用连接池
+    private final Map<String, Object> derivedClients = new HashMap<>();
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    /**
+     * 当前环境中是否有可用的OkHttp
+     */
+    static boolean isAvailable() {
+        return API != null;
+    }
+
+    OkHttpTransport(int maxStreamsPerHost, Map<String, String> defaultHeaders, Proxy proxy,
+                    int connectTimeout, int readTimeout) throws IOException {
+        if (API == null) {
+            throw new IllegalStateException("OkHttp is not available");
+        }
+        this.hostPermits = new HostPermits(maxStreamsPerHost);
+        this.defaultHeaders = defaultHeaders != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(defaultHeaders))
+                : Collections.<String, String>emptyMap();
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+
+        Object builder = API.newClientBuilder();
+        Reflection.invoke(API.connectTimeout, builder, (long) connectTimeout, TimeUnit.MILLISECONDS);
+        Reflection.invoke(API.readTimeout, builder, (long) readTimeout, TimeUnit.MILLISECONDS);
+        if (proxy != null) {
+            Reflection.invoke(API.proxy, builder, proxy);
+        }
+        this.client = Reflection.invoke(API.buildClient, builder);
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        URL url = new URL(request.getUrl());
+        Object requestBuilder = API.newRequestBuilder();
+        Reflection.invoke(API.url, requestBuilder, request.getUrl());
+        for (Map.Entry<String, String> header : HttpTransports.mergeHeaders(defaultHeaders, request).entrySet()) {
+            if (!"Content-Type".equalsIgnoreCase(header.getKey()) || request.getBody() == null) {
+                Reflection.invoke(API.header, requestBuilder, header.getKey(), header.getValue());
+            }
+        }
+        Object body = null;
+        if (request.getBody() != null) {
+            Object mediaType = Reflection.invoke(API.parseMediaType, null,
+                    request.getHeader("Content-Type") != null ? request.getHeader("Content-Type") : "application/octet-stream");
+            body = Reflection.invoke(API.createBody, null, mediaType, request.getBody());
+        }
+        Reflection.invoke(API.method, requestBuilder, request.getMethod(), body);
+        Object okRequest = Reflection.invoke(API.buildRequest, requestBuilder);
+
+        Semaphore permits = hostPermits.acquire(url,
+                request.getConnectTimeout() > 0 ? request.getConnectTimeout() : connectTimeout);
+        Object call = null;
+        try {
+            call = Reflection.invoke(API.newCall, clientFor(request), okRequest);
+            Object response = Reflection.invoke(API.execute, call);
+            return new OkHttpResponse(call, response, permits);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Object clientFor(Request request) throws IOException {
+        int connect = request.getConnectTimeout() > 0 ? request.getConnectTimeout() : connectTimeout;
+        int read = request.getReadTimeout() > 0 ? request.getReadTimeout() : readTimeout;
+        if (connect == connectTimeout && read == readTimeout && request.isFollowRedirects()) {
+            return client;
+        }
+        String key = connect + "|" + read + "|" + request.isFollowRedirects();
+        synchronized (derivedClients) {
+            Object derived = derivedClients.get(key);
+            if (derived == null) {
+                Object builder = Reflection.invoke(API.newBuilder, client);
+                Reflection.invoke(API.connectTimeout, builder, (long) connect, TimeUnit.MILLISECONDS);
+                Reflection.invoke(API.readTimeout, builder, (long) read, TimeUnit.MILLISECONDS);
+                Reflection.invoke(API.followRedirects, builder, request.isFollowRedirects());
+                derived = Reflection.invoke(API.buildClient, builder);
+                derivedClients.put(key, derived);
+            }
+            return derived;
+        }
+    }
+
+    /**
+     * OkHttp响应，关闭时释放流（HTTP/2下只结束该流，不影响连接上的其它请求）并归还许可
+     */
+    private static class OkHttpResponse implements Response {
+        private final Object call;
+        private final Object response;
+        private final Semaphore permits;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private Map<String, List<String>> headers;
+        private InputStream body;
+
+        OkHttpResponse(Object call, Object response, Semaphore permits) {
+            this.call = call;
+            this.response = response;
+            this.permits = permits;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return (Integer) invokeQuietly(API.code, response);
+        }
+
+        @Override
+        public String getStatusMessage() {
+            return (String) invokeQuietly(API.message, response);
+        }
+
+        @Override
+        public String getUrl() {
+            Object request = invokeQuietly(API.request, response);
+            return String.valueOf(invokeQuietly(API.requestUrl, request));
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return (String) invokeQuietly(API.responseHeader, response, name);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized Map<String, List<String>> getHeaders() {
+            if (headers == null) {
+                // OkHttp的响应头名称都是小写，换成不区分大小写的映射
+                Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                map.putAll((Map<String, List<String>>) invokeQuietly(API.toMultimap, invokeQuietly(API.headers, response)));
+                headers = Collections.unmodifiableMap(map);
+            }
+            return headers;
+        }
+
+        @Override
+        public long getContentLength() {
+            Object responseBody = invokeQuietly(API.body, response);
+            return responseBody != null ? (Long) invokeQuietly(API.contentLength, responseBody) : -1;
+        }
+
+        @Override
+        public synchronized InputStream getBody() throws IOException {
+            if (body == null) {
+                Object responseBody = Reflection.invoke(API.body, response);
+                body = responseBody != null
+                        ? (InputStream) Reflection.invoke(API.byteStream, responseBody)
+                        : new ByteArrayInputStream(new byte[0]);
+            }
+            return body;
+        }
+
+        @Override
+        public void abort() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    Reflection.invoke(API.cancel, call);
+                    Reflection.invoke(API.close, response);
+                } catch (IOException | RuntimeException e) {
+                    // 已取消的调用关闭时可能报错，忽略
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    Reflection.invoke(API.close, response);
+                } catch (IOException | RuntimeException e) {
+                    // 关闭失败时连接由OkHttp丢弃
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+
+        private static Object invokeQuietly(Method method, Object target, Object... args) {
+            try {
+                return Reflection.invoke(method, target, args);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 反射用到的OkHttp方法，类不存在时为null
+     */
+    private static final class Api {
+        Class<?> clientBuilderClass;
+        Class<?> requestBuilderClass;
+        Method connectTimeout;
+        Method readTimeout;
+        Method followRedirects;
+        Method proxy;
+        Method buildClient;
+        Method newBuilder;
+        Method newCall;
+        Method url;
+        Method header;
+        Method method;
+        Method buildRequest;
+        Method parseMediaType;
+        Method createBody;
+        Method execute;
+        Method cancel;
+        Method code;
+        Method message;
+        Method request;
+        Method requestUrl;
+        Method responseHeader;
+        Method headers;
+        Method toMultimap;
+        Method body;
+        Method byteStream;
+        Method contentLength;
+        Method close;
+
+        static Api load() {
+            try {
+                ClassLoader loader = OkHttpTransport.class.getClassLoader();
+                Class<?> clientClass = Class.forName("okhttp3.OkHttpClient", false, loader);
+                Class<?> requestClass = Class.forName("okhttp3.Request", false, loader);
+                Class<?> mediaTypeClass = Class.forName("okhttp3.MediaType", false, loader);
+                Class<?> requestBodyClass = Class.forName("okhttp3.RequestBody", false, loader);
+                Class<?> callClass = Class.forName("okhttp3.Call", false, loader);
+                Class<?> responseClass = Class.forName("okhttp3.Response", false, loader);
+                Class<?> headersClass = Class.forName("okhttp3.Headers", false, loader);
+                Class<?> responseBodyClass = Class.forName("okhttp3.ResponseBody", false, loader);
+
+                Api api = new Api();
+                api.clientBuilderClass = Class.forName("okhttp3.OkHttpClient$Builder", false, loader);
+                api.requestBuilderClass = Class.forName("okhttp3.Request$Builder", false, loader);
+                api.connectTimeout = api.clientBuilderClass.getMethod("connectTimeout", long.class, TimeUnit.class);
+                api.readTimeout = api.clientBuilderClass.getMethod("readTimeout", long.class, TimeUnit.class);
+                api.followRedirects = api.clientBuilderClass.getMethod("followRedirects", boolean.class);
+                api.proxy = api.clientBuilderClass.getMethod("proxy", Proxy.class);
+                api.buildClient = api.clientBuilderClass.getMethod("build");
+                api.newBuilder = clientClass.getMethod("newBuilder");
+                api.newCall = clientClass.getMethod("newCall", requestClass);
+                api.url = api.requestBuilderClass.getMethod("url", String.class);
+                api.header = api.requestBuilderClass.getMethod("header", String.class, String.class);
+                api.method = api.requestBuilderClass.getMethod("method", String.class, requestBodyClass);
+                api.buildRequest = api.requestBuilderClass.getMethod("build");
+                api.parseMediaType = mediaTypeClass.getMethod("parse", String.class);
+                api.createBody = requestBodyClass.getMethod("create", mediaTypeClass, byte[].class);
+                api.execute = callClass.getMethod("execute");
+                api.cancel = callClass.getMethod("cancel");
+                api.code = responseClass.getMethod("code");
+                api.message = responseClass.getMethod("message");
+                api.request = responseClass.getMethod("request");
+                api.requestUrl = requestClass.getMethod("url");
+                api.responseHeader = responseClass.getMethod("header", String.class);
+                api.headers = responseClass.getMethod("headers");
+                api.toMultimap = headersClass.getMethod("toMultimap");
+                api.body = responseClass.getMethod("body");
+                api.byteStream = responseBodyClass.getMethod("byteStream");
+                api.contentLength = responseBodyClass.getMethod("contentLength");
+                api.close = responseClass.getMethod("close");
+                return api;
+            } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+                return null;
+            }
+        }
+
+        Object newClientBuilder() throws IOException {
+            try {
+                return clientBuilderClass.getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Cannot create OkHttpClient.Builder", e);
+            }
+        }
+
+        Object newRequestBuilder() throws IOException {
+            try {
+                return requestBuilderClass.getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("Cannot create Request.Builder", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.btdlp.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于HttpURLConnection的连接池传输层
+ * HttpURLConnection在响应体读完并关闭后会把连接放回JDK（Android上为OkHttp）的keep-alive缓存，
+ * 这里从不在正常路径上调用disconnect()，并按主机限制同时打开的连接数，
+ * 空闲连接缓存的大小（http.maxConnections）随之调整，使并发请求的连接都能被复用
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+    public static final int DEFAULT_READ_TIMEOUT = 60000;
+    // close()时最多读完这么多剩余数据以复用连接，超过时直接关闭连接
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final HostPermits hostPermits;
+    private final Map<String, String> defaultHeaders;
+    private final Proxy proxy;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, null, null, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param defaultHeaders 每个请求都带上的请求头，请求自身的同名请求头优先
+     * @param proxy 代理，null表示直连
+     */
+    public PooledHttpTransport(int maxConnectionsPerHost, Map<String, String> defaultHeaders, Proxy proxy,
+                               int connectTimeout, int readTimeout) {
+        this.hostPermits = new HostPermits(maxConnectionsPerHost);
+        this.defaultHeaders = defaultHeaders != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(defaultHeaders))
+                : Collections.<String, String>emptyMap();
+        this.proxy = proxy;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        raiseKeepAliveCache(maxConnectionsPerHost);
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return hostPermits.getMaxPerHost();
+    }
+
+    public Map<String, String> getDefaultHeaders() {
+        return defaultHeaders;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        URL url = new URL(request.getUrl());
+        Semaphore permits = hostPermits.acquire(url,
+                request.getConnectTimeout() > 0 ? request.getConnectTimeout() : connectTimeout);
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) (proxy != null ? url.openConnection(proxy) : url.openConnection());
+            connection.setRequestMethod(request.getMethod());
+            connection.setConnectTimeout(request.getConnectTimeout() > 0 ? request.getConnectTimeout() : connectTimeout);
+            connection.setReadTimeout(request.getReadTimeout() > 0 ? request.getReadTimeout() : readTimeout);
+            connection.setInstanceFollowRedirects(request.isFollowRedirects());
+
+            for (Map.Entry<String, String> header : HttpTransports.mergeHeaders(defaultHeaders, request).entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            byte[] body = request.getBody();
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(body);
+                }
+            }
+
+            connection.getResponseCode();
+            return new PooledResponse(connection, permits);
+        } catch (IOException | RuntimeException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * JDK和Android默认每个目标地址只缓存5个空闲连接，需要在第一次建立连接前调大，
+     * 已由应用显式设置时不覆盖
+     */
+    private static synchronized void raiseKeepAliveCache(int maxConnectionsPerHost) {
+        try {
+            String current = System.getProperty("http.maxConnections");
+            if (current == null || Integer.parseInt(current) < maxConnectionsPerHost) {
+                System.setProperty("http.maxConnections", String.valueOf(maxConnectionsPerHost));
+            }
+        } catch (SecurityException | NumberFormatException e) {
+            // 无法调整时使用平台默认值
+        }
+    }
+
+    /**
+     * 持有主机连接许可的响应，关闭时归还许可
+     */
+    private static class PooledResponse implements Response {
+        private final HttpURLConnection connection;
+        private final Semaphore permits;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private InputStream body;
+
+        PooledResponse(HttpURLConnection connection, Semaphore permits) {
+            this.connection = connection;
+            this.permits = permits;
+        }
+
+        @Override
+        public int getStatusCode() {
+            try {
+                return connection.getResponseCode();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public String getStatusMessage() {
+            try {
+                return connection.getResponseMessage();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getUrl() {
+            return connection.getURL().toString();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return connection.getHeaderFields();
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public synchronized InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream inputStream = getStatusCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                body = new BodyStream(inputStream != null ? inputStream : new ByteArrayInputStream(new byte[0]));
+            }
+            return body;
+        }
+
+        @Override
+        public void abort() {
+            if (closed.compareAndSet(false, true)) {
+                connection.disconnect();
+                permits.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                getBody().close();
+            } catch (IOException e) {
+                connection.disconnect();
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * 响应体流：关闭时读完剩余的少量数据，连接才会回到keep-alive缓存；剩余数据过多时直接断开
+         */
+        private class BodyStream extends FilterInputStream {
+            private boolean streamClosed;
+
+            BodyStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public synchronized void close() throws IOException {
+                if (streamClosed) {
+                    return;
+                }
+                streamClosed = true;
+                byte[] buffer = new byte[8192];
+                int drained = 0;
+                int bytesRead;
+                while (drained <= MAX_DRAIN_BYTES && (bytesRead = in.read(buffer)) != -1) {
+                    drained += bytesRead;
+                }
+                if (drained > MAX_DRAIN_BYTES) {
+                    connection.disconnect();
+                } else {
+                    in.close();
+                }
+            }
+        }
+    }
+}
@@ -49,6 +49,20 @@ public class BubeDLOptions {
         return null;
     }
 
+    public Long getLong(String key) {
+        Object value = options.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     public Boolean getBoolean(String key) {
         Object value = options.get(key);
         if (value instanceof Boolean) {
@@ -76,4 +90,32 @@ public class BubeDLOptions {
     public String getHttpHeaders() {
         return getString("http_headers");
     }
+    
+    /**
+     * 设置HLS等分片下载时单个任务同时下载的片段数
+     */
+    public void setConcurrentFragments(int concurrentFragments) {
+        options.put("concurrent_fragments", concurrentFragments);
+    }
+    
+    /**
+     * 获取单个任务同时下载的片段数
+     */
+    public Integer getConcurrentFragments() {
+        return getInt("concurrent_fragments");
+    }
+    
+    /**
+     * 设置单个片段失败后的最大重试次数
+     */
+    public void setFragmentRetries(int fragmentRetries) {
+        options.put("fragment_retries", fragmentRetries);
+    }
+    
+    /**
+     * 获取单个片段的最大重试次数
+     */
+    public Integer getFragmentRetries() {
+        return getInt("fragment_retries");
+    }
 }
@@ -0,0 +1,221 @@
+package com.btdlp.test;
+
+import com.btdlp.utils.JsonUtils;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * JsonPathSelector路径匹配测试
+ * 覆盖*、**、[a.b]形式的属性名、数组下标、不完整的JSON和非法路径，
+ * 并在随机生成的JSON上与遍历完整JsonElement树的参考实现比较
+ */
+public class JsonPathSelectorTest {
+
+    private static final int RANDOM_DOCUMENTS = 2000;
+    private static final String[] RANDOM_KEYS = {"a", "b", "c"};
+    private static final String[] RANDOM_SEGMENTS = {"a", "b", "c", "0", "1", "*", "**"};
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        System.out.println("=== JsonPathSelector路径匹配测试 ===");
+
+        JsonUtils.JsonPathSelector selector = JsonUtils.pathSelector()
+                .path("exact", "video.title")
+                .path("any", "request.files.progressive.*")
+                .path("anyDepth", "**.url")
+                .path("dotted", "__DEFAULT_SCOPE__[webapp.video-detail].itemInfo.desc")
+                .path("index", "aweme_detail.video.play_addr.url_list.0")
+                .path("alternatives", "ItemModule.*.desc", "aweme_detail.desc")
+                .path("nested", "a.**.b")
+                .build();
+
+        String document = "{\"video\":{\"title\":\"标题\",\"duration\":61},"
+                + "\"request\":{\"files\":{\"progressive\":[{\"url\":\"p1\",\"quality\":\"360p\"},{\"url\":\"p2\"}]}},"
+                + "\"__DEFAULT_SCOPE__\":{\"webapp.video-detail\":{\"itemInfo\":{\"desc\":\"描述\"}},"
+                + "\"webapp\":{\"video-detail\":{\"itemInfo\":{\"desc\":\"错误\"}}}},"
+                + "\"aweme_detail\":{\"desc\":\"d2\",\"video\":{\"play_addr\":{\"url_list\":[\"u0\",\"u1\"]}}},"
+                + "\"ItemModule\":{\"123\":{\"desc\":\"d1\"}},"
+                + "\"a\":{\"b\":1,\"x\":{\"b\":{\"b\":2}}}}";
+        JsonUtils.JsonPathValues values = selector.read(document);
+        expect("属性名", values.getAll("exact"), "\"标题\"");
+        expect("*匹配数组元素", values.getAll("any"), "{\"url\":\"p1\",\"quality\":\"360p\"}", "{\"url\":\"p2\"}");
+        expect("**匹配任意层级", values.getAll("anyDepth"), "\"p1\"", "\"p2\"");
+        expect("[a.b]属性名", values.getAll("dotted"), "\"描述\"");
+        expect("数组下标", values.getAll("index"), "\"u0\"");
+        expect("备选路径按文档顺序", values.getAll("alternatives"), "\"d2\"", "\"d1\"");
+        expect("命中的值内部继续匹配", values.getAll("nested"), "1", "{\"b\":2}", "2");
+
+        // 宽松模式：JavaScript对象字面量
+        values = selector.read("{video:{title:'单引号',},request:{files:{progressive:[1,2,],},},}");
+        expect("宽松模式", values.getAll("exact"), "\"单引号\"");
+
+        // 不完整的JSON：保留出错前已读到的值，未读完的值丢弃
+        values = selector.read("{\"video\":{\"title\":\"t\"},\"request\":{\"files\":{\"progressive\":[{\"url\":\"p1\"},{\"url\":\"p2");
+        expect("不完整JSON", values.getAll("exact"), "\"t\"");
+        expect("不完整JSON中的数组", values.getAll("any"), "{\"url\":\"p1\"}");
+        expect("不完整JSON中的**", values.getAll("anyDepth"), "\"p1\"");
+        values = selector.read("{\"video\":");
+        expect("截断在值之前", values.getAll("exact"));
+        expect("非JSON", selector.read("not json").getAll("exact"));
+        expect("null输入", selector.read((String) null).getAll("exact"));
+
+        // 页面中内嵌的JSON
+        values = selector.readEmbedded("<script>window.playerConfig = {\"video\":{\"title\":\"内嵌\"}};</script>",
+                "window.playerConfig");
+        expect("内嵌JSON", values != null ? values.getAll("exact") : null, "\"内嵌\"");
+
+        // 非法路径
+        expectInvalid("**结尾", "a.**");
+        expectInvalid("空段", "a..b");
+        expectInvalid("未闭合的[", "a[b.c");
+        expectInvalid("连续的**", "a.**.**.b");
+
+        // 随机文档与参考实现比较，路径中可以有多个不相邻的**
+        Random random = new Random(42);
+        int randomFailures = failures;
+        for (int i = 0; i < RANDOM_DOCUMENTS; i++) {
+            JsonElement root = random.nextInt(4) == 0 ? randomArray(random, 3) : randomObject(random, 3);
+            String[] path = randomPath(random);
+            String joined = String.join(".", path);
+            List<JsonElement> expected = new ArrayList<>();
+            reference(root, new ArrayList<String>(), path, expected);
+            JsonUtils.JsonPathValues actual = JsonUtils.pathSelector().path("field", joined).build()
+                    .read(root.toString());
+            checks++;
+            if (!toStrings(expected).equals(toStrings(actual.getAll("field")))) {
+                failures++;
+                System.out.println("❌ 随机文档 / " + joined);
+                System.out.println("   JSON: " + root);
+                System.out.println("   期望: " + toStrings(expected) + "，实际: " + toStrings(actual.getAll("field")));
+            }
+        }
+        System.out.println((failures == randomFailures ? "✅ " : "❌ ") + "随机文档: " + RANDOM_DOCUMENTS + " 个");
+
+        System.out.println("\n检查 " + checks + " 项，失败 " + failures + " 项");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void expect(String name, List<JsonElement> actual, String... expected) {
+        checks++;
+        List<String> actualStrings = actual != null ? toStrings(actual) : null;
+        if (Arrays.asList(expected).equals(actualStrings)) {
+            System.out.println("✅ " + name);
+        } else {
+            failures++;
+            System.out.println("❌ " + name + "：期望 " + Arrays.asList(expected) + "，实际 " + actualStrings);
+        }
+    }
+
+    private static void expectInvalid(String name, String path) {
+        checks++;
+        try {
+            JsonUtils.pathSelector().path("field", path);
+            failures++;
+            System.out.println("❌ 非法路径未被拒绝: " + name + " (" + path + ")");
+        } catch (IllegalArgumentException e) {
+            System.out.println("✅ 拒绝非法路径: " + name);
+        }
+    }
+
+    private static List<String> toStrings(List<JsonElement> elements) {
+        List<String> strings = new ArrayList<>(elements.size());
+        for (JsonElement element : elements) {
+            strings.add(element.toString());
+        }
+        return strings;
+    }
+
+    /**
+     * 参考实现：先序遍历完整的树，从根到当前值的键序列与路径匹配时记录该值
+     */
+    private static void reference(JsonElement element, List<String> keys, String[] path, List<JsonElement> out) {
+        if (!keys.isEmpty() && matches(keys, 0, path, 0)) {
+            out.add(element);
+        }
+        if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                keys.add(member.getKey());
+                reference(member.getValue(), keys, path, out);
+                keys.remove(keys.size() - 1);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                keys.add(String.valueOf(i));
+                reference(array.get(i), keys, path, out);
+                keys.remove(keys.size() - 1);
+            }
+        }
+    }
+
+    private static boolean matches(List<String> keys, int k, String[] path, int p) {
+        if (p == path.length) {
+            return k == keys.size();
+        }
+        if ("**".equals(path[p])) {
+            for (int skip = k; skip <= keys.size(); skip++) {
+                if (matches(keys, skip, path, p + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return k < keys.size() && ("*".equals(path[p]) || path[p].equals(keys.get(k)))
+                && matches(keys, k + 1, path, p + 1);
+    }
+
+    private static JsonElement randomValue(Random random, int depth) {
+        int kind = depth > 0 ? random.nextInt(4) : random.nextInt(2);
+        switch (kind) {
+            case 0:
+                return new JsonPrimitive(random.nextInt(100));
+            case 1:
+                return new JsonPrimitive(RANDOM_KEYS[random.nextInt(RANDOM_KEYS.length)]);
+            case 2:
+                return randomObject(random, depth - 1);
+            default:
+                return randomArray(random, depth - 1);
+        }
+    }
+
+    private static JsonObject randomObject(Random random, int depth) {
+        JsonObject object = new JsonObject();
+        int size = random.nextInt(4);
+        for (int i = 0; i < size; i++) {
+            object.add(RANDOM_KEYS[random.nextInt(RANDOM_KEYS.length)], randomValue(random, depth));
+        }
+        return object;
+    }
+
+    private static JsonArray randomArray(Random random, int depth) {
+        JsonArray array = new JsonArray();
+        int size = random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            array.add(randomValue(random, depth));
+        }
+        return array;
+    }
+
+    private static String[] randomPath(Random random) {
+        int length = 1 + random.nextInt(4);
+        String[] path = new String[length];
+        for (int i = 0; i < length; i++) {
+            do {
+                path[i] = RANDOM_SEGMENTS[random.nextInt(RANDOM_SEGMENTS.length)];
+            } while ("**".equals(path[i]) && (i == length - 1 || (i > 0 && "**".equals(path[i - 1]))));
+        }
+        return path;
+    }
+}
@@ -0,0 +1,187 @@
+package com.btdlp.test;
+
+import com.btdlp.extractor.PageScanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PageScanner一致性测试
+ * 对每个样例页面，scan()的结果应与每条规则单独用Matcher.find()循环查找的结果完全一致，
+ * 覆盖页面末尾的锚点、非ASCII锚点、all规则的重叠匹配、无固定开头的规则，以及随机生成的页面
+ */
+public class PageScannerTest {
+
+    private static final int RANDOM_PAGES = 2000;
+    private static final String RANDOM_ALPHABET = "ab\"é:1 i<>=";
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        System.out.println("=== PageScanner一致性测试 ===");
+
+        // 锚点在页面末尾：单字符锚点位于最后一个字符、锚点后的分组为空、$只在页面真正结尾匹配
+        check("页面末尾", rules(
+                first("last", "x(\\d*)"),
+                first("key", "\"end\":(\\d*)"),
+                all("dollar", "end(\\d)$"),
+                all("tail", "!")),
+                "end1 ... end2 ... \"end\":", "abc x", "end3!", "x");
+
+        // 非ASCII锚点：首字符非ASCII、第二个字符非ASCII（é的低7位与i相同，按第二个字符分派时落在同一组）
+        check("非ASCII锚点", rules(
+                first("title", "标题：([^<]+)"),
+                all("accent", "aé(\\d+)"),
+                all("word", "é(\\w+)"),
+                first("cjk", "时长(\\d+)秒")),
+                "<p>标题：测试视频</p> ai5 aé7 éx aé8", "时长120秒 ai1 ai2", "标题：");
+
+        // all规则的重叠匹配：同一字段的匹配互不重叠，与find()从上一个匹配的结尾继续查找一致
+        check("重叠匹配", rules(
+                all("pair", "aa"),
+                all("lookahead", "a(?=a)"),
+                all("aba", "ab(a)"),
+                all("digits", "1(\\d*)")),
+                "aaaa", "ababababa", "111 1 11", "a");
+
+        // 固定开头的解析：转义、锚点后的量词、锚点后的lookbehind、前缀后的分组
+        check("固定开头", rules(
+                all("ext", "\\.mp4\\?v=(\\d+)"),
+                all("escaped", "\\\\u002F(\\w+)"),
+                all("optional", "ab?c(\\d)"),
+                all("repeat", "ab{2}(\\d)"),
+                all("quote", "\"a\\\"b\":(\\d)"),
+                all("behind", "=(?<=id=)(\\d+)"),
+                all("group", "src(?:set)?=\"([^\"]+)\"")),
+                "x.mp4?v=12 \\u002Fpath ac1 abc2 abb3 ab4 \"a\\\"b\":5 id=6 v=7",
+                "srcset=\"a.jpg\" src=\"b.jpg\" src=x");
+
+        // 无固定开头的规则：字符类、标志、顶层|、^、\b开头的正则在遍历后单独查找
+        check("无固定开头", rules(
+                all("class", "[Tt]itle: (\\w+)"),
+                first("flags", "(?i)DURATION=(\\d+)"),
+                all("alternation", "foo(\\d)|bar(\\d)"),
+                first("start", "^<html>(\\w*)"),
+                all("boundary", "\\bname=(\\w+)")),
+                "<html>page title: one Title: two duration=30 foo1 bar2 name=a xname=b name=c",
+                "x<html>y DURATION=5");
+
+        // 接近真实页面的JSON片段，多条规则共用同一个首字符
+        check("JSON页面", rules(
+                first("titleField", "\"title\"\\s*:\\s*\"([^\"]+)\""),
+                first("description", "\"description\":\"([^\"]*)\""),
+                first("duration", "\"duration\":(\\d+)"),
+                all("playAddr", "\"playAddr\":\"([^\"]+)\""),
+                all("url", "\"url\":\"(https?:[^\"]+)\""),
+                first("ogTitle", "<meta property=\"og:title\" content=\"([^\"]+)\"")),
+                "<meta property=\"og:title\" content=\"标题\"><script>{\"title\" : \"视频\",\"description\":\"\","
+                        + "\"duration\":61,\"playAddr\":\"https://a/1.mp4\",\"url\":\"https://a/2.m3u8\","
+                        + "\"playAddr\":\"https://a/3.mp4\",\"url\":\"ftp://x\"}</script>");
+
+        // 随机页面
+        Random random = new Random(42);
+        List<Field> randomRules = rules(
+                all("r1", "ab"),
+                all("r2", "a\"é:(\\d?)"),
+                first("r3", "é(i*)"),
+                all("r4", "i=(\\d)"),
+                all("r5", "\"(?:a|b)+\""),
+                all("r6", "<([^>]*)>"),
+                first("r7", "1 ?1"));
+        PageScanner scanner = build(randomRules);
+        int randomFailures = failures;
+        for (int i = 0; i < RANDOM_PAGES; i++) {
+            StringBuilder page = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                page.append(RANDOM_ALPHABET.charAt(random.nextInt(RANDOM_ALPHABET.length())));
+            }
+            compare("随机页面", scanner, randomRules, page.toString());
+        }
+        System.out.println((failures == randomFailures ? "✅ " : "❌ ") + "随机页面: " + RANDOM_PAGES + " 个");
+
+        System.out.println("\n检查 " + checks + " 项，失败 " + failures + " 项");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String name, List<Field> fields, String... pages) {
+        PageScanner scanner = build(fields);
+        int before = failures;
+        for (String page : pages) {
+            compare(name, scanner, fields, page);
+        }
+        System.out.println((failures == before ? "✅ " : "❌ ") + name);
+    }
+
+    private static void compare(String name, PageScanner scanner, List<Field> fields, String page) {
+        PageScanner.Result result = scanner.scan(page);
+        for (Field field : fields) {
+            checks++;
+            List<String> expected = find(field, page);
+            List<String> actual = result.getAll(field.name);
+            if (!Objects.equals(expected, new ArrayList<>(actual))) {
+                failures++;
+                System.out.println("❌ " + name + " / " + field.name + " (" + field.regex + ")");
+                System.out.println("   页面: " + page);
+                System.out.println("   find(): " + expected + "，scan(): " + actual);
+            }
+        }
+    }
+
+    /**
+     * 参考实现：单独对整个页面循环调用find()
+     */
+    private static List<String> find(Field field, String page) {
+        List<String> values = new ArrayList<>();
+        Matcher matcher = field.pattern.matcher(page);
+        while (matcher.find()) {
+            values.add(matcher.group(1 <= matcher.groupCount() ? 1 : 0));
+            if (!field.all) {
+                break;
+            }
+        }
+        return values;
+    }
+
+    private static PageScanner build(List<Field> fields) {
+        PageScanner.Builder builder = PageScanner.builder();
+        for (Field field : fields) {
+            builder.add(field.name, field.regex, field.pattern.matcher("").groupCount() >= 1 ? 1 : 0, field.all);
+        }
+        return builder.build();
+    }
+
+    private static List<Field> rules(Field... fields) {
+        return Arrays.asList(fields);
+    }
+
+    private static Field first(String name, String regex) {
+        return new Field(name, regex, false);
+    }
+
+    private static Field all(String name, String regex) {
+        return new Field(name, regex, true);
+    }
+
+    private static final class Field {
+        final String name;
+        final String regex;
+        final Pattern pattern;
+        final boolean all;
+
+        Field(String name, String regex, boolean all) {
+            this.name = name;
+            this.regex = regex;
+            this.pattern = Pattern.compile(regex);
+            this.all = all;
+        }
+    }
+}
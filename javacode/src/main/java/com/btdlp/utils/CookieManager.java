@@ -1,84 +1,561 @@
 package com.btdlp.utils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cookie管理器
+ * 线程安全的Cookie存储，按Cookie所属域名索引，按RFC 6265匹配域名和路径，
+ * 同名（域名+路径+名称相同）的Cookie会被替换，过期的Cookie不再发送。
+ * 每个主机的Cookie请求头在首次使用时生成并缓存，Cookie变化或其中最早的Cookie过期时重新生成。
+ * 支持读写Netscape格式的cookies.txt（即DownloadOptions中的cookiesFile）
  */
 public class CookieManager {
-    
-    private Map<String, List<String>> cookies;
-    
+
+    private static final String NETSCAPE_HEADER = "# Netscape HTTP Cookie File";
+    private static final String HTTP_ONLY_PREFIX = "#HttpOnly_";
+    // Expires属性常见的日期格式，RFC 1123、RFC 850和asctime
+    private static final String[] EXPIRES_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEE, dd-MMM-yyyy HH:mm:ss zzz",
+            "EEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEE MMM d HH:mm:ss yyyy"
+    };
+    private static final Map<String, CookieManager> FILE_MANAGERS = new HashMap<>();
+
+    // 按Cookie的域名索引，值为"路径\t名称"到Cookie的映射
+    private final Map<String, Map<String, Cookie>> cookies = new ConcurrentHashMap<>();
+    // 按"协议类型:主机"缓存的请求头
+    private final Map<String, CachedHeader> headerCache = new ConcurrentHashMap<>();
+    private final AtomicLong creationCounter = new AtomicLong();
+    // Cookie每次变化后加1；缓存的请求头记录构建时的值，不一致时重新构建，
+    // 避免与修改并发构建的旧请求头在清空缓存后被重新放回
+    private final AtomicLong generation = new AtomicLong();
+    private File file;
+
     public CookieManager() {
-        this.cookies = new HashMap<>();
     }
-    
+
+    /**
+     * 与cookies.txt文件关联的共享实例，首次获取时从文件加载，同一文件返回同一实例
+     */
+    public static CookieManager forFile(String path) {
+        File file = new File(path).getAbsoluteFile();
+        try {
+            file = file.getCanonicalFile();
+        } catch (IOException e) {
+            // 使用绝对路径
+        }
+        synchronized (FILE_MANAGERS) {
+            CookieManager manager = FILE_MANAGERS.get(file.getPath());
+            if (manager == null) {
+                manager = new CookieManager();
+                manager.file = file;
+                if (file.isFile()) {
+                    try {
+                        manager.load(file);
+                    } catch (IOException e) {
+                        Logger.logWarning("读取Cookie文件失败: " + file + ": " + e.getMessage());
+                    }
+                }
+                FILE_MANAGERS.put(file.getPath(), manager);
+            }
+            return manager;
+        }
+    }
+
     /**
      * 添加Cookie
+     * @param url 返回Set-Cookie的请求地址，用于确定默认域名和路径
+     * @param cookieHeader Set-Cookie头部的值
      */
     public void addCookie(String url, String cookieHeader) {
         try {
-            String domain = extractDomain(url);
-            List<String> domainCookies = cookies.computeIfAbsent(domain, k -> new ArrayList<>());
-            
-            // 解析Cookie头部
-            String[] cookiePairs = cookieHeader.split(";");
-            if (cookiePairs.length > 0) {
-                String cookiePair = cookiePairs[0].trim();
-                if (!domainCookies.contains(cookiePair)) {
-                    domainCookies.add(cookiePair);
-                }
+            URL urlObj = new URL(url);
+            Cookie cookie = parseSetCookie(urlObj.getHost().toLowerCase(Locale.ROOT), urlObj.getPath(), cookieHeader);
+            if (cookie != null) {
+                store(cookie);
             }
         } catch (Exception e) {
             // 忽略Cookie解析错误
         }
     }
-    
+
+    /**
+     * 添加Cookie，同域名、路径和名称的旧Cookie被替换；已过期的Cookie会删除旧值
+     */
+    public void addCookie(Cookie cookie) {
+        store(cookie);
+    }
+
     /**
-     * 获取指定URL的Cookie
+     * 获取指定URL的Cookie请求头，没有匹配的Cookie时返回null
      */
     public String getCookies(String url) {
         try {
-            String domain = extractDomain(url);
-            List<String> domainCookies = cookies.get(domain);
-            
-            if (domainCookies != null && !domainCookies.isEmpty()) {
-                return String.join("; ", domainCookies);
+            URL urlObj = new URL(url);
+            String host = urlObj.getHost().toLowerCase(Locale.ROOT);
+            boolean secure = "https".equalsIgnoreCase(urlObj.getProtocol());
+            String path = urlObj.getPath().isEmpty() ? "/" : urlObj.getPath();
+
+            long now = System.currentTimeMillis();
+            String cacheKey = (secure ? "s:" : "p:") + host;
+            CachedHeader cached = headerCache.get(cacheKey);
+            if (cached == null || now >= cached.validUntil || cached.generation != generation.get()) {
+                cached = buildHeader(host, secure, now);
+                headerCache.put(cacheKey, cached);
             }
+            return cached.getHeader(path);
         } catch (Exception e) {
             // 忽略错误
         }
-        
+
         return null;
     }
-    
+
+    /**
+     * 当前所有未过期的Cookie
+     */
+    public List<Cookie> getAllCookies() {
+        long now = System.currentTimeMillis();
+        List<Cookie> result = new ArrayList<>();
+        for (Map<String, Cookie> domainCookies : cookies.values()) {
+            for (Cookie cookie : domainCookies.values()) {
+                if (!cookie.isExpired(now)) {
+                    result.add(cookie);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * 清除所有Cookie
      */
     public void clearCookies() {
         cookies.clear();
+        invalidateHeaders();
     }
-    
+
     /**
      * 清除指定域的Cookie
      */
     public void clearCookies(String domain) {
-        cookies.remove(domain);
+        cookies.remove(normalizeDomain(domain));
+        invalidateHeaders();
     }
-    
+
     /**
-     * 提取域名
+     * 从Netscape格式的cookies.txt加载Cookie，与已有Cookie合并
      */
-    private String extractDomain(String url) {
-        try {
-            URL urlObj = new URL(url);
-            return urlObj.getHost();
-        } catch (Exception e) {
-            return url;
+    public void load(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                boolean httpOnly = line.startsWith(HTTP_ONLY_PREFIX);
+                if (httpOnly) {
+                    line = line.substring(HTTP_ONLY_PREFIX.length());
+                } else if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t", -1);
+                if (fields.length < 7) {
+                    continue;
+                }
+                long expires;
+                try {
+                    expires = Long.parseLong(fields[4].trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                boolean includeSubdomains = "TRUE".equalsIgnoreCase(fields[1].trim());
+                String domain = normalizeDomain(fields[0]);
+                if (domain.isEmpty()) {
+                    continue;
+                }
+                store(new Cookie(fields[5], fields[6], domain, fields[2].isEmpty() ? "/" : fields[2],
+                        expires > 0 ? expires * 1000 : -1, !includeSubdomains,
+                        "TRUE".equalsIgnoreCase(fields[3].trim()), httpOnly, 0));
+            }
+        }
+    }
+
+    /**
+     * 保存到关联的cookies.txt，未关联文件时不做任何事
+     */
+    public void save() throws IOException {
+        if (file != null) {
+            save(file);
+        }
+    }
+
+    /**
+     * 以Netscape格式保存所有未过期的Cookie，会话Cookie的过期时间写为0。
+     * 先写入临时文件再替换，写入中断不会破坏原文件
+     */
+    public synchronized void save(File file) throws IOException {
+        List<Cookie> all = getAllCookies();
+        Collections.sort(all, new Comparator<Cookie>() {
+            @Override
+            public int compare(Cookie a, Cookie b) {
+                int byDomain = a.getDomain().compareTo(b.getDomain());
+                return byDomain != 0 ? byDomain : Long.compare(a.creation, b.creation);
+            }
+        });
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(NETSCAPE_HEADER + "\n\n");
+            for (Cookie cookie : all) {
+                if (cookie.isHttpOnly()) {
+                    writer.write(HTTP_ONLY_PREFIX);
+                }
+                writer.write((cookie.isHostOnly() ? "" : ".") + cookie.getDomain() + "\t"
+                        + (cookie.isHostOnly() ? "FALSE" : "TRUE") + "\t"
+                        + cookie.getPath() + "\t"
+                        + (cookie.isSecure() ? "TRUE" : "FALSE") + "\t"
+                        + (cookie.getExpiresAt() > 0 ? cookie.getExpiresAt() / 1000 : 0) + "\t"
+                        + cookie.getName() + "\t"
+                        + cookie.getValue() + "\n");
+            }
+        }
+        if (!temp.renameTo(file)) {
+            // Windows上目标存在时renameTo失败
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Cannot replace cookie file " + file);
+            }
+        }
+    }
+
+    private void store(Cookie cookie) {
+        String key = cookie.getPath() + "\t" + cookie.getName();
+        if (cookie.isExpired(System.currentTimeMillis())) {
+            // 服务器通过过期时间删除Cookie
+            Map<String, Cookie> domainCookies = cookies.get(cookie.getDomain());
+            if (domainCookies != null && domainCookies.remove(key) != null) {
+                invalidateHeaders();
+            }
+            return;
+        }
+        Map<String, Cookie> domainCookies = cookies.get(cookie.getDomain());
+        if (domainCookies == null) {
+            Map<String, Cookie> created = new ConcurrentHashMap<>();
+            domainCookies = cookies.putIfAbsent(cookie.getDomain(), created);
+            if (domainCookies == null) {
+                domainCookies = created;
+            }
+        }
+        // RFC 6265 5.3：替换时保留原Cookie的创建顺序
+        Cookie previous = domainCookies.get(key);
+        domainCookies.put(key, cookie.withCreation(previous != null ? previous.creation : creationCounter.incrementAndGet()));
+        invalidateHeaders();
+    }
+
+    /**
+     * Cookie变化后调用，必须在修改完成之后
+     */
+    private void invalidateHeaders() {
+        generation.incrementAndGet();
+        headerCache.clear();
+    }
+
+    /**
+     * 收集发往主机的Cookie：依次查找主机本身和各级父域名，按路径长度降序、创建顺序升序排列
+     */
+    private CachedHeader buildHeader(String host, boolean secure, long now) {
+        // 先取版本号再读取Cookie，读取期间有修改时该请求头下次使用时会被重建
+        long builtGeneration = generation.get();
+        List<Cookie> matched = new ArrayList<>();
+        long validUntil = Long.MAX_VALUE;
+        String domain = host;
+        while (true) {
+            Map<String, Cookie> domainCookies = cookies.get(domain);
+            if (domainCookies != null) {
+                for (Cookie cookie : domainCookies.values()) {
+                    if (cookie.isExpired(now) || (cookie.isSecure() && !secure)
+                            || (cookie.isHostOnly() && !domain.equals(host))) {
+                        continue;
+                    }
+                    matched.add(cookie);
+                    if (cookie.getExpiresAt() > 0) {
+                        validUntil = Math.min(validUntil, cookie.getExpiresAt());
+                    }
+                }
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0 || isIpAddress(host)) {
+                break;
+            }
+            domain = domain.substring(dot + 1);
+        }
+        Collections.sort(matched, new Comparator<Cookie>() {
+            @Override
+            public int compare(Cookie a, Cookie b) {
+                int byPath = b.getPath().length() - a.getPath().length();
+                return byPath != 0 ? byPath : Long.compare(a.creation, b.creation);
+            }
+        });
+        return new CachedHeader(matched, validUntil, builtGeneration);
+    }
+
+    /**
+     * 按RFC 6265 5.2解析Set-Cookie，无效或Domain属性与请求主机不匹配时返回null
+     */
+    static Cookie parseSetCookie(String host, String requestPath, String header) {
+        String[] parts = header.split(";");
+        String pair = parts[0];
+        int equals = pair.indexOf('=');
+        if (equals <= 0) {
+            return null;
+        }
+        String name = pair.substring(0, equals).trim();
+        String value = pair.substring(equals + 1).trim();
+        if (name.isEmpty()) {
+            return null;
+        }
+
+        String domain = null;
+        String path = null;
+        long expiresAt = -1;
+        Long maxAge = null;
+        boolean secure = false;
+        boolean httpOnly = false;
+        for (int i = 1; i < parts.length; i++) {
+            String attribute = parts[i].trim();
+            int eq = attribute.indexOf('=');
+            String attributeName = (eq >= 0 ? attribute.substring(0, eq) : attribute).trim().toLowerCase(Locale.ROOT);
+            String attributeValue = eq >= 0 ? attribute.substring(eq + 1).trim() : "";
+            switch (attributeName) {
+                case "domain":
+                    if (!attributeValue.isEmpty()) {
+                        domain = normalizeDomain(attributeValue);
+                    }
+                    break;
+                case "path":
+                    if (attributeValue.startsWith("/")) {
+                        path = attributeValue;
+                    }
+                    break;
+                case "max-age":
+                    try {
+                        maxAge = Long.parseLong(attributeValue);
+                    } catch (NumberFormatException e) {
+                        // 忽略无效的Max-Age
+                    }
+                    break;
+                case "expires":
+                    long parsed = parseExpires(attributeValue);
+                    if (parsed != Long.MIN_VALUE) {
+                        expiresAt = parsed;
+                    }
+                    break;
+                case "secure":
+                    secure = true;
+                    break;
+                case "httponly":
+                    httpOnly = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (maxAge != null) {
+            // Max-Age优先于Expires，0或负数表示立即过期
+            expiresAt = maxAge <= 0 ? 0 : System.currentTimeMillis() + maxAge * 1000;
         }
+
+        boolean hostOnly = domain == null;
+        if (hostOnly) {
+            domain = host;
+        } else if (!domainMatches(host, domain) || (domain.indexOf('.') < 0 && !domain.equals(host))) {
+            // 不能为其它域名或顶级域名设置Cookie
+            return null;
+        }
+        if (path == null) {
+            path = defaultPath(requestPath);
+        }
+        return new Cookie(name, value, domain, path, expiresAt, hostOnly, secure, httpOnly, 0);
+    }
+
+    private static long parseExpires(String value) {
+        for (String format : EXPIRES_FORMATS) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                long time = dateFormat.parse(value).getTime();
+                // 过期时间为0会被当作"立即过期"，1970年的日期同样视为已过期
+                return Math.max(time, 0);
+            } catch (ParseException e) {
+                // 尝试下一种格式
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * RFC 6265 5.1.3：主机与域名相同，或以".域名"结尾且主机不是IP地址
+     */
+    static boolean domainMatches(String host, String domain) {
+        if (host.equals(domain)) {
+            return true;
+        }
+        return host.endsWith(domain) && host.charAt(host.length() - domain.length() - 1) == '.'
+                && !isIpAddress(host);
+    }
+
+    /**
+     * RFC 6265 5.1.4：请求路径到最后一个"/"之前的部分
+     */
+    static String defaultPath(String requestPath) {
+        if (requestPath == null || !requestPath.startsWith("/")) {
+            return "/";
+        }
+        int slash = requestPath.lastIndexOf('/');
+        return slash == 0 ? "/" : requestPath.substring(0, slash);
+    }
+
+    /**
+     * RFC 6265 5.1.4：路径相同，或Cookie路径是请求路径的前缀且在"/"处分隔
+     */
+    static boolean pathMatches(String requestPath, String cookiePath) {
+        if (requestPath.equals(cookiePath)) {
+            return true;
+        }
+        return requestPath.startsWith(cookiePath)
+                && (cookiePath.endsWith("/") || requestPath.charAt(cookiePath.length()) == '/');
+    }
+
+    private static String normalizeDomain(String domain) {
+        String normalized = domain.trim().toLowerCase(Locale.ROOT);
+        while (normalized.startsWith(".")) {
+            normalized = normalized.substring(1);
+        }
+        return normalized;
+    }
+
+    private static boolean isIpAddress(String host) {
+        return host.indexOf(':') >= 0 || host.matches("\\d+\\.\\d+\\.\\d+\\.\\d+");
+    }
+
+    /**
+     * 一个主机的Cookie请求头缓存；所有Cookie的路径都是"/"时请求头直接复用，否则按请求路径过滤
+     */
+    private static final class CachedHeader {
+        private final List<Cookie> cookies;
+        private final long validUntil;
+        private final String rootHeader;
+        private final boolean allRootPath;
+        private final long generation;
+
+        CachedHeader(List<Cookie> cookies, long validUntil, long generation) {
+            this.cookies = cookies;
+            this.validUntil = validUntil;
+            this.generation = generation;
+            boolean root = true;
+            for (Cookie cookie : cookies) {
+                root &= "/".equals(cookie.getPath());
+            }
+            this.allRootPath = root;
+            this.rootHeader = root ? join(cookies, null) : null;
+        }
+
+        String getHeader(String path) {
+            return allRootPath ? rootHeader : join(cookies, path);
+        }
+
+        private static String join(List<Cookie> cookies, String path) {
+            StringBuilder header = new StringBuilder();
+            for (Cookie cookie : cookies) {
+                if (path != null && !pathMatches(path, cookie.getPath())) {
+                    continue;
+                }
+                if (header.length() > 0) {
+                    header.append("; ");
+                }
+                header.append(cookie.getName()).append('=').append(cookie.getValue());
+            }
+            return header.length() > 0 ? header.toString() : null;
+        }
+    }
+
+    /**
+     * 单个Cookie，不可变
+     */
+    public static final class Cookie {
+        private final String name;
+        private final String value;
+        private final String domain;
+        private final String path;
+        private final long expiresAt;
+        private final boolean hostOnly;
+        private final boolean secure;
+        private final boolean httpOnly;
+        private final long creation;
+
+        /**
+         * @param expiresAt 过期时间（毫秒时间戳），-1表示会话Cookie
+         * @param hostOnly 为true时只发送给domain本身，不发送给子域名
+         */
+        public Cookie(String name, String value, String domain, String path, long expiresAt,
+                      boolean hostOnly, boolean secure, boolean httpOnly) {
+            this(name, value, normalizeDomain(domain), path, expiresAt, hostOnly, secure, httpOnly, 0);
+        }
+
+        private Cookie(String name, String value, String domain, String path, long expiresAt,
+                       boolean hostOnly, boolean secure, boolean httpOnly, long creation) {
+            this.name = name;
+            this.value = value;
+            this.domain = domain;
+            this.path = path;
+            this.expiresAt = expiresAt;
+            this.hostOnly = hostOnly;
+            this.secure = secure;
+            this.httpOnly = httpOnly;
+            this.creation = creation;
+        }
+
+        Cookie withCreation(long creation) {
+            return new Cookie(name, value, domain, path, expiresAt, hostOnly, secure, httpOnly, creation);
+        }
+
+        public boolean isExpired(long now) {
+            return expiresAt >= 0 && expiresAt <= now;
+        }
+
+        public String getName() { return name; }
+        public String getValue() { return value; }
+        public String getDomain() { return domain; }
+        public String getPath() { return path; }
+        public long getExpiresAt() { return expiresAt; }
+        public boolean isHostOnly() { return hostOnly; }
+        public boolean isSecure() { return secure; }
+        public boolean isHttpOnly() { return httpOnly; }
     }
 }
@@ -1,7 +1,15 @@
 package com.btdlp.utils;
 
+import com.btdlp.network.ContentDecoder;
+import com.btdlp.network.HttpTransport;
+import com.btdlp.network.HttpTransports;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -11,8 +19,12 @@ import java.util.HashMap;
 public class EnhancedHttpClient {
     
     private static final String TAG = "EnhancedHttpClient";
+    private static final int DEFAULT_BODY_BUFFER_SIZE = 16 * 1024;
+    // 按Content-Length预分配的上限，更大的响应体边读边扩容
+    private static final int MAX_PRESIZED_BODY = 32 * 1024 * 1024;
     
     private CookieManager cookieManager;
+    private HttpTransport httpTransport;
     private String userAgent;
     private int connectTimeout = 30000; // 30秒
     private int readTimeout = 60000; // 60秒
@@ -20,12 +32,16 @@ public class EnhancedHttpClient {
     private int retryDelay = 1000; // 1秒
     
     public EnhancedHttpClient() {
-        this.cookieManager = new CookieManager();
-        this.userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+        this(new CookieManager());
     }
     
     public EnhancedHttpClient(CookieManager cookieManager) {
+        this(cookieManager, HttpTransports.getDefault());
+    }
+    
+    public EnhancedHttpClient(CookieManager cookieManager, HttpTransport httpTransport) {
         this.cookieManager = cookieManager;
+        this.httpTransport = httpTransport;
         this.userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     }
     
@@ -38,44 +54,27 @@ public class EnhancedHttpClient {
     }
     
     public byte[] getBinary(String url, Map<String, String> headers) throws Exception {
-        HttpURLConnection connection = createConnection(url, "GET", headers);
+        // 二进制内容多为媒体文件，不请求压缩；服务器仍然压缩时照常解压
+        HttpTransport.Request request = createRequest(url, "GET", headers);
+        if (headers == null || !headers.containsKey("Accept-Encoding")) {
+            request.header("Accept-Encoding", ContentDecoder.IDENTITY);
+        }
         
-        try {
-            int responseCode = connection.getResponseCode();
+        try (HttpTransport.Response response = httpTransport.execute(request)) {
+            int responseCode = response.getStatusCode();
             if (responseCode != HttpURLConnection.HTTP_OK) {
                 throw new IOException("HTTP error: " + responseCode);
             }
             
-            InputStream inputStream = connection.getInputStream();
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            
-            return outputStream.toByteArray();
-            
-        } finally {
-            connection.disconnect();
+            // 长度已知时读入的数组正好是结果，不再复制
+            BodyBuffer body = readBody(response);
+            return body.length == body.data.length ? body.data : Arrays.copyOf(body.data, body.length);
         }
     }
     
     public HttpResponse get(String url, Map<String, String> headers) throws Exception {
-        HttpURLConnection connection = createConnection(url, "GET", headers);
-        
-        try {
-            int responseCode = connection.getResponseCode();
-            String content = readResponseContent(connection);
-            
-            // 解析响应中的Cookie
-            parseResponseCookies(url, connection);
-            
-            return new HttpResponse(responseCode, content, connection.getHeaderFields());
-            
-        } finally {
-            connection.disconnect();
+        try (HttpTransport.Response response = httpTransport.execute(createRequest(url, "GET", headers))) {
+            return toHttpResponse(url, response);
         }
     }
     
@@ -84,79 +83,55 @@ public class EnhancedHttpClient {
     }
     
     public HttpResponse post(String url, String data, String contentType, Map<String, String> headers) throws Exception {
-        HttpURLConnection connection = createConnection(url, "POST", headers);
+        HttpTransport.Request request = createRequest(url, "POST", headers)
+                .body(data.getBytes("UTF-8"), contentType);
         
-        try {
-            connection.setRequestProperty("Content-Type", contentType);
-            connection.setDoOutput(true);
-            
-            // 写入数据
-            try (OutputStream outputStream = connection.getOutputStream()) {
-                outputStream.write(data.getBytes("UTF-8"));
-            }
-            
-            int responseCode = connection.getResponseCode();
-            String content = readResponseContent(connection);
-            
-            // 解析响应中的Cookie
-            parseResponseCookies(url, connection);
-            
-            return new HttpResponse(responseCode, content, connection.getHeaderFields());
-            
-        } finally {
-            connection.disconnect();
+        try (HttpTransport.Response response = httpTransport.execute(request)) {
+            return toHttpResponse(url, response);
         }
     }
     
-    private HttpURLConnection createConnection(String url, String method, Map<String, String> headers) throws Exception {
-        URL urlObj = new URL(url);
-        HttpURLConnection connection = (HttpURLConnection) urlObj.openConnection();
-        
-        connection.setRequestMethod(method);
-        connection.setConnectTimeout(connectTimeout);
-        connection.setReadTimeout(readTimeout);
-        connection.setInstanceFollowRedirects(true);
+    private HttpTransport.Request createRequest(String url, String method, Map<String, String> headers) {
+        HttpTransport.Request request = new HttpTransport.Request(url)
+                .method(method)
+                .timeouts(connectTimeout, readTimeout);
         
         // 设置默认头部
-        setDefaultHeaders(connection, url);
+        setDefaultHeaders(request, url);
         
-        // 设置自定义头部
-        if (headers != null) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                connection.setRequestProperty(entry.getKey(), entry.getValue());
-            }
-        }
+        // 设置自定义头部，自定义的Accept-Encoding只保留能解压的编码
+        request.headers(headers);
+        request.header("Accept-Encoding", ContentDecoder.supportedEncodings(request.getHeader("Accept-Encoding")));
         
         // 设置Cookie
         if (cookieManager != null) {
             String cookies = cookieManager.getCookies(url);
             if (cookies != null && !cookies.isEmpty()) {
-                connection.setRequestProperty("Cookie", cookies);
+                request.header("Cookie", cookies);
             }
         }
         
-        return connection;
+        return request;
     }
     
-    private void setDefaultHeaders(HttpURLConnection connection, String url) {
-        connection.setRequestProperty("User-Agent", userAgent);
-        connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
-        connection.setRequestProperty("Accept-Language", "en-US,en;q=0.5");
-        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-        connection.setRequestProperty("Connection", "keep-alive");
-        connection.setRequestProperty("Upgrade-Insecure-Requests", "1");
+    private void setDefaultHeaders(HttpTransport.Request request, String url) {
+        request.header("User-Agent", userAgent);
+        request.header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
+        request.header("Accept-Language", "en-US,en;q=0.5");
+        request.header("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+        request.header("Upgrade-Insecure-Requests", "1");
         
         // 设置Referer
         String domain = extractDomain(url);
-        connection.setRequestProperty("Referer", domain);
+        request.header("Referer", domain);
     }
     
-    private void parseResponseCookies(String url, HttpURLConnection connection) {
+    private void parseResponseCookies(String url, HttpTransport.Response response) {
         if (cookieManager == null) {
             return;
         }
         
-        Map<String, java.util.List<String>> headerFields = connection.getHeaderFields();
+        Map<String, java.util.List<String>> headerFields = response.getHeaders();
         java.util.List<String> cookies = headerFields.get("Set-Cookie");
         
         if (cookies != null) {
@@ -166,27 +141,85 @@ public class EnhancedHttpClient {
         }
     }
     
-    private String readResponseContent(HttpURLConnection connection) throws Exception {
-        InputStream inputStream;
+    private HttpResponse toHttpResponse(String url, HttpTransport.Response response) throws Exception {
+        int responseCode = response.getStatusCode();
+        BodyBuffer body = readBody(response);
         
-        int responseCode = connection.getResponseCode();
-        if (responseCode >= 200 && responseCode < 300) {
-            inputStream = connection.getInputStream();
+        // 解析响应中的Cookie
+        parseResponseCookies(url, response);
+        
+        return new HttpResponse(responseCode, body.data, body.length,
+                charsetOf(response.getHeader("Content-Type")), response.getHeaders());
+    }
+    
+    /**
+     * 按字节读取（解压后的）响应体。未压缩且Content-Length已知时一次分配到位，
+     * 否则从估计大小开始按倍数扩容；不按行读取，原始换行符保持不变
+     */
+    private static BodyBuffer readBody(HttpTransport.Response response) throws IOException {
+        long contentLength = response.getContentLength();
+        boolean encoded = response.getHeader("Content-Encoding") != null;
+        int initialSize;
+        if (contentLength < 0) {
+            initialSize = DEFAULT_BODY_BUFFER_SIZE;
+        } else if (encoded) {
+            // 压缩后的长度只是下限，文本通常能压缩到四分之一左右
+            initialSize = (int) Math.min(Math.max(contentLength * 4, DEFAULT_BODY_BUFFER_SIZE), MAX_PRESIZED_BODY);
         } else {
-            inputStream = connection.getErrorStream();
+            initialSize = (int) Math.min(contentLength, MAX_PRESIZED_BODY);
         }
         
-        if (inputStream == null) {
-            return "";
+        InputStream inputStream = ContentDecoder.decode(response);
+        byte[] data = new byte[initialSize];
+        int length = 0;
+        while (true) {
+            if (length == data.length) {
+                // 长度刚好用完时先探测是否已到结尾，避免为预分配准确的响应体多扩容一次
+                int next = inputStream.read();
+                if (next < 0) {
+                    break;
+                }
+                data = Arrays.copyOf(data, Math.max(data.length * 2, DEFAULT_BODY_BUFFER_SIZE));
+                data[length++] = (byte) next;
+            }
+            int bytesRead = inputStream.read(data, length, data.length - length);
+            if (bytesRead < 0) {
+                break;
+            }
+            length += bytesRead;
         }
-        
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"))) {
-            StringBuilder content = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
+        return new BodyBuffer(data, length);
+    }
+    
+    /**
+     * Content-Type中的charset，没有或不支持时为UTF-8
+     */
+    private static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] parts = parameter.trim().split("=", 2);
+                if (parts.length == 2 && parts[0].trim().equalsIgnoreCase("charset")) {
+                    try {
+                        return Charset.forName(parts[1].trim().replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        break;
+                    }
+                }
             }
-            return content.toString();
+        }
+        return StandardCharsets.UTF_8;
+    }
+    
+    /**
+     * 读入的响应体，data中前length个字节有效
+     */
+    private static final class BodyBuffer {
+        final byte[] data;
+        final int length;
+        
+        BodyBuffer(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
         }
     }
     
@@ -234,6 +267,14 @@ public class EnhancedHttpClient {
         this.cookieManager = cookieManager;
     }
     
+    public HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+    
+    public void setHttpTransport(HttpTransport httpTransport) {
+        this.httpTransport = httpTransport;
+    }
+    
     public String getUserAgent() {
         return userAgent;
     }
@@ -276,15 +317,28 @@ public class EnhancedHttpClient {
     
     /**
      * HTTP响应类
+     * 响应体以字节保存，getContent()首次调用时才解码为字符串；
+     * 提取器可以用getCharSequence()做正则匹配，或用getInputStream()交给JSON解析器，都不会复制字节数组
      */
     public static class HttpResponse {
         private int statusCode;
+        private final byte[] body;
+        private final int length;
+        private final Charset charset;
         private String content;
+        private CharSequence chars;
         private Map<String, java.util.List<String>> headers;
         
         public HttpResponse(int statusCode, String content, Map<String, java.util.List<String>> headers) {
-            this.statusCode = statusCode;
+            this(statusCode, content.getBytes(StandardCharsets.UTF_8), -1, StandardCharsets.UTF_8, headers);
             this.content = content;
+        }
+        
+        HttpResponse(int statusCode, byte[] body, int length, Charset charset, Map<String, java.util.List<String>> headers) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.length = length >= 0 ? length : body.length;
+            this.charset = charset;
             this.headers = headers != null ? headers : new HashMap<>();
         }
         
@@ -292,10 +346,48 @@ public class EnhancedHttpClient {
             return statusCode;
         }
         
-        public String getContent() {
+        public synchronized String getContent() {
+            if (content == null) {
+                content = chars != null ? chars.toString() : new String(body, 0, length, charset);
+            }
             return content;
         }
         
+        /**
+         * 响应体的字符视图，已经解码为字符串时直接返回该字符串，否则解码到CharBuffer而不创建String
+         */
+        public synchronized CharSequence getCharSequence() {
+            if (content != null) {
+                return content;
+            }
+            if (chars == null) {
+                chars = charset.decode(ByteBuffer.wrap(body, 0, length));
+            }
+            return chars;
+        }
+        
+        /**
+         * 响应体的字节流视图，直接读取内部数组
+         */
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(body, 0, length);
+        }
+        
+        /**
+         * 响应体字节数组的副本
+         */
+        public byte[] getBytes() {
+            return Arrays.copyOf(body, length);
+        }
+        
+        public int getContentLength() {
+            return length;
+        }
+        
+        public Charset getCharset() {
+            return charset;
+        }
+        
         public Map<String, java.util.List<String>> getHeaders() {
             return headers;
         }
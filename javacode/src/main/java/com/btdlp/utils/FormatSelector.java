@@ -0,0 +1,158 @@
+package com.btdlp.utils;
+
+import com.btdlp.core.VideoFormat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 格式选择工具类 - 按格式规格（best、worst、best[height<=720]、格式ID）选择格式
+ * 供BtdJava选择提取到的格式，以及HLS下载器选择主播放列表中的变体流
+ */
+public class FormatSelector {
+
+    /**
+     * 根据格式规格选择视频格式
+     */
+    public static VideoFormat select(List<VideoFormat> formats, String formatSpec) {
+        if (formats == null || formats.isEmpty()) {
+            return null;
+        }
+        if (formatSpec == null || formatSpec.isEmpty()) {
+            formatSpec = "best";
+        }
+
+        // 简化的格式选择逻辑
+        // 实际应该实现完整的yt-dlp格式选择语法
+        if ("best".equals(formatSpec)) {
+            return selectBest(formats);
+        } else if ("worst".equals(formatSpec)) {
+            return selectWorst(formats);
+        } else if (formatSpec.startsWith("best[")) {
+            // 解析格式选择器，如 "best[height<=720]"
+            return selectWithCriteria(formats, formatSpec.substring(4), true);
+        } else if (formatSpec.startsWith("worst[")) {
+            return selectWithCriteria(formats, formatSpec.substring(5), false);
+        } else {
+            // 按格式ID查找
+            for (VideoFormat format : formats) {
+                if (formatSpec.equals(format.getFormatId())) {
+                    return format;
+                }
+            }
+        }
+
+        return formats.get(0); // 默认返回第一个
+    }
+
+    /**
+     * 选择最佳格式
+     */
+    public static VideoFormat selectBest(List<VideoFormat> formats) {
+        // 优先选择MP4格式，然后按质量排序
+        VideoFormat bestMp4 = formats.stream()
+            .filter(f -> "mp4".equals(f.getExt()))
+            .max(Comparator.comparing(f -> f.getQuality() != null ? f.getQuality() : 0))
+            .orElse(null);
+
+        if (bestMp4 != null) {
+            return bestMp4;
+        }
+
+        // 如果没有MP4，选择质量最高的
+        return formats.stream()
+            .max(Comparator.comparing(f -> f.getQuality() != null ? f.getQuality() : 0))
+            .orElse(formats.get(0));
+    }
+
+    /**
+     * 选择最低格式
+     */
+    public static VideoFormat selectWorst(List<VideoFormat> formats) {
+        return formats.stream()
+            .min(Comparator.comparing(f -> f.getQuality() != null ? f.getQuality() : Integer.MAX_VALUE))
+            .orElse(formats.get(0));
+    }
+
+    /**
+     * 选择满足所有条件的格式，条件形如 [height<=720][fps<=30]，
+     * 支持height、width、tbr、fps字段和<=、<、>=、>、=比较；没有格式满足条件时退回最佳/最低格式
+     */
+    private static VideoFormat selectWithCriteria(List<VideoFormat> formats, String criteria, boolean best) {
+        List<VideoFormat> matched = new ArrayList<>();
+        for (VideoFormat format : formats) {
+            if (matchesCriteria(format, criteria)) {
+                matched.add(format);
+            }
+        }
+
+        if (matched.isEmpty()) {
+            return best ? selectBest(formats) : selectWorst(formats);
+        }
+        if (criteria.contains("height")) {
+            // 有高度条件时按高度选择
+            Comparator<VideoFormat> byHeight = Comparator.comparing(f -> f.getHeight() != null ? f.getHeight() : 0);
+            return best ? matched.stream().max(byHeight).orElse(null)
+                        : matched.stream().min(byHeight).orElse(null);
+        }
+        return best ? selectBest(matched) : selectWorst(matched);
+    }
+
+    private static boolean matchesCriteria(VideoFormat format, String criteria) {
+        int start = criteria.indexOf('[');
+        while (start >= 0) {
+            int end = criteria.indexOf(']', start);
+            if (end < 0) {
+                break;
+            }
+            if (!matchesCondition(format, criteria.substring(start + 1, end).trim())) {
+                return false;
+            }
+            start = criteria.indexOf('[', end);
+        }
+        return true;
+    }
+
+    private static boolean matchesCondition(VideoFormat format, String condition) {
+        String[] operators = {"<=", ">=", "<", ">", "="};
+        for (String operator : operators) {
+            int index = condition.indexOf(operator);
+            if (index <= 0) {
+                continue;
+            }
+
+            Integer actual = getField(format, condition.substring(0, index).trim());
+            if (actual == null) {
+                // 缺少该字段的格式不参与比较
+                return false;
+            }
+
+            int expected;
+            try {
+                expected = Integer.parseInt(condition.substring(index + operator.length()).trim());
+            } catch (NumberFormatException e) {
+                return true;
+            }
+
+            switch (operator) {
+                case "<=": return actual <= expected;
+                case ">=": return actual >= expected;
+                case "<": return actual < expected;
+                case ">": return actual > expected;
+                default: return actual == expected;
+            }
+        }
+        return true;
+    }
+
+    private static Integer getField(VideoFormat format, String field) {
+        switch (field) {
+            case "height": return format.getHeight();
+            case "width": return format.getWidth();
+            case "tbr": return format.getTbr();
+            case "fps": return format.getFps();
+            default: return null;
+        }
+    }
+}
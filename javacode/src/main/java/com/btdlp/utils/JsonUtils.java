@@ -1,6 +1,12 @@
 package com.btdlp.utils;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.*;
 
 /**
@@ -82,4 +88,422 @@ public class JsonUtils {
             return null;
         }
     }
+    
+    /**
+     * 创建按路径流式读取JSON的选择器，规则声明一次后可重复使用（通常为static final）
+     */
+    public static JsonPathSelector.Builder pathSelector() {
+        return new JsonPathSelector.Builder();
+    }
+    
+    /**
+     * 页面中内嵌JSON（如<script id="SIGI_STATE">、window.playerConfig = ）的起始位置：
+     * marker之后第一个{或[的下标，找不到时返回-1
+     */
+    public static int findEmbeddedJson(String page, String marker) {
+        if (page == null || marker == null) {
+            return -1;
+        }
+        int index = page.indexOf(marker);
+        if (index < 0) {
+            return -1;
+        }
+        for (int i = index + marker.length(); i < page.length(); i++) {
+            char c = page.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+            // 遇到下一个标签说明marker后面没有JSON
+            if (c == '<' && page.startsWith("</", i)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 基于JsonReader的路径选择器：只解析路径经过的部分，其余值直接跳过，命中的值才构建为JsonElement
+     * 路径用.分隔：属性名匹配对象成员（数字也可匹配数组下标），*匹配任意一个成员或数组元素，
+     * **匹配任意层级（含零层），含.的属性名写在[]中（如a[webapp.video-detail].b）。
+     * 同一字段可以声明多个备选路径，结果按在文档中出现的顺序排列
+     */
+    public static final class JsonPathSelector {
+        private static final String ANY = "*";
+        private static final String ANY_DEPTH = "**";
+        
+        private final String[] fieldNames;
+        // 路径 -> 所属字段
+        private final int[] pathFields;
+        private final String[][] paths;
+        private final int[] initialStates;
+        
+        private JsonPathSelector(List<String> fieldNames, List<Integer> pathFields, List<String[]> paths) {
+            this.fieldNames = fieldNames.toArray(new String[0]);
+            this.pathFields = new int[pathFields.size()];
+            for (int i = 0; i < pathFields.size(); i++) {
+                this.pathFields[i] = pathFields.get(i);
+            }
+            this.paths = paths.toArray(new String[0][]);
+            this.initialStates = new int[this.paths.length];
+            for (int i = 0; i < this.paths.length; i++) {
+                initialStates[i] = state(i, 0);
+            }
+        }
+        
+        /**
+         * 从reader读取一个JSON值（宽松模式，允许JavaScript对象字面量中常见的写法），
+         * JSON不完整或有错误时返回出错前已读到的值
+         */
+        public JsonPathValues read(Reader reader) {
+            JsonPathValues values = new JsonPathValues(fieldNames);
+            JsonReader in = new JsonReader(reader);
+            in.setLenient(true);
+            try {
+                JsonToken token = in.peek();
+                if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+                    readContainer(in, initialStates, values);
+                }
+            } catch (IOException | RuntimeException e) {
+                // 保留已读到的值
+            }
+            return values;
+        }
+        
+        public JsonPathValues read(String json) {
+            if (json == null) {
+                return new JsonPathValues(fieldNames);
+            }
+            return read(new StringReader(json));
+        }
+        
+        /**
+         * 读取页面中marker之后的内嵌JSON，不复制页面；找不到时返回null
+         */
+        public JsonPathValues readEmbedded(String page, String marker) {
+            int start = findEmbeddedJson(page, marker);
+            if (start < 0) {
+                return null;
+            }
+            StringReader reader = new StringReader(page);
+            try {
+                reader.skip(start);
+            } catch (IOException e) {
+                return null;
+            }
+            return read(reader);
+        }
+        
+        private void readContainer(JsonReader in, int[] states, JsonPathValues values) throws IOException {
+            if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    readMember(in, step(states, name), values);
+                }
+                in.endObject();
+            } else {
+                in.beginArray();
+                int index = 0;
+                while (in.hasNext()) {
+                    readMember(in, step(states, String.valueOf(index++)), values);
+                }
+                in.endArray();
+            }
+        }
+        
+        private void readMember(JsonReader in, int[] states, JsonPathValues values) throws IOException {
+            if (states.length == 0) {
+                in.skipValue();
+                return;
+            }
+            boolean complete = false;
+            for (int state : states) {
+                if (isComplete(state)) {
+                    complete = true;
+                    break;
+                }
+            }
+            if (complete) {
+                // 命中的值构建为JsonElement，更深的路径在该子树上继续匹配
+                JsonElement element = JsonParser.parseReader(in);
+                collect(element, states, values);
+                return;
+            }
+            JsonToken token = in.peek();
+            if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+                readContainer(in, states, values);
+            } else {
+                in.skipValue();
+            }
+        }
+        
+        private void collect(JsonElement element, int[] states, JsonPathValues values) {
+            for (int state : states) {
+                if (isComplete(state)) {
+                    values.add(pathFields[pathOf(state)], element);
+                }
+            }
+            if (element.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                    int[] next = step(states, member.getKey());
+                    if (next.length > 0) {
+                        collect(member.getValue(), next, values);
+                    }
+                }
+            } else if (element.isJsonArray()) {
+                JsonArray array = element.getAsJsonArray();
+                for (int i = 0; i < array.size(); i++) {
+                    int[] next = step(states, String.valueOf(i));
+                    if (next.length > 0) {
+                        collect(array.get(i), next, values);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * 进入名为key的成员后仍可能匹配的路径状态
+         */
+        private int[] step(int[] states, String key) {
+            int[] next = new int[states.length * 2];
+            int count = 0;
+            for (int state : states) {
+                count = advance(pathOf(state), segmentOf(state), key, next, count);
+            }
+            return count == next.length ? next : Arrays.copyOf(next, count);
+        }
+        
+        private int advance(int path, int segment, String key, int[] next, int count) {
+            String[] segments = paths[path];
+            if (segment >= segments.length) {
+                return count;
+            }
+            String expected = segments[segment];
+            if (ANY_DEPTH.equals(expected)) {
+                // **继续匹配更深的层级，或者匹配零层后用下一段匹配key
+                count = add(next, count, state(path, segment));
+                return advance(path, segment + 1, key, next, count);
+            }
+            if (ANY.equals(expected) || expected.equals(key)) {
+                count = add(next, count, state(path, segment + 1));
+            }
+            return count;
+        }
+        
+        private static int add(int[] next, int count, int state) {
+            for (int i = 0; i < count; i++) {
+                if (next[i] == state) {
+                    return count;
+                }
+            }
+            next[count] = state;
+            return count + 1;
+        }
+        
+        private boolean isComplete(int state) {
+            return segmentOf(state) == paths[pathOf(state)].length;
+        }
+        
+        private static int state(int path, int segment) {
+            return (path << 16) | segment;
+        }
+        
+        private static int pathOf(int state) {
+            return state >>> 16;
+        }
+        
+        private static int segmentOf(int state) {
+            return state & 0xFFFF;
+        }
+        
+        /**
+         * 字段及其路径的构建器
+         */
+        public static final class Builder {
+            private final List<String> fieldNames = new ArrayList<>();
+            private final List<Integer> pathFields = new ArrayList<>();
+            private final List<String[]> paths = new ArrayList<>();
+            
+            private Builder() {
+            }
+            
+            /**
+             * 声明字段，可给出多个备选路径（如新旧两种页面结构）
+             */
+            public Builder path(String name, String... alternatives) {
+                if (fieldNames.contains(name)) {
+                    throw new IllegalArgumentException("Duplicate field: " + name);
+                }
+                if (alternatives.length == 0) {
+                    throw new IllegalArgumentException("No path for field: " + name);
+                }
+                int field = fieldNames.size();
+                fieldNames.add(name);
+                for (String alternative : alternatives) {
+                    String[] segments = parsePath(alternative);
+                    if (segments.length == 0 || ANY_DEPTH.equals(segments[segments.length - 1])) {
+                        throw new IllegalArgumentException("Invalid path: " + alternative);
+                    }
+                    pathFields.add(field);
+                    paths.add(segments);
+                }
+                return this;
+            }
+            
+            private static String[] parsePath(String path) {
+                List<String> segments = new ArrayList<>();
+                StringBuilder segment = new StringBuilder();
+                for (int i = 0; i < path.length(); i++) {
+                    char c = path.charAt(i);
+                    if (c == '[') {
+                        int end = path.indexOf(']', i);
+                        if (end < 0) {
+                            throw new IllegalArgumentException("Invalid path: " + path);
+                        }
+                        // a[b]等同于a.[b]
+                        if (segment.length() > 0) {
+                            segments.add(segment.toString());
+                            segment.setLength(0);
+                        }
+                        segment.append(path, i + 1, end);
+                        i = end;
+                        if (i + 1 < path.length() && path.charAt(i + 1) == '.') {
+                            i++;
+                        }
+                        if (i + 1 < path.length()) {
+                            segments.add(segment.toString());
+                            segment.setLength(0);
+                        }
+                    } else if (c == '.') {
+                        segments.add(segment.toString());
+                        segment.setLength(0);
+                    } else {
+                        segment.append(c);
+                    }
+                }
+                segments.add(segment.toString());
+                for (int i = 0; i < segments.size(); i++) {
+                    if (segments.get(i).isEmpty()) {
+                        throw new IllegalArgumentException("Invalid path: " + path);
+                    }
+                    // 连续的**与单个**等价，且会使step中每个状态产生两个以上的后继状态
+                    if (i > 0 && ANY_DEPTH.equals(segments.get(i)) && ANY_DEPTH.equals(segments.get(i - 1))) {
+                        throw new IllegalArgumentException("Consecutive ** in path: " + path);
+                    }
+                }
+                return segments.toArray(new String[0]);
+            }
+            
+            public JsonPathSelector build() {
+                return new JsonPathSelector(fieldNames, pathFields, paths);
+            }
+        }
+    }
+    
+    /**
+     * 一次读取的结果，按字段名取值
+     */
+    public static final class JsonPathValues {
+        private final String[] fieldNames;
+        private final List<List<JsonElement>> values;
+        
+        private JsonPathValues(String[] fieldNames) {
+            this.fieldNames = fieldNames;
+            this.values = new ArrayList<>(fieldNames.length);
+            for (int i = 0; i < fieldNames.length; i++) {
+                values.add(null);
+            }
+        }
+        
+        private void add(int field, JsonElement element) {
+            List<JsonElement> list = values.get(field);
+            if (list == null) {
+                list = new ArrayList<>(2);
+                values.set(field, list);
+            }
+            list.add(element);
+        }
+        
+        private List<JsonElement> list(String name) {
+            for (int i = 0; i < fieldNames.length; i++) {
+                if (fieldNames[i].equals(name)) {
+                    return values.get(i);
+                }
+            }
+            throw new IllegalArgumentException("Unknown field: " + name);
+        }
+        
+        public boolean has(String name) {
+            return list(name) != null;
+        }
+        
+        public boolean isEmpty() {
+            for (List<JsonElement> list : values) {
+                if (list != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * 字段的第一个值，没有时返回null
+         */
+        public JsonElement get(String name) {
+            List<JsonElement> list = list(name);
+            return list != null ? list.get(0) : null;
+        }
+        
+        /**
+         * 字段的所有值，没有时返回空列表
+         */
+        public List<JsonElement> getAll(String name) {
+            List<JsonElement> list = list(name);
+            return list != null ? Collections.unmodifiableList(list) : Collections.<JsonElement>emptyList();
+        }
+        
+        /**
+         * 字段的第一个字符串或数字值，没有时返回null
+         */
+        public String getString(String name) {
+            for (JsonElement element : getAll(name)) {
+                if (element.isJsonPrimitive()) {
+                    return element.getAsString();
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * 字段所有的字符串或数字值，跳过对象、数组和null
+         */
+        public List<String> getStrings(String name) {
+            List<String> strings = new ArrayList<>();
+            for (JsonElement element : getAll(name)) {
+                if (element.isJsonPrimitive()) {
+                    strings.add(element.getAsString());
+                }
+            }
+            return strings;
+        }
+        
+        /**
+         * 字段的第一个整数值（允许数字字符串），没有或无法解析时返回null
+         */
+        public Long getLong(String name) {
+            String value = getString(name);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                try {
+                    return (long) Double.parseDouble(value.trim());
+                } catch (NumberFormatException ignored) {
+                    return null;
+                }
+            }
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.btdlp.utils;
 
+import com.btdlp.extractor.PageScanner;
+
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -13,6 +15,12 @@ public class XHamsterUtils {
     public static final String VALID_URL_REGEX = "(?:https?://)?(?:www\\.)?(?:xhamster\\.com|xhamster2\\.com|xhamster3\\.com)/videos/([a-zA-Z0-9\\-_]+)-([a-zA-Z0-9]+)";
     public static final Pattern VALID_URL_PATTERN = Pattern.compile(VALID_URL_REGEX);
     private static final byte[] XOR_KEY = {0x13, 0x37, 0x42};
+    private static final PageScanner VIDEO_INFO_SCANNER = PageScanner.builder()
+        .first("title", "<title>([^<]+)</title>")
+        .first("duration", "\"duration\":\\s*(\\d+)")
+        .all("url", "\"url\":\\s*\"([^\"]+)\"")
+        .build();
+    private static final Pattern TITLE_SUFFIX_PATTERN = Pattern.compile("\\s*\\|\\s*XHamster.*$");
     
     static {
         // 静态初始化
@@ -23,31 +31,20 @@ public class XHamsterUtils {
     
     public static XHamsterVideoInfo extractVideoInfo(String html) {
         XHamsterVideoInfo info = new XHamsterVideoInfo();
+        PageScanner.Result page = VIDEO_INFO_SCANNER.scan(html);
         
         // 提取标题
-        Pattern titlePattern = Pattern.compile("<title>([^<]+)</title>");
-        Matcher titleMatcher = titlePattern.matcher(html);
-        if (titleMatcher.find()) {
-            String title = titleMatcher.group(1).trim();
-            title = title.replaceAll("\\s*\\|\\s*XHamster.*$", "");
-            info.setTitle(title);
+        String title = page.get("title");
+        if (title != null) {
+            info.setTitle(TITLE_SUFFIX_PATTERN.matcher(title.trim()).replaceAll(""));
         }
         
         // 提取时长
-        Pattern durationPattern = Pattern.compile("\"duration\":\\s*(\\d+)");
-        Matcher durationMatcher = durationPattern.matcher(html);
-        if (durationMatcher.find()) {
-            info.setDuration(Long.parseLong(durationMatcher.group(1)));
-        }
+        info.setDuration(page.getLong("duration"));
         
         // 提取视频URL
-        Pattern urlPattern = Pattern.compile("\"url\":\\s*\"([^\"]+)\"");
-        Matcher urlMatcher = urlPattern.matcher(html);
-        while (urlMatcher.find()) {
-            String url = urlMatcher.group(1);
-            if (url != null && !url.isEmpty()) {
-                info.addVideoUrl(url);
-            }
+        for (String url : page.getAll("url")) {
+            info.addVideoUrl(url);
         }
         
         return info;